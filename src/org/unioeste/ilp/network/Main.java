@@ -19,29 +19,109 @@
 
 package org.unioeste.ilp.network;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.unioeste.ilp.network.daos.ImpostorSampler;
 import org.unioeste.ilp.network.daos.UserDao;
+import org.unioeste.ilp.network.db.JobQueue;
+import org.unioeste.ilp.network.db.JobQueue.Job;
+import org.unioeste.ilp.network.db.SQLiteConnectionManager;
 import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.features.FeaturePipeline;
+import org.unioeste.ilp.network.lab.AbstractExperiments;
+import org.unioeste.ilp.network.lab.CrossValidator;
+import org.unioeste.ilp.network.lab.ExperimentWorker;
 import org.unioeste.ilp.network.lab.ReplicatorScientist;
 import org.unioeste.ilp.network.lab.Scientist;
 import org.unioeste.ilp.network.models.User;
+import org.unioeste.ilp.network.train.FeatureCache;
+import org.unioeste.ilp.network.train.PlateauStopping;
+import org.unioeste.ilp.network.train.TimeBudgetStopping;
+import org.unioeste.ilp.network.train.TrainingSetHandler;
+import org.unioeste.ilp.network.train.ValidationStopping;
+import org.unioeste.ilp.network.util.ReplicatorDataSetPrefetcher;
+import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
 
 import com.j256.ormlite.logger.LocalLog;
+import com.j256.ormlite.support.ConnectionSource;
 
 public class Main {
 	
 	private static final String VARIANT_MAX_ERROR = "variantMaxError";
 	private static final String VARIANT_UNITS = "variantUnits";
 	private static final String VARIANT_NUM_EXAMPLES = "variantNumExamples";
+	private static final String CROSS_VALIDATION = "crossValidation";
 	private static final String ALL_VARIANTS = "all";
 	
+	// First argument: runs the jobs of the variant on the second argument from the queue,
+	// many processes can run as workers of the same queue
+	private static final String WORKER = "worker";
+	
+	// Options after the first argument: trains with the training sets mapped from files on the buffer directory
+	private static final String BUFFERED_TRAINING = "buffered";
+	private static final String BUFFER_DIR = "buffers";
+	
+	// Stops the trainings on a plateau of the training error or after the time budget of each network,
+	// and with validationStopping also when the error on the rows held out of the training stops improving
+	private static final String EARLY_STOPPING = "earlyStopping";
+	private static final String VALIDATION_STOPPING = "validationStopping";
+	private static final double VALIDATION_FRACTION = 0.2;
+	private static final int PLATEAU_WINDOW = 1000;
+	private static final double PLATEAU_MIN_IMPROVEMENT = 0.01;
+	private static final int VALIDATION_PATIENCE = 10;
+	private static final int VALIDATION_INTERVAL = 100;
+	private static final long TIME_BUDGET = 120000;
+	
+	// Logs the training error every LOG_EVERY epochs, or when it changes LOG_MIN_CHANGE of the last error logged
+	private static final String SAMPLED_LOG = "sampledLog";
+	private static final int LOG_EVERY = 100;
+	private static final double LOG_MIN_CHANGE = 0.01;
+	
+	// Normalizes with the bounds fitted on each training set instead of the fixed bounds,
+	// the max errors of the networks were tuned for the fixed bounds
+	private static final String FITTED_BOUNDS = "fittedBounds";
+	
+	// Builds the inputs with another feature set, the fixed bounds only have the columns
+	// of the default set so these sets are normalized with the fitted bounds
+	private static final String RATE_FEATURES = "rateFeatures";
+	private static final String ZSCORE_FEATURES = "zscoreFeatures";
+	
+	// Followed by the seed of the negative examples and of the random users, to vary them between runs
+	private static final String IMPOSTOR_SEED = "impostorSeed";
+	
+	private static final String [] VARIANTS = {VARIANT_MAX_ERROR, VARIANT_UNITS, VARIANT_NUM_EXAMPLES};
+	
 	public static int getRandomUserId() throws SQLException, ClassNotFoundException {
-		SQLiteConnectionSource connection = new SQLiteConnectionSource(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		UserDao userDao = new UserDao(connection.getConnectionSource());
-		return userDao.getRandomUserId();
+		SQLiteConnectionManager manager = SQLiteConnectionManager.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		ConnectionSource connection = manager.lease();
+		try {
+			UserDao userDao = manager.getDaoRegistry(connection).getUserDao();
+			return userDao.getRandomUserId();
+		} finally {
+			manager.release(connection);
+		}
+	}
+	
+	/**
+	 * Gets all the users on the database except the administrator (user 1).
+	 * 
+	 * @return List of users
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static List<User> getUsers() throws SQLException, ClassNotFoundException {
+		SQLiteConnectionManager manager = SQLiteConnectionManager.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		ConnectionSource connection = manager.lease();
+		try {
+			UserDao userDao = manager.getDaoRegistry(connection).getUserDao();
+			int [] exceptions = {1};
+			return userDao.getUsersExcept(exceptions);
+		} finally {
+			manager.release(connection);
+		}
 	}
 	
 	/**
@@ -61,6 +141,33 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Creates the prefetcher of the datasets with all the patterns
+	 * of each user, on the order the experiments visit them.
+	 * 
+	 * @param users Users
+	 * @return ReplicatorDataSetPrefetcher
+	 */
+	private static ReplicatorDataSetPrefetcher startPrefetcher(List<User> users) {
+		int [] userIds = new int[users.size() * 3];
+		int [] patternIds = new int[users.size() * 3];
+		for (int i = 0; i < users.size(); i++) {
+			for (int patternId = 1; patternId <= 3; patternId++) {
+				userIds[i * 3 + patternId - 1] = users.get(i).getId();
+				patternIds[i * 3 + patternId - 1] = patternId;
+			}
+		}
+		ReplicatorDataSetPrefetcher prefetcher = new ReplicatorDataSetPrefetcher(userIds, patternIds, ReplicatorDataSetPrefetcher.DEFAULT_LOOK_AHEAD);
+		ReplicatorDataSetProvider.setPrefetcher(prefetcher);
+		return prefetcher;
+	}
+	
+	private static void stopPrefetcher(ReplicatorDataSetPrefetcher prefetcher) {
+		ReplicatorDataSetProvider.setPrefetcher(null);
+		prefetcher.shutdown();
+		System.out.println(prefetcher.getStatistics());
+	}
+	
 	/**
 	 * Makes the experiments specified on the option string.
 	 * 
@@ -70,32 +177,90 @@ public class Main {
 	 * @throws IOException
 	 */
 	public static void replicatorExperiments(String option) throws ClassNotFoundException, SQLException, IOException {
-		SQLiteConnectionSource connection = new SQLiteConnectionSource(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		UserDao userDao = new UserDao(connection.getConnectionSource());
-		int [] exceptions = {1};
-		List<User> users = userDao.getUsersExcept(exceptions);
+		List<User> users = getUsers();
+		ReplicatorDataSetPrefetcher prefetcher = startPrefetcher(users);
 		
-		for (int i = 0; i < users.size(); i++) {
-			int userId = users.get(i).getId();
-			System.out.println("Usurio atual: " + userId);
-			
-			for (int patternId = 1; patternId <= 3; patternId++) {
-				System.out.println("Padro atual: " + patternId);
-				if (option.equals(VARIANT_MAX_ERROR))
-					ReplicatorScientist.replicatorVariantMaxError(userId, patternId);
-				
-				if (option.equals(VARIANT_UNITS))
-					ReplicatorScientist.replicatorVariantUnitsTraining(userId, patternId);
-				
-				if (option.equals(VARIANT_NUM_EXAMPLES))
-					ReplicatorScientist.replicatorVariantNumExamples(userId, patternId);
+		try {
+			for (int i = 0; i < users.size(); i++) {
+				int userId = users.get(i).getId();
+				System.out.println("Usurio atual: " + userId);
 				
-				if (option.equals(ALL_VARIANTS)) {
-					ReplicatorScientist.replicatorVariantMaxError(userId, patternId);
-					ReplicatorScientist.replicatorVariantUnitsTraining(userId, patternId);
-					ReplicatorScientist.replicatorVariantNumExamples(userId, patternId);
-				}	
+				for (int patternId = 1; patternId <= 3; patternId++) {
+					System.out.println("Padro atual: " + patternId);
+					prefetcher.advance(userId, patternId);
+					if (option.equals(ALL_VARIANTS)) {
+						for (String variant : VARIANTS) {
+							runVariant(variant, userId, patternId, configuration(variant));
+						}
+					} else
+						runVariant(option, userId, patternId, configuration(option));
+				}
 			}
+		} finally {
+			stopPrefetcher(prefetcher);
+		}
+	}
+	
+	/**
+	 * Runs the experiments of the variant with the user and pattern.
+	 * 
+	 * @param variant Variant
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param configuration Parameters of the variant, the number of folds on the cross validation
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private static void runVariant(String variant, int userId, int patternId, String configuration) throws ClassNotFoundException, SQLException, IOException {
+		if (variant.equals(VARIANT_MAX_ERROR))
+			ReplicatorScientist.replicatorVariantMaxError(userId, patternId);
+		
+		if (variant.equals(VARIANT_UNITS))
+			ReplicatorScientist.replicatorVariantUnitsTraining(userId, patternId);
+		
+		if (variant.equals(VARIANT_NUM_EXAMPLES))
+			ReplicatorScientist.replicatorVariantNumExamples(userId, patternId);
+		
+		if (variant.equals(CROSS_VALIDATION))
+			ReplicatorScientist.replicatorCrossValidation(userId, patternId, Integer.parseInt(configuration));
+	}
+	
+	private static String configuration(String variant) {
+		return variant.equals(CROSS_VALIDATION) ? String.valueOf(CrossValidator.DEFAULT_FOLDS) : "";
+	}
+	
+	/**
+	 * Submits the jobs of the option with all the users and patterns to the queue,
+	 * the jobs already on the queue are kept, and runs them until the queue is finished.
+	 * A process that crashed can be started again, it continues from the jobs not finished.
+	 * 
+	 * @param option Variant or all
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	public static void replicatorWorker(String option) throws ClassNotFoundException, SQLException, InterruptedException {
+		String [] variants = option.equals(ALL_VARIANTS) ? VARIANTS : new String [] {option};
+		JobQueue queue = new JobQueue(JobQueue.DEFAULT_QUEUE_PATH);
+		try {
+			List<User> users = getUsers();
+			for (int i = 0; i < users.size(); i++) {
+				for (int patternId = 1; patternId <= 3; patternId++) {
+					for (String variant : variants) {
+						queue.submit(users.get(i).getId(), patternId, variant, configuration(variant));
+					}
+				}
+			}
+			
+			int completed = new ExperimentWorker(queue, new ExperimentWorker.Runner() {
+				public void run(Job job) throws Exception {
+					runVariant(job.getVariant(), job.getUserId(), job.getPatternId(), job.getConfiguration());
+				}
+			}).work();
+			System.out.println(completed + " trabalhos concludos por " + queue.getWorker() + ", fila: " + queue.countByStatus());
+		} finally {
+			queue.close();
 		}
 	}
 	
@@ -107,23 +272,26 @@ public class Main {
 	 * @throws IOException
 	 */
 	public static void replicatorExperiments() throws ClassNotFoundException, SQLException, IOException {
-		SQLiteConnectionSource connection = new SQLiteConnectionSource(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		UserDao userDao = new UserDao(connection.getConnectionSource());
-		int [] exceptions = {1};
-		List<User> users = userDao.getUsersExcept(exceptions);
+		List<User> users = getUsers();
+		ReplicatorDataSetPrefetcher prefetcher = startPrefetcher(users);
 		
-		for (int i = 0; i < users.size(); i++) {
-			int userId = users.get(i).getId();
-			System.out.println("Usurio atual: " + userId);
-			
-			for (int patternId = 1; patternId <= 3; patternId++) {
-				System.out.println("Padro atual: " + patternId);
-				ReplicatorScientist.replicatorVariantMaxError(userId, patternId);
-				ReplicatorScientist.replicatorVariantUnitsTraining(userId, patternId);
-				ReplicatorScientist.replicatorVariantNumExamples(userId, patternId);
-				ReplicatorScientist.replicatorVariantCentralUnitsTraining(userId, patternId);
-				ReplicatorScientist.ultimateTest(patternId);
+		try {
+			for (int i = 0; i < users.size(); i++) {
+				int userId = users.get(i).getId();
+				System.out.println("Usurio atual: " + userId);
+				
+				for (int patternId = 1; patternId <= 3; patternId++) {
+					System.out.println("Padro atual: " + patternId);
+					prefetcher.advance(userId, patternId);
+					ReplicatorScientist.replicatorVariantMaxError(userId, patternId);
+					ReplicatorScientist.replicatorVariantUnitsTraining(userId, patternId);
+					ReplicatorScientist.replicatorVariantNumExamples(userId, patternId);
+					ReplicatorScientist.replicatorVariantCentralUnitsTraining(userId, patternId);
+					ReplicatorScientist.ultimateTest(patternId);
+				}
 			}
+		} finally {
+			stopPrefetcher(prefetcher);
 		}
 	}
 	
@@ -142,14 +310,65 @@ public class Main {
 		}
 	}
 	
+	private static boolean hasOption(String [] args, String option) {
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals(option))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the argument after the option, null when the option wasn't passed.
+	 */
+	private static String getOptionValue(String [] args, String option) {
+		for (int i = 1; i < args.length - 1; i++) {
+			if (args[i].equals(option))
+				return args[i + 1];
+		}
+		return null;
+	}
+	
 	public static void main(String[] args) {
 		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log"); // Sets the log file name.
 		try {
+			// Reads the features from the cache file, the experiments reload the same samples many times
+			FeatureCache.load(SQLiteConnectionSource.DEFAULT_DB_PATH);
+			if (hasOption(args, BUFFERED_TRAINING))
+				AbstractExperiments.setBufferDir(new File(BUFFER_DIR));
+			if (hasOption(args, VALIDATION_STOPPING))
+				AbstractExperiments.setStopping(VALIDATION_FRACTION,
+						new PlateauStopping(PLATEAU_WINDOW, PLATEAU_MIN_IMPROVEMENT),
+						new ValidationStopping(VALIDATION_PATIENCE, VALIDATION_INTERVAL),
+						new TimeBudgetStopping(TIME_BUDGET));
+			else if (hasOption(args, EARLY_STOPPING))
+				AbstractExperiments.setStopping(0,
+						new PlateauStopping(PLATEAU_WINDOW, PLATEAU_MIN_IMPROVEMENT),
+						new TimeBudgetStopping(TIME_BUDGET));
+			if (hasOption(args, SAMPLED_LOG))
+				AbstractExperiments.setErrorLogSampling(LOG_EVERY, LOG_MIN_CHANGE);
+			if (hasOption(args, RATE_FEATURES))
+				TrainingSetHandler.setDefaultFeatures(FeaturePipeline.RATES);
+			else if (hasOption(args, ZSCORE_FEATURES))
+				TrainingSetHandler.setDefaultFeatures(FeaturePipeline.ZSCORES);
+			String impostorSeed = getOptionValue(args, IMPOSTOR_SEED);
+			if (impostorSeed != null)
+				ImpostorSampler.setSeed(Long.parseLong(impostorSeed));
+			if (hasOption(args, FITTED_BOUNDS) || TrainingSetHandler.getDefaultFeatures() != FeaturePipeline.DEFAULT)
+				AbstractExperiments.setFittedBounds(true);
 //			startExperiments();
-			replicatorExperiments(args[0]);
+			if (args[0].equals(WORKER))
+				replicatorWorker(args[1]);
+			else
+				replicatorExperiments(args[0]);
 //			ultimateExperiment();
+			SQLiteConnectionManager manager = SQLiteConnectionManager.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+			System.out.println(manager.getStatistics());
+			System.out.println(manager.getDaoStatistics());
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			SQLiteConnectionManager.closeAll();
 		}
 	}
 	
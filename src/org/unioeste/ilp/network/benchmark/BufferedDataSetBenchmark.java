@@ -0,0 +1,200 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.data.buffer.BufferedMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.MappedDataSet;
+import org.unioeste.ilp.network.datasets.MappedDataSetWriter;
+import org.unioeste.ilp.network.db.FeatureStore;
+import org.unioeste.ilp.network.train.TrainingSetHandler;
+import org.unioeste.ilp.network.util.DataSetHelper;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the training set kept on the heap (a BasicMLDataSet, as built by the
+ * TrainingSetHandler) with the same set exported to an EGB file and read from the
+ * disk by a BufferedMLDataSet, and written on a mapped file read by a MappedDataSet.
+ * 
+ * The set has the attempts of all the users of a synthetic database with the first
+ * pattern. Measures the time to load each set, the heap kept by it, the peak of the
+ * heap while it's loaded and the time of the backpropagation iterations.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class BufferedDataSetBenchmark {
+
+	private static final String SYNTHETIC_DB_PATH = "db/synthetic.db";
+	private static final String EGB_PATH = "db/synthetic.egb";
+	private static final String MAPPED_PATH = "db/synthetic" + MappedDataSet.EXTENSION;
+	private static final int ITERATIONS = 5;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int syntheticUsers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		
+		SyntheticDatabase.create(SYNTHETIC_DB_PATH, syntheticUsers, 50, 6, 42);
+		FeatureStore store = FeatureStore.load(SYNTHETIC_DB_PATH);
+		
+		// On the heap
+		long before = usedMemory();
+		resetPeaks();
+		long start = System.nanoTime();
+		MLDataSet heapSet = load(store);
+		long heapLoad = System.nanoTime() - start;
+		long heapPeak = peak() - before;
+		long heapBytes = usedMemory() - before;
+		
+		File file = new File(EGB_PATH);
+		start = System.nanoTime();
+		DataSetHelper.saveEGB(heapSet, file);
+		long export = System.nanoTime() - start;
+		
+		File mappedFile = new File(MAPPED_PATH);
+		start = System.nanoTime();
+		MappedDataSetWriter.write(heapSet, mappedFile, true).close();
+		long mappedExport = System.nanoTime() - start;
+		
+		int inputSize = heapSet.getInputSize();
+		long rows = heapSet.getRecordCount();
+		double heapRate = iterationTime(heapSet, inputSize);
+		heapSet = null;
+		
+		// From the disk
+		before = usedMemory();
+		resetPeaks();
+		start = System.nanoTime();
+		BufferedMLDataSet diskSet = DataSetHelper.openEGB(file);
+		long diskLoad = System.nanoTime() - start;
+		long diskPeak = peak() - before;
+		long diskBytes = usedMemory() - before;
+		double diskRate = iterationTime(diskSet, inputSize);
+		diskSet.close();
+		
+		// Mapped
+		before = usedMemory();
+		resetPeaks();
+		start = System.nanoTime();
+		MappedDataSet mappedSet = new MappedDataSet(mappedFile);
+		long mappedLoad = System.nanoTime() - start;
+		long mappedPeak = peak() - before;
+		long mappedBytes = usedMemory() - before;
+		double mappedRate = iterationTime(mappedSet, inputSize);
+		mappedSet.close();
+		
+		System.out.println(rows + " rows with " + inputSize + " inputs, EGB file " + String.format(Locale.US, "%.2f MB", file.length() / 1048576.0)
+				+ String.format(Locale.US, " exported in %.1f ms", export / 1e6)
+				+ ", mapped file " + String.format(Locale.US, "%.2f MB", mappedFile.length() / 1048576.0)
+				+ String.format(Locale.US, " written in %.1f ms", mappedExport / 1e6));
+		System.out.println(String.format(Locale.US, "  load:      BasicMLDataSet %8.1f ms, BufferedMLDataSet %8.1f ms, MappedDataSet %8.1f ms",
+				heapLoad / 1e6, diskLoad / 1e6, mappedLoad / 1e6));
+		System.out.println(String.format(Locale.US, "  heap kept: BasicMLDataSet %8.2f MB, BufferedMLDataSet %8.2f MB, MappedDataSet %8.2f MB",
+				heapBytes / 1048576.0, Math.max(0, diskBytes) / 1048576.0, Math.max(0, mappedBytes) / 1048576.0));
+		System.out.println(String.format(Locale.US, "  heap peak: BasicMLDataSet %8.2f MB, BufferedMLDataSet %8.2f MB, MappedDataSet %8.2f MB",
+				heapPeak / 1048576.0, diskPeak / 1048576.0, mappedPeak / 1048576.0));
+		System.out.println(String.format(Locale.US, "  iteration: BasicMLDataSet %8.1f ms, BufferedMLDataSet %8.1f ms (%.1fx), MappedDataSet %8.1f ms (%.1fx)",
+				heapRate, diskRate, diskRate / heapRate, mappedRate, mappedRate / heapRate));
+		
+		if (!file.delete())
+			throw new IllegalStateException("Can't delete " + file + ".");
+		if (!mappedFile.delete())
+			throw new IllegalStateException("Can't delete " + mappedFile + ".");
+	}
+	
+	/**
+	 * Puts the attempts of all the users with the first pattern on a BasicMLDataSet.
+	 */
+	private static MLDataSet load(FeatureStore store) throws Exception {
+		BasicMLDataSet dataset = new BasicMLDataSet();
+		TrainingSetHandler handler = new TrainingSetHandler(SYNTHETIC_DB_PATH);
+		try {
+			int [] userIds = store.getUserIds();
+			for (int u = 0; u < userIds.length; u++) {
+				if (store.countAttempts(userIds[u], 1) == 0)
+					continue;
+				MLDataSet samples = handler.getReplicatorSamples(userIds[u], 1);
+				for (int i = 0; i < samples.size(); i++) {
+					dataset.add(samples.get(i));
+				}
+			}
+		} finally {
+			handler.closeConnection();
+		}
+		return dataset;
+	}
+	
+	/**
+	 * Mean time of the backpropagation iterations, in milliseconds.
+	 */
+	private static double iterationTime(MLDataSet dataset, int inputSize) {
+		int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
+		BasicNetwork network = new ReplicatorNeuralNetwork(inputSize, hiddenLayers).getNetwork();
+		Backpropagation training = new Backpropagation(network, dataset);
+		training.setThreadCount(1);
+		training.iteration();
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			training.iteration();
+		}
+		long elapsed = System.nanoTime() - start;
+		training.finishTraining();
+		return elapsed / 1e6 / ITERATIONS;
+	}
+	
+	private static void resetPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		}
+	}
+	
+	/**
+	 * Sum of the peaks of the heap pools since the last reset.
+	 */
+	private static long peak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
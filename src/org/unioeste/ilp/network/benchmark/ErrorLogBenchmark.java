@@ -0,0 +1,163 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.encog.Encog;
+import org.encog.ml.train.MLTrain;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.train.ErrorLog;
+import org.unioeste.ilp.network.train.FeatureCache;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
+import org.unioeste.ilp.network.util.OutputHandler;
+import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the epochs per second of a training that formats the error of each
+ * epoch on a list of strings with the training that records the errors on an
+ * ErrorLog, full and sampled, and with no log at all. The bytes allocated by
+ * each epoch are measured when the JVM counts the allocations of the threads.
+ * 
+ * Trains the replicator network of a user with the first pattern, the same
+ * number of epochs on each round, from the same weights. Checks that the file
+ * written by the log is the same of the list of strings.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ErrorLogBenchmark {
+
+	private static final int STRINGS = 0;
+	private static final int LOG = 1;
+	private static final int SAMPLED_LOG = 2;
+	private static final int NO_LOG = 3;
+	private static final String [] NAMES = {"list of strings", "error log", "sampled log", "no log"};
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int userId = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		
+		FeatureCache.load(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		LabeledDataSet trainingSet = ReplicatorDataSetProvider.getReplicatorDataSet(userId, 1).getTrainingSet();
+		trainingSet = ColumnNormalizer.fit(trainingSet).normalize(trainingSet);
+		int inputSize = trainingSet.getInputSize();
+		ReplicatorNeuralNetwork network = new ReplicatorNeuralNetwork(inputSize, new int [] {inputSize / 2, 3, inputSize / 2});
+		double [] weights = new double[network.getNetwork().encodedArrayLength()];
+		network.getNetwork().encodeToArray(weights);
+		
+		// The first round warms up the JIT
+		long [] nanos = new long[NAMES.length];
+		long [] writeNanos = new long[NAMES.length];
+		long [] allocated = new long[NAMES.length];
+		int [] lines = new int[NAMES.length];
+		File [] files = new File[NAMES.length];
+		for (int round = 0; round <= rounds; round++) {
+			for (int mode = 0; mode < NAMES.length; mode++) {
+				network.getNetwork().decodeFromArray(weights);
+				MLTrain training = new Backpropagation(network.getNetwork(), trainingSet);
+				List<String> output = new ArrayList<String>();
+				ErrorLog log = mode == SAMPLED_LOG ? new ErrorLog(100, 0.01) : new ErrorLog();
+				
+				long startBytes = allocatedBytes();
+				long start = System.nanoTime();
+				for (int epoch = 1; epoch <= epochs; epoch++) {
+					training.iteration();
+					double error = training.getError();
+					if (mode == STRINGS)
+						output.add(epoch + "\t" + String.format(Locale.US, "%.20f", error));
+					else if (mode != NO_LOG)
+						log.add(epoch, error);
+				}
+				log.finish();
+				long trained = System.nanoTime();
+				long trainedBytes = allocatedBytes();
+				training.finishTraining();
+				
+				File file = File.createTempFile("errors", ".log");
+				file.deleteOnExit();
+				if (mode == STRINGS)
+					OutputHandler.writeOutput(file, output);
+				else if (mode != NO_LOG)
+					log.write(file);
+				long written = System.nanoTime();
+				
+				if (round > 0) {
+					nanos[mode] += trained - start;
+					writeNanos[mode] += written - trained;
+					allocated[mode] += trainedBytes - startBytes;
+				}
+				lines[mode] = mode == STRINGS ? output.size() : mode == NO_LOG ? 0 : log.size();
+				if (files[mode] != null)
+					files[mode].delete();
+				files[mode] = file;
+			}
+		}
+		
+		if (!Arrays.equals(read(files[STRINGS]), read(files[LOG])))
+			throw new IllegalStateException("The error log wrote a different file than the list of strings.");
+		
+		System.out.println(epochs + " epochs, " + trainingSet.size() + " training rows, " + rounds + " rounds");
+		for (int mode = 0; mode < NAMES.length; mode++) {
+			System.out.println(String.format(Locale.US, "  %-16s %10.0f epochs/s, %8.1f bytes/epoch, %6d lines, written in %6.1f ms",
+					NAMES[mode] + ":", epochs * rounds * 1e9 / nanos[mode], (double) allocated[mode] / epochs / rounds,
+					lines[mode], writeNanos[mode] / 1e6 / rounds));
+		}
+		for (File file : files) {
+			file.delete();
+		}
+		Encog.getInstance().shutdown();
+	}
+	
+	/**
+	 * Gets the bytes allocated by the current thread, 0 when the JVM doesn't count them.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return Math.max(0, ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()));
+		return 0;
+	}
+	
+	private static byte [] read(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte [] bytes = new byte[(int) input.length()];
+			input.readFully(bytes);
+			return bytes;
+		} finally {
+			input.close();
+		}
+	}
+}
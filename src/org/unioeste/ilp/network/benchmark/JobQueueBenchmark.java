@@ -0,0 +1,137 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import org.unioeste.ilp.network.db.JobQueue;
+import org.unioeste.ilp.network.db.JobQueue.Job;
+import org.unioeste.ilp.network.lab.ExperimentWorker;
+
+/**
+ * Runs a grid of jobs on many worker processes sharing the same queue, and
+ * kills one of the workers while it runs a job.
+ * 
+ * Each job only waits its duration. Checks that all the jobs are done, that
+ * the job of the killed worker was claimed again after its lease expired and
+ * that no other job ran twice, and measures the jobs finished per hour.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class JobQueueBenchmark {
+
+	private static final String QUEUE_PATH = "db/jobs-benchmark.db";
+	private static final String WORKER = "worker";
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals(WORKER)) {
+			work(Long.parseLong(args[1]), Long.parseLong(args[2]));
+			return;
+		}
+		int numWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int numJobs = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		long jobMillis = args.length > 2 ? Long.parseLong(args[2]) : 300;
+		long leaseMillis = args.length > 3 ? Long.parseLong(args[3]) : 3000;
+		
+		File file = new File(QUEUE_PATH);
+		if (file.exists() && !file.delete())
+			throw new IllegalStateException("Can't delete " + file + ".");
+		JobQueue queue = new JobQueue(QUEUE_PATH);
+		for (int j = 0; j < numJobs; j++) {
+			queue.submit(j, 1, "benchmark", "");
+		}
+		
+		long start = System.nanoTime();
+		CountDownLatch firstJob = new CountDownLatch(1);
+		List<Process> workers = new ArrayList<Process>();
+		for (int w = 0; w < numWorkers; w++) {
+			ProcessBuilder builder = new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"),
+					JobQueueBenchmark.class.getName(), WORKER, String.valueOf(jobMillis), String.valueOf(leaseMillis));
+			builder.redirectErrorStream(true);
+			Process worker = builder.start();
+			print("worker " + w, worker, w == 0 ? firstJob : new CountDownLatch(1));
+			workers.add(worker);
+		}
+		
+		// Kills the first worker on the middle of its first job
+		firstJob.await();
+		Thread.sleep(jobMillis / 2);
+		workers.get(0).destroy();
+		System.out.println("worker 0 killed");
+		
+		for (Process worker : workers) {
+			worker.waitFor();
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		System.out.println(numWorkers + " workers, " + numJobs + " jobs of " + jobMillis + " ms, lease " + leaseMillis + " ms");
+		System.out.println("  jobs: " + queue.countByStatus() + ", claimed more than once: " + queue.countRetried());
+		System.out.println(String.format(Locale.US, "  %.1f s: %.0f jobs/hour, one worker alone would finish %.0f jobs/hour",
+				elapsed / 1e9, numJobs * 3600e9 / elapsed, 3600e3 / jobMillis));
+		queue.close();
+		if (!file.delete())
+			throw new IllegalStateException("Can't delete " + file + ".");
+	}
+	
+	private static void work(final long jobMillis, long leaseMillis) throws Exception {
+		JobQueue queue = new JobQueue(QUEUE_PATH);
+		try {
+			int completed = new ExperimentWorker(queue, leaseMillis, new ExperimentWorker.Runner() {
+				public void run(Job job) throws Exception {
+					Thread.sleep(jobMillis);
+				}
+			}).work();
+			System.out.println(completed + " jobs completed");
+		} finally {
+			queue.close();
+		}
+	}
+	
+	/**
+	 * Prints the output of the worker on a daemon thread, counting down
+	 * the latch when the worker starts a job.
+	 */
+	private static void print(final String name, final Process worker, final CountDownLatch started) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+				try {
+					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+						if (line.startsWith("Trabalho iniciado"))
+							started.countDown();
+						System.out.println(name + ": " + line);
+					}
+				} catch (IOException e) {
+					// The worker was killed
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.train.FeatureCache;
+import org.unioeste.ilp.network.util.LabeledDataSetHelper;
+import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the LabeledDataSet on contiguous arrays with the layout used before
+ * it: a BasicMLDataSet, with one data pair object for each row, and the labels
+ * on a list of boxed doubles.
+ * 
+ * Measures the heap used by each layout, the backpropagation iterations
+ * per second and the time to count the positive and negative labels.
+ * Compares also the normalization of a dataset with the ideals stored apart
+ * with the normalization of a replicator dataset, where the ideals are the inputs.
+ * The rows are the examples of the database repeated until the number of rows asked.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class LabeledDataSetBenchmark {
+
+	private static final int ITERATIONS = 50;
+	private static final int ROUNDS = 3;
+	private static final int COUNTS = 10000;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		
+		FeatureCache.load(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		MLDataSet examples = new BasicMLDataSet();
+		for (int userId = 2; userId <= 15; userId++) {
+			MLDataSet samples = ReplicatorDataSetProvider.getReplicatorSamples(userId, 1, ReplicatorDataSetProvider.DEFAULT_SAMPLES_SET_SIZE);
+			for (int i = 0; i < samples.size(); i++) {
+				examples.add(samples.get(i));
+			}
+		}
+		
+		long before = usedMemory();
+		BasicMLDataSet legacy = new BasicMLDataSet();
+		List<Double> legacyLabels = new ArrayList<Double>();
+		for (int i = 0; i < numRows; i++) {
+			MLDataPair pair = examples.get(i % examples.size());
+			legacy.add(new BasicMLData(pair.getInputArray().clone()), new BasicMLData(pair.getIdealArray().clone()));
+			legacyLabels.add(label(i));
+		}
+		long legacyBytes = usedMemory() - before;
+		
+		before = usedMemory();
+		LabeledDataSet flat = new LabeledDataSet(numRows);
+		for (int i = 0; i < numRows; i++) {
+			flat.add(examples.get(i % examples.size()), label(i));
+		}
+		long flatBytes = usedMemory() - before;
+		
+		int inputSize = flat.getInputSize();
+		System.out.println(numRows + " rows with " + inputSize + " inputs");
+		System.out.println(String.format(Locale.US, "  heap:       BasicMLDataSet + List<Double> %8.2f MB, LabeledDataSet %8.2f MB (%.1fx)",
+				legacyBytes / 1048576.0, flatBytes / 1048576.0, (double) legacyBytes / flatBytes));
+		
+		// Best of the rounds, alternating the layouts
+		double legacyRate = 0, flatRate = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			legacyRate = Math.max(legacyRate, iterationsPerSecond(legacy, inputSize));
+			flatRate = Math.max(flatRate, iterationsPerSecond(flat, inputSize));
+		}
+		System.out.println(String.format(Locale.US, "  training:   BasicMLDataSet %8.2f it/s, LabeledDataSet %8.2f it/s (%.2fx)",
+				legacyRate, flatRate, flatRate / legacyRate));
+		
+		long start = System.nanoTime();
+		int sum = 0;
+		for (int i = 0; i < COUNTS; i++) {
+			sum += countLabels(legacyLabels, 1.0) + countLabels(legacyLabels, 0.0);
+		}
+		long legacyCount = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < COUNTS; i++) {
+			sum -= flat.getNumPositives() + flat.getNumNegatives();
+		}
+		long flatCount = System.nanoTime() - start;
+		if (sum != 0)
+			throw new IllegalStateException("Layouts counted different number of labels.");
+		System.out.println(String.format(Locale.US, "  %d counts: scanning the list %8.2f ms, counters %8.4f ms",
+				COUNTS, legacyCount / 1e6, flatCount / 1e6));
+		
+		before = usedMemory();
+		LabeledDataSet replicator = new LabeledDataSet(numRows, true);
+		for (int i = 0; i < numRows; i++) {
+			replicator.add(examples.get(i % examples.size()), label(i));
+		}
+		long replicatorBytes = usedMemory() - before;
+		System.out.println(String.format(Locale.US, "  heap:       LabeledDataSet %8.2f MB, replicator LabeledDataSet %8.2f MB",
+				flatBytes / 1048576.0, replicatorBytes / 1048576.0));
+		
+		long separate = Long.MAX_VALUE, aliased = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			start = System.nanoTime();
+			LabeledDataSetHelper.normalize(flat);
+			separate = Math.min(separate, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			LabeledDataSetHelper.normalize(replicator);
+			aliased = Math.min(aliased, System.nanoTime() - start);
+		}
+		before = usedMemory();
+		LabeledDataSet normalized = LabeledDataSetHelper.normalize(flat);
+		long separateBytes = usedMemory() - before;
+		before = usedMemory();
+		LabeledDataSet normalizedReplicator = LabeledDataSetHelper.normalize(replicator);
+		long aliasedBytes = usedMemory() - before;
+		if (normalized.size() != normalizedReplicator.size())
+			throw new IllegalStateException("Normalized datasets with different sizes.");
+		System.out.println(String.format(Locale.US, "  normalize:  inputs and ideals %8.2f ms %8.2f MB, replicator %8.2f ms %8.2f MB (%.1fx faster)",
+				separate / 1e6, separateBytes / 1048576.0, aliased / 1e6, aliasedBytes / 1048576.0, (double) separate / aliased));
+	}
+	
+	private static double label(int row) {
+		return row % 3 == 0 ? 0.0 : 1.0;
+	}
+	
+	/**
+	 * The count made before the counters: scans and unboxes the list.
+	 */
+	private static int countLabels(List<Double> labels, double label) {
+		int sum = 0;
+		for (int i = 0; i < labels.size(); i++) {
+			if (labels.get(i).equals(label)) sum++;
+		}
+		return sum;
+	}
+	
+	private static double iterationsPerSecond(MLDataSet dataset, int inputSize) {
+		int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
+		BasicNetwork network = new ReplicatorNeuralNetwork(inputSize, hiddenLayers).getNetwork();
+		Backpropagation training = new Backpropagation(network, dataset);
+		training.setThreadCount(1);
+		for (int i = 0; i < ITERATIONS / 5; i++) {
+			training.iteration();
+		}
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			training.iteration();
+		}
+		long elapsed = System.nanoTime() - start;
+		training.finishTraining();
+		return ITERATIONS / (elapsed / 1e9);
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
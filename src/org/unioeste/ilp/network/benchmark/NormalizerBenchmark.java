@@ -0,0 +1,144 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.util.Locale;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.train.FeatureCache;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
+import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the epochs needed to reach the target error when the training set is
+ * normalized with the bounds fixed on the ReplicatorNeuralNetwork class and with
+ * the bounds fitted on the training set.
+ * 
+ * Both trainings of each user and pattern start from the same weights.
+ * The trainings that don't reach the target are counted with the max epochs.
+ * 
+ * The training error is measured on the units of each normalization, that's
+ * what the max error of the networks is compared to. The fixed bounds are much
+ * wider than the values of the samples, so their errors are smaller for the same
+ * reconstruction. The final error of both networks is also converted to the units
+ * of the fitted bounds, to compare the reconstructions.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class NormalizerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		double targetError = args.length > 0 ? Double.parseDouble(args[0]) : 0.001;
+		int maxEpochs = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int lastUser = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+		
+		FeatureCache.load(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		System.out.println(String.format(Locale.US, "target error %.6f, max %d epochs", targetError, maxEpochs));
+		System.out.println("user\tpattern\tepochs fixed\tepochs fitted\terror fixed\terror fitted (fitted units)");
+		
+		long fixedTotal = 0, fittedTotal = 0;
+		double fixedErrors = 0, fittedErrors = 0;
+		int fixedReached = 0, fittedReached = 0, trainings = 0;
+		for (int userId = 2; userId <= lastUser; userId++) {
+			for (int patternId = 1; patternId <= 3; patternId++) {
+				ReplicatorDataSet dataset = ReplicatorDataSetProvider.getReplicatorDataSet(userId, patternId);
+				LabeledDataSet trainingSet = dataset.getTrainingSet();
+				int inputSize = trainingSet.getInputSize();
+				int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
+				BasicNetwork network = new ReplicatorNeuralNetwork(inputSize, hiddenLayers).getNetwork();
+				
+				ColumnNormalizer fixedBounds = ColumnNormalizer.fixed(inputSize);
+				ColumnNormalizer fittedBounds = ColumnNormalizer.fit(trainingSet);
+				LabeledDataSet fixedSet = fixedBounds.normalize(trainingSet);
+				LabeledDataSet fittedSet = fittedBounds.normalize(trainingSet);
+				
+				// Converts the errors of the fixed bounds to the units of the fitted bounds
+				double [] scale = new double[inputSize];
+				double [] unit = new double[inputSize];
+				for (int j = 0; j < inputSize; j++) {
+					scale[j] = (fixedBounds.getHigh()[j] - fixedBounds.getLow()[j]) / (fittedBounds.getHigh()[j] - fittedBounds.getLow()[j]);
+					unit[j] = 1;
+				}
+				
+				BasicNetwork fixedNetwork = (BasicNetwork) network.clone();
+				BasicNetwork fittedNetwork = (BasicNetwork) network.clone();
+				int fixed = epochsToTarget(fixedNetwork, fixedSet, targetError, maxEpochs);
+				int fitted = epochsToTarget(fittedNetwork, fittedSet, targetError, maxEpochs);
+				double fixedError = error(fixedNetwork, fixedSet, scale);
+				double fittedError = error(fittedNetwork, fittedSet, unit);
+				System.out.println(String.format(Locale.US, "%d\t%d\t%d\t%d\t%.6f\t%.6f",
+						userId, patternId, fixed, fitted, fixedError, fittedError));
+				
+				fixedTotal += fixed;
+				fittedTotal += fitted;
+				fixedErrors += fixedError;
+				fittedErrors += fittedError;
+				if (fixed < maxEpochs) fixedReached++;
+				if (fitted < maxEpochs) fittedReached++;
+				trainings++;
+			}
+		}
+		System.out.println(String.format(Locale.US, "fixed bounds:  %d of %d reached the target, mean %.1f epochs, mean error %.6f (fitted units)",
+				fixedReached, trainings, (double) fixedTotal / trainings, fixedErrors / trainings));
+		System.out.println(String.format(Locale.US, "fitted bounds: %d of %d reached the target, mean %.1f epochs, mean error %.6f (fitted units)",
+				fittedReached, trainings, (double) fittedTotal / trainings, fittedErrors / trainings));
+	}
+	
+	private static int epochsToTarget(BasicNetwork network, LabeledDataSet trainingSet, double targetError, int maxEpochs) {
+		Backpropagation training = new Backpropagation(network, trainingSet);
+		training.setThreadCount(1);
+		int epoch = 0;
+		do {
+			training.iteration();
+			epoch++;
+		} while (training.getError() > targetError && epoch < maxEpochs);
+		training.finishTraining();
+		return epoch;
+	}
+	
+	/**
+	 * Mean squared error of the reconstructions, each column multiplied by its scale.
+	 */
+	private static double error(BasicNetwork network, LabeledDataSet dataset, double [] scale) {
+		MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+		double [] output = new double[dataset.getIdealSize()];
+		double sum = 0;
+		for (int i = 0; i < dataset.size(); i++) {
+			dataset.getRecord(i, pair);
+			network.compute(pair.getInputArray(), output);
+			for (int j = 0; j < output.length; j++) {
+				double e = (output[j] - pair.getIdealArray()[j]) * scale[j];
+				sum += e * e;
+			}
+		}
+		return sum / ((double) dataset.size() * output.length);
+	}
+}
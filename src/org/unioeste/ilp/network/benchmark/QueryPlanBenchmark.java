@@ -0,0 +1,245 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.unioeste.ilp.network.daos.AttemptDao;
+import org.unioeste.ilp.network.daos.SampleDao;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.db.SchemaProvisioner;
+import org.unioeste.ilp.network.models.Attempt;
+import org.unioeste.ilp.network.models.Sample;
+
+import com.j256.ormlite.logger.LocalLog;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+
+/**
+ * Shows the query plan and the time of each DAO query, before and after
+ * the indexes created by the SchemaProvisioner.
+ * 
+ * Runs over the example database and over a bigger synthetic database,
+ * the indexes are created on copies of both.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class QueryPlanBenchmark {
+
+	private static final String SYNTHETIC_DB_PATH = "db/synthetic.db";
+	private static final int POSITIVE_ATTEMPTS = 50;
+	private static final int NEGATIVE_ATTEMPTS = 15;
+	private static final int ROUNDS = 3;
+	
+	private static final int USER_ID = 2;
+	private static final int PATTERN_ID = 1;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int syntheticUsers = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		
+		compare(SQLiteConnectionSource.DEFAULT_DB_PATH, 20);
+		
+		SyntheticDatabase.create(SYNTHETIC_DB_PATH, syntheticUsers, 50, 6, 42);
+		compare(SYNTHETIC_DB_PATH, 3);
+	}
+	
+	private static void compare(String dbPath, int repetitions) throws Exception {
+		String indexedPath = indexedPath(dbPath);
+		SchemaProvisioner.provisionCopy(dbPath, indexedPath);
+		
+		List<String> names = new ArrayList<String>();
+		System.out.println("==== " + dbPath + " ====");
+		long [] before = run(dbPath, repetitions, names);
+		System.out.println("==== " + indexedPath + " ====");
+		long [] after = run(indexedPath, repetitions, new ArrayList<String>());
+		
+		System.out.println("==== Speedup ====");
+		for (int i = 0; i < names.size(); i++) {
+			System.out.println(String.format(Locale.US, "  %-32s %10.3f ms -> %8.3f ms (%.1fx)",
+					names.get(i), before[i] / 1e6, after[i] / 1e6, (double) before[i] / after[i]));
+		}
+	}
+	
+	private static String indexedPath(String dbPath) {
+		return dbPath.replaceAll("\\.db$", "") + "-indexed.db";
+	}
+	
+	/**
+	 * Shows the plan of each query and measures the best mean time of the DAO method.
+	 * 
+	 * @return Mean time of each query in nanoseconds
+	 */
+	private static long [] run(String dbPath, int repetitions, List<String> names) throws ClassNotFoundException, SQLException {
+		SQLiteConnectionSource connection = new SQLiteConnectionSource(dbPath);
+		List<DaoQuery> queries = queries(connection.getConnectionSource());
+		long [] times = new long[queries.size()];
+		try {
+			for (int i = 0; i < queries.size(); i++) {
+				DaoQuery query = queries.get(i);
+				names.add(query.name);
+				String statement = query.statement();
+				System.out.println(query.name + ": " + statement);
+				List<String> plan = explain(connection.getConnectionSource(), statement);
+				for (int j = 0; j < plan.size(); j++) {
+					System.out.println("    " + plan.get(j));
+				}
+				
+				times[i] = Long.MAX_VALUE;
+				for (int round = 0; round < ROUNDS; round++) {
+					long start = System.nanoTime();
+					for (int r = 0; r < repetitions; r++) {
+						query.run();
+					}
+					times[i] = Math.min(times[i], (System.nanoTime() - start) / repetitions);
+				}
+				System.out.println(String.format(Locale.US, "    %.3f ms", times[i] / 1e6));
+			}
+		} finally {
+			connection.closeConnection();
+		}
+		return times;
+	}
+	
+	private static List<String> explain(ConnectionSource connectionSource, String statement) throws SQLException {
+		List<String> plan = new ArrayList<String>();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		CompiledStatement compiled = null;
+		DatabaseResults results = null;
+		try {
+			compiled = connection.compileStatement("EXPLAIN QUERY PLAN " + statement, StatementType.SELECT, null, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+			results = compiled.runQuery(null);
+			int detail = results.findColumn("detail");
+			while (results.next()) {
+				plan.add(results.getString(detail));
+			}
+		} finally {
+			if (results != null) results.closeQuietly();
+			if (compiled != null) compiled.closeQuietly();
+			connectionSource.releaseConnection(connection);
+		}
+		return plan;
+	}
+	
+	/**
+	 * The queries made by the DAOs while the datasets are built.
+	 */
+	private static List<DaoQuery> queries(ConnectionSource connection) throws SQLException {
+		final AttemptDao attemptDao = new AttemptDao(connection);
+		final SampleDao sampleDao = new SampleDao(connection);
+		final double [] samples = new double[POSITIVE_ATTEMPTS * 6 * SampleDao.SAMPLE_FIELDS];
+		final int [] attemptIds = new int[POSITIVE_ATTEMPTS * 6];
+		
+		List<DaoQuery> queries = new ArrayList<DaoQuery>();
+		queries.add(new DaoQuery("AttemptDao.count") {
+			String statement() throws SQLException {
+				return attemptDao.joinedExperience(USER_ID, PATTERN_ID).setCountOf(true).prepareStatementString();
+			}
+			void run() throws SQLException {
+				attemptDao.count(USER_ID, PATTERN_ID);
+			}
+		});
+		queries.add(new DaoQuery("AttemptDao.getPositiveAttempts") {
+			String statement() throws SQLException {
+				return attemptDao.joinedExperience(USER_ID, PATTERN_ID).limit((long) POSITIVE_ATTEMPTS).prepareStatementString();
+			}
+			void run() throws SQLException {
+				attemptDao.getPositiveAttempts(USER_ID, PATTERN_ID, POSITIVE_ATTEMPTS);
+			}
+		});
+		queries.add(new DaoQuery("AttemptDao.getNegativeRandom") {
+			String statement() throws SQLException {
+				int [] ids = attemptDao.getImpostorSampler().sample(USER_ID, PATTERN_ID, NEGATIVE_ATTEMPTS);
+				List<Integer> idList = new ArrayList<Integer>();
+				for (int i = 0; i < ids.length; i++) {
+					idList.add(ids[i]);
+				}
+				QueryBuilder<Attempt, Integer> query = attemptDao.getDao().queryBuilder();
+				query.where().in("_id", idList);
+				return query.orderBy("_id", true).prepareStatementString();
+			}
+			void run() throws SQLException {
+				attemptDao.getNegativeRandomAttempts(USER_ID, PATTERN_ID, NEGATIVE_ATTEMPTS);
+			}
+		});
+		queries.add(new DaoQuery("SampleDao.count") {
+			String statement() throws SQLException {
+				int attemptId = attemptDao.getRandomAttempt(USER_ID, PATTERN_ID, 1).get(0).getId();
+				QueryBuilder<Sample, Integer> query = sampleDao.getDao().queryBuilder().setCountOf(true);
+				query.where().eq("attempt_id", attemptId);
+				return query.prepareStatementString();
+			}
+			void run() throws SQLException {
+				sampleDao.count(USER_ID, PATTERN_ID);
+			}
+		});
+		queries.add(new DaoQuery("SampleDao.loadUserSamples") {
+			String statement() throws SQLException {
+				return sampleDao.joinedAttempt(attemptDao.joinedExperience(USER_ID, PATTERN_ID))
+						.orderBy("attempt_id", true).orderBy("_id", true).prepareStatementString();
+			}
+			void run() throws SQLException {
+				sampleDao.loadUserSamples(USER_ID, PATTERN_ID, samples, attemptIds);
+			}
+		});
+		queries.add(new DaoQuery("SampleDao.loadSamplesFrom") {
+			List<Attempt> attempts;
+			
+			String statement() throws SQLException {
+				attempts = attemptDao.getPositiveAttempts(USER_ID, PATTERN_ID, POSITIVE_ATTEMPTS);
+				List<Integer> ids = new ArrayList<Integer>();
+				for (int i = 0; i < attempts.size(); i++) {
+					ids.add(attempts.get(i).getId());
+				}
+				QueryBuilder<Sample, Integer> query = sampleDao.getDao().queryBuilder();
+				query.where().in("attempt_id", ids);
+				return query.orderBy("attempt_id", true).orderBy("_id", true).prepareStatementString();
+			}
+			void run() throws SQLException {
+				sampleDao.loadSamplesFromAttempts(attempts, samples, attemptIds);
+			}
+		});
+		return queries;
+	}
+	
+	/**
+	 * A DAO method with the statement it runs.
+	 */
+	private static abstract class DaoQuery {
+		
+		final String name;
+		
+		DaoQuery(String name) {
+			this.name = name;
+		}
+		
+		abstract String statement() throws SQLException;
+		
+		abstract void run() throws SQLException;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.unioeste.ilp.network.daos.AttemptDao;
+import org.unioeste.ilp.network.daos.SampleDao;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.models.Attempt;
+import org.unioeste.ilp.network.models.Sample;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the per attempt loading of samples (one query for each attempt
+ * with the Sample objects mapped by ORMLite) with the bulk loader of SampleDao,
+ * that gets all the attempts on a single query into a primitive buffer.
+ * 
+ * Runs over the example database and over a bigger synthetic database.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class SampleLoaderBenchmark {
+
+	private static final String SYNTHETIC_DB_PATH = "db/synthetic.db";
+	private static final int POSITIVE_ATTEMPTS = 50;
+	private static final int NEGATIVE_ATTEMPTS = 15;
+	private static final int ROUNDS = 3;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int syntheticUsers = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		
+		benchmark(SQLiteConnectionSource.DEFAULT_DB_PATH, 2, 14, 60);
+		
+		SyntheticDatabase.create(SYNTHETIC_DB_PATH, syntheticUsers, 50, 6, 42);
+		benchmark(SYNTHETIC_DB_PATH, 2, syntheticUsers, 12);
+	}
+	
+	private static void benchmark(String dbPath, int firstUser, int lastUser, int maxSets) throws ClassNotFoundException, SQLException {
+		SQLiteConnectionSource connection = new SQLiteConnectionSource(dbPath);
+		AttemptDao attemptDao = new AttemptDao(connection.getConnectionSource());
+		SampleDao sampleDao = new SampleDao(connection.getConnectionSource());
+		
+		// Same attempts for both loaders
+		List<List<Attempt>> attemptSets = new ArrayList<List<Attempt>>();
+		for (int userId = firstUser; userId <= lastUser && attemptSets.size() < maxSets; userId++) {
+			for (int patternId = 1; patternId <= SyntheticDatabase.NUM_PATTERNS; patternId++) {
+				attemptSets.add(attemptDao.getPositiveAttempts(userId, patternId, POSITIVE_ATTEMPTS));
+				attemptSets.add(attemptDao.getNegativeRandomAttempts(userId, patternId, NEGATIVE_ATTEMPTS));
+			}
+		}
+		
+		int numDots = sampleDao.count(firstUser, 1);
+		double [] samples = new double[POSITIVE_ATTEMPTS * numDots * SampleDao.SAMPLE_FIELDS];
+		int [] attemptIds = new int[POSITIVE_ATTEMPTS * numDots];
+		
+		long legacy = Long.MAX_VALUE, bulk = Long.MAX_VALUE;
+		int legacyRows = 0, bulkRows = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			legacyRows = 0;
+			for (int i = 0; i < attemptSets.size(); i++) {
+				legacyRows += loadPerAttempt(sampleDao, attemptSets.get(i)).size();
+			}
+			legacy = Math.min(legacy, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			bulkRows = 0;
+			for (int i = 0; i < attemptSets.size(); i++) {
+				bulkRows += sampleDao.loadSamplesFromAttempts(attemptSets.get(i), samples, attemptIds);
+			}
+			bulk = Math.min(bulk, System.nanoTime() - start);
+		}
+		connection.closeConnection();
+		
+		if (legacyRows != bulkRows)
+			throw new IllegalStateException("Loaders returned different number of samples: " + legacyRows + " and " + bulkRows + ".");
+		
+		System.out.println(dbPath + ": " + attemptSets.size() + " attempt sets, " + bulkRows + " samples");
+		System.out.println(String.format(Locale.US, "  per attempt queryForEq: %10.2f ms", legacy / 1e6));
+		System.out.println(String.format(Locale.US, "  bulk loader:            %10.2f ms (%.1fx)", bulk / 1e6, (double) legacy / bulk));
+	}
+	
+	/**
+	 * The loading made before the bulk loader: one query for each attempt.
+	 */
+	private static List<Sample> loadPerAttempt(SampleDao sampleDao, List<Attempt> attempts) throws SQLException {
+		List<Sample> samples = new ArrayList<Sample>();
+		for (int i = 0; i < attempts.size(); i++) {
+			samples.addAll(sampleDao.getDao().queryForEq("attempt_id", attempts.get(i).getId()));
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Generates SQLite databases with the same schema of the database
+ * collected on the phones, filled with random samples.
+ * 
+ * Used by the benchmarks to check how the data layer behaves
+ * with populations bigger than the example database.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class SyntheticDatabase {
+
+	public static final int NUM_PATTERNS = 3;
+	
+	private static final String[] SCHEMA = {
+		"CREATE TABLE 'users' ('_id' INTEGER PRIMARY KEY ,'NAME' TEXT NOT NULL UNIQUE )",
+		"CREATE TABLE 'patterns' ('_id' INTEGER PRIMARY KEY ,'PATTERN_SHA1' TEXT NOT NULL UNIQUE ,'PATTERN_STRING' TEXT NOT NULL )",
+		"CREATE TABLE 'experiences' ('_id' INTEGER PRIMARY KEY ,'DONE' INTEGER,'USER_ID' INTEGER,'PATTERN_ID' INTEGER)",
+		"CREATE TABLE 'attempts' ('_id' INTEGER PRIMARY KEY ,'EXPERIENCE_ID' INTEGER)",
+		"CREATE TABLE 'samples' ('_id' INTEGER PRIMARY KEY ,'EVENT_TIME' REAL NOT NULL ,'PRESSURE' REAL NOT NULL ,'PRESSURE_AREA' REAL NOT NULL ,'ATTEMPT_ID' INTEGER)"
+	};
+	
+	/**
+	 * Creates a new database on the path specified. Any file on the path is replaced.
+	 * 
+	 * Every user has one experience with each pattern and every attempt
+	 * has the same number of dots.
+	 * 
+	 * @param path Database path
+	 * @param numUsers Number of users
+	 * @param attemptsPerPattern Attempts of each user with each pattern
+	 * @param dotsPerAttempt Samples of each attempt
+	 * @param seed Random seed
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	public static void create(String path, int numUsers, int attemptsPerPattern, int dotsPerAttempt, long seed) throws ClassNotFoundException, SQLException {
+		File file = new File(path);
+		if (file.exists() && !file.delete())
+			throw new IllegalStateException("Can't replace the database " + path + ".");
+		
+		Class.forName("org.sqlite.JDBC");
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+		try {
+			Statement statement = connection.createStatement();
+			for (int i = 0; i < SCHEMA.length; i++) {
+				statement.executeUpdate(SCHEMA[i]);
+			}
+			statement.close();
+			
+			connection.setAutoCommit(false);
+			fill(connection, numUsers, attemptsPerPattern, dotsPerAttempt, new Random(seed));
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+	
+	private static void fill(Connection connection, int numUsers, int attemptsPerPattern, int dotsPerAttempt, Random random) throws SQLException {
+		PreparedStatement users = connection.prepareStatement("INSERT INTO users VALUES (?, ?)");
+		PreparedStatement patterns = connection.prepareStatement("INSERT INTO patterns VALUES (?, ?, ?)");
+		PreparedStatement experiences = connection.prepareStatement("INSERT INTO experiences VALUES (?, 1, ?, ?)");
+		PreparedStatement attempts = connection.prepareStatement("INSERT INTO attempts VALUES (?, ?)");
+		PreparedStatement samples = connection.prepareStatement("INSERT INTO samples VALUES (?, ?, ?, ?, ?)");
+		
+		for (int patternId = 1; patternId <= NUM_PATTERNS; patternId++) {
+			patterns.setInt(1, patternId);
+			patterns.setString(2, "sha1-" + patternId);
+			patterns.setString(3, "pattern-" + patternId);
+			patterns.executeUpdate();
+		}
+		
+		int experienceId = 0, attemptId = 0, sampleId = 0;
+		for (int userId = 1; userId <= numUsers; userId++) {
+			users.setInt(1, userId);
+			users.setString(2, "user " + userId);
+			users.executeUpdate();
+			
+			for (int patternId = 1; patternId <= NUM_PATTERNS; patternId++) {
+				experiences.setInt(1, ++experienceId);
+				experiences.setInt(2, userId);
+				experiences.setInt(3, patternId);
+				experiences.executeUpdate();
+				
+				// Each user has a rhythm and a pressure of his own
+				double interval = 150 + random.nextDouble() * 400;
+				double pressure = 0.05 + random.nextDouble() * 0.2;
+				for (int a = 0; a < attemptsPerPattern; a++) {
+					attempts.setInt(1, ++attemptId);
+					attempts.setInt(2, experienceId);
+					attempts.addBatch();
+					
+					double eventTime = random.nextInt(100000000);
+					for (int d = 0; d < dotsPerAttempt; d++) {
+						eventTime += interval * (0.8 + random.nextDouble() * 0.4);
+						double dotPressure = pressure * (0.8 + random.nextDouble() * 0.4);
+						samples.setInt(1, ++sampleId);
+						samples.setDouble(2, eventTime);
+						samples.setDouble(3, dotPressure);
+						samples.setDouble(4, dotPressure);
+						samples.setInt(5, attemptId);
+						samples.addBatch();
+					}
+				}
+				attempts.executeBatch();
+				samples.executeBatch();
+			}
+		}
+		
+		users.close();
+		patterns.close();
+		experiences.close();
+		attempts.close();
+		samples.close();
+	}
+}
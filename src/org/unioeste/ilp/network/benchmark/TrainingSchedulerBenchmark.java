@@ -0,0 +1,113 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import org.encog.Encog;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.train.FeatureCache;
+import org.unioeste.ilp.network.train.Trainer;
+import org.unioeste.ilp.network.train.TrainingScheduler;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
+import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
+
+import com.j256.ormlite.logger.LocalLog;
+
+/**
+ * Compares the networks trained per hour with the propagation threads chosen
+ * by Encog, one network after the other, with the threads shared by the
+ * TrainingScheduler.
+ * 
+ * Trains a replicator network for each user of the database with the first
+ * pattern, with a fixed number of iterations, as many times as asked.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class TrainingSchedulerBenchmark {
+
+	private static final int ITERATIONS = 300;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty(LocalLog.LOCAL_LOG_FILE_PROPERTY, "queries.log");
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		
+		FeatureCache.load(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		List<LabeledDataSet> trainingSets = new ArrayList<LabeledDataSet>();
+		for (int round = 0; round < rounds; round++) {
+			for (int userId = 2; userId <= 15; userId++) {
+				LabeledDataSet trainingSet = ReplicatorDataSetProvider.getReplicatorDataSet(userId, 1).getTrainingSet();
+				trainingSets.add(ColumnNormalizer.fit(trainingSet).normalize(trainingSet));
+			}
+		}
+		
+		// Threads chosen by Encog
+		long start = System.nanoTime();
+		for (LabeledDataSet trainingSet : trainingSets) {
+			ReplicatorNeuralNetwork network = createNetwork(trainingSet);
+			Trainer.train(network);
+		}
+		double encogRate = trainingSets.size() * 3600e9 / (System.nanoTime() - start);
+		
+		// Threads shared by the scheduler
+		final TrainingScheduler scheduler = new TrainingScheduler(numThreads);
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for (final LabeledDataSet trainingSet : trainingSets) {
+			tasks.add(new Callable<Double>() {
+				public Double call() {
+					ReplicatorNeuralNetwork network = createNetwork(trainingSet);
+					scheduler.train(network);
+					return network.getTrainError();
+				}
+			});
+		}
+		LabeledDataSet first = trainingSets.get(0);
+		long work = TrainingScheduler.work(first, createNetwork(first).getNetwork().encodedArrayLength());
+		scheduler.invokeAll(work, tasks);
+		scheduler.shutdown();
+		
+		System.out.println(trainingSets.size() + " networks, " + first.size() + " training rows, work " + work
+				+ ": " + scheduler.getPropagationThreads(work) + " propagation threads, "
+				+ scheduler.getParallelNetworks(work) + " networks at a time");
+		System.out.println(String.format(Locale.US, "  Encog threads: %10.1f networks/hour", encogRate));
+		System.out.println(String.format(Locale.US, "  scheduler:     %10.1f networks/hour (%.2fx)",
+				scheduler.getNetworksPerHour(), scheduler.getNetworksPerHour() / encogRate));
+		System.out.println("  " + scheduler.report());
+		Encog.getInstance().shutdown();
+	}
+	
+	private static ReplicatorNeuralNetwork createNetwork(LabeledDataSet trainingSet) {
+		int inputSize = trainingSet.getInputSize();
+		int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
+		ReplicatorNeuralNetwork network = new ReplicatorNeuralNetwork(inputSize, hiddenLayers);
+		network.setMaxError(Double.MIN_VALUE);
+		network.setMaxIterations(ITERATIONS);
+		network.setTrainStrategy(new Backpropagation(network.getNetwork(), trainingSet));
+		return network;
+	}
+}
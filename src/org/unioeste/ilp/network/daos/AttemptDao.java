@@ -20,6 +20,7 @@
 package org.unioeste.ilp.network.daos;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.unioeste.ilp.network.models.Attempt;
@@ -27,7 +28,10 @@ import org.unioeste.ilp.network.models.Experience;
 
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.support.ConnectionSource;
 
 /**
@@ -36,6 +40,13 @@ import com.j256.ormlite.support.ConnectionSource;
  * Uses ORMLite {http://ormlite.com/} for mapping objects on the 
  * database and building queries.
  * 
+ * The queries executed many times are prepared once with arguments, so
+ * an instance must be used by one thread at a time, like its connection.
+ * 
+ * The ImpostorSampler is loaded by the instance on its first use. The DAOs
+ * of a DaoRegistry live as long as the connection of the pool, so the
+ * sampler is built once for each connection and released with the pool.
+ * 
  * @author Lucas Andr de Alencar
  *
  */
@@ -44,9 +55,20 @@ public class AttemptDao {
 	private Dao<Attempt, Integer> attemptDao;
 	private ExperienceDao experienceDao;
 	
+	// Sampler of negative examples, loaded on the first use
+	private ImpostorSampler impostorSampler;
+	
+	private PreparedQuery<Attempt> countQuery;
+	private SelectArg countUserId = new SelectArg();
+	private SelectArg countPatternId = new SelectArg();
+	
 	public AttemptDao(ConnectionSource connection) throws SQLException {
+		this(connection, new ExperienceDao(connection));
+	}
+	
+	public AttemptDao(ConnectionSource connection, ExperienceDao experienceDao) throws SQLException {
 		attemptDao = DaoManager.createDao(connection, Attempt.class);
-		experienceDao = new ExperienceDao(connection);
+		this.experienceDao = experienceDao;
 	}
 	
 	public Dao<Attempt, Integer> getDao() {
@@ -62,8 +84,12 @@ public class AttemptDao {
 	 * @throws SQLException
 	 */
 	public int count(int userId, int patternId) throws SQLException {
-		QueryBuilder<Attempt, Integer> query = joinedExperience(userId, patternId).setCountOf(true);
-		return (int) attemptDao.countOf(query.prepare());
+		if (countQuery == null)
+			countQuery = joinedExperience(countUserId, countPatternId).setCountOf(true).prepare();
+		
+		countUserId.setValue(userId);
+		countPatternId.setValue(patternId);
+		return (int) attemptDao.countOf(countQuery);
 	}
 	
 	/**
@@ -80,6 +106,21 @@ public class AttemptDao {
 		return attemptQuery.join(expQuery);
 	}
 	
+	/**
+	 * Makes a query where the attempt table is joined with the experience table,
+	 * with the user and pattern set on the arguments before each execution.
+	 * 
+	 * @param userId User argument
+	 * @param patternId Pattern argument
+	 * @return Joined query with attempt and experience
+	 * @throws SQLException
+	 */
+	public QueryBuilder<Attempt, Integer> joinedExperience(SelectArg userId, SelectArg patternId) throws SQLException {
+		QueryBuilder<Experience, Integer> expQuery = experienceDao.queryWithSameUserId(userId, patternId);
+		QueryBuilder<Attempt, Integer> attemptQuery = attemptDao.queryBuilder();
+		return attemptQuery.join(expQuery);
+	}
+	
 	/**
 	 * Gets random attempts from the user associated with the pattern specified.
 	 * 
@@ -96,6 +137,7 @@ public class AttemptDao {
 	
 	/**
 	 * Gets a random list of attempts negatives, that the user is different but the pattern is the same.
+	 * The attempts are drawn by the ImpostorSampler and returned ordered by id.
 	 * 
 	 * @param userId User
 	 * @param patternId Pattern
@@ -104,10 +146,50 @@ public class AttemptDao {
 	 * @throws SQLException
 	 */
 	public List<Attempt> getNegativeRandomAttempts(int userId, int patternId, int maxAttempts) throws SQLException {
-		QueryBuilder<Experience, Integer> expQuery = experienceDao.queryWithDiffUserId(userId, patternId);
+		int [] ids = getImpostorSampler().sample(userId, patternId, maxAttempts);
+		if (ids.length == 0)
+			return new ArrayList<Attempt>();
+		
+		List<Integer> attemptIds = new ArrayList<Integer>(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			attemptIds.add(ids[i]);
+		}
 		QueryBuilder<Attempt, Integer> attemptQuery = attemptDao.queryBuilder();
-		List<Attempt> attempts = attemptDao.query(attemptQuery.join(expQuery).orderByRaw("random()").limit((long) maxAttempts).prepare());
-		return attempts;
+		attemptQuery.where().in("_id", attemptIds);
+		return attemptDao.query(attemptQuery.orderBy("_id", true).prepare());
+	}
+	
+	/**
+	 * Gets the sampler of negative examples of the database, loading the
+	 * candidates (attempt, user and pattern) on the first call.
+	 * 
+	 * @return ImpostorSampler
+	 * @throws SQLException
+	 */
+	public ImpostorSampler getImpostorSampler() throws SQLException {
+		if (impostorSampler == null)
+			impostorSampler = loadImpostorSampler();
+		return impostorSampler;
+	}
+	
+	private ImpostorSampler loadImpostorSampler() throws SQLException {
+		GenericRawResults<String[]> results = attemptDao.queryRaw(
+				"SELECT `attempts`.`_id`, `experiences`.`user_id`, `experiences`.`pattern_id` FROM `attempts` " +
+				"INNER JOIN `experiences` ON `attempts`.`experience_id` = `experiences`.`_id`");
+		try {
+			List<String[]> rows = results.getResults();
+			int [] attemptIds = new int[rows.size()];
+			int [] userIds = new int[rows.size()];
+			int [] patternIds = new int[rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				attemptIds[i] = Integer.parseInt(rows.get(i)[0]);
+				userIds[i] = Integer.parseInt(rows.get(i)[1]);
+				patternIds[i] = Integer.parseInt(rows.get(i)[2]);
+			}
+			return new ImpostorSampler(attemptIds, userIds, patternIds);
+		} finally {
+			results.close();
+		}
 	}
 	
 	/**
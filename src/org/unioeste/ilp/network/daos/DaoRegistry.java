@@ -0,0 +1,80 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.daos;
+
+import java.sql.SQLException;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Set of DAOs of a connection source, built once and shared by all the handlers
+ * that lease the connection. The nested DAOs are shared too: the SampleDao
+ * uses the AttemptDao of the registry, that uses its ExperienceDao.
+ * 
+ * The DAOs keep prepared queries, so the registry is used by one thread
+ * at a time, while its connection is leased.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class DaoRegistry {
+
+	private ExperienceDao experienceDao;
+	private AttemptDao attemptDao;
+	private SampleDao sampleDao;
+	private UserDao userDao;
+	
+	// Time to build the DAOs of the registry
+	private long buildNanos;
+	
+	public DaoRegistry(ConnectionSource connection) throws SQLException {
+		long start = System.nanoTime();
+		experienceDao = new ExperienceDao(connection);
+		attemptDao = new AttemptDao(connection, experienceDao);
+		sampleDao = new SampleDao(connection, attemptDao);
+		userDao = new UserDao(connection);
+		buildNanos = System.nanoTime() - start;
+	}
+	
+	public ExperienceDao getExperienceDao() {
+		return experienceDao;
+	}
+	
+	public AttemptDao getAttemptDao() {
+		return attemptDao;
+	}
+	
+	public SampleDao getSampleDao() {
+		return sampleDao;
+	}
+	
+	public UserDao getUserDao() {
+		return userDao;
+	}
+	
+	/**
+	 * Gets the time spent building the DAOs of the registry.
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+}
@@ -26,6 +26,7 @@ import org.unioeste.ilp.network.models.Experience;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.support.ConnectionSource;
 
 /**
@@ -67,6 +68,21 @@ public class ExperienceDao {
 		return expQuery;
 	}
 	
+	/**
+	 * Builds a query where the experiences retrieved must have the same user and pattern,
+	 * with the values set on the arguments before each execution.
+	 * 
+	 * @param userId User argument
+	 * @param patternId Pattern argument
+	 * @return Experience query
+	 * @throws SQLException
+	 */
+	public QueryBuilder<Experience, Integer> queryWithSameUserId(SelectArg userId, SelectArg patternId) throws SQLException {
+		QueryBuilder<Experience, Integer> expQuery = experienceDao.queryBuilder();
+		expQuery.where().eq("user_id", userId).and().eq("pattern_id", patternId);
+		return expQuery;
+	}
+	
 	/**
 	 * Bulds a query where the experiences retrieved must have the same pattern but different user. 
 	 * 
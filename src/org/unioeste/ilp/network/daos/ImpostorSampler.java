@@ -0,0 +1,189 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.daos;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Draws the negative examples (attempts of other users with the same pattern)
+ * from the candidates kept on memory, instead of sorting the candidates
+ * by random() on the database.
+ * 
+ * The candidates of each pattern are ordered by user, so the attempts of the
+ * user being trained are a contiguous range that is skipped by the sampling.
+ * The attempts are chosen with the Floyd's algorithm, in O(k) for k attempts.
+ * 
+ * The random generator of each sample is seeded with the seed of the sampler
+ * combined with the user and the pattern. The same seed gives always the same
+ * negative examples to a user and pattern, in any order the datasets are built.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ImpostorSampler {
+
+	public static final long DEFAULT_SEED = 42;
+	
+	// User excluded from the negative examples
+	public static final int ADMIN_USER_ID = 1;
+	
+	private static long seed = DEFAULT_SEED;
+	
+	// Attempts ids and users of each pattern, ordered by user and attempt id
+	private Map<Integer, int[]> patternAttempts = new HashMap<Integer, int[]>();
+	private Map<Integer, int[]> patternUsers = new HashMap<Integer, int[]>();
+	
+	/**
+	 * Builds the sampler with the candidates. The three arrays are parallel,
+	 * with the pattern and the user of each attempt.
+	 * 
+	 * @param attemptIds Attempts ids
+	 * @param userIds User of each attempt
+	 * @param patternIds Pattern of each attempt
+	 */
+	public ImpostorSampler(int [] attemptIds, int [] userIds, int [] patternIds) {
+		// Sorts the candidates by pattern, user and attempt
+		long [][] keys = new long[attemptIds.length][];
+		int numCandidates = 0;
+		for (int i = 0; i < attemptIds.length; i++) {
+			if (userIds[i] != ADMIN_USER_ID)
+				keys[numCandidates++] = new long[] {patternIds[i], userIds[i], attemptIds[i]};
+		}
+		long [][] candidates = Arrays.copyOf(keys, numCandidates);
+		Arrays.sort(candidates, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				for (int i = 0; i < a.length; i++) {
+					if (a[i] != b[i])
+						return a[i] < b[i] ? -1 : 1;
+				}
+				return 0;
+			}
+		});
+		
+		int start = 0;
+		while (start < candidates.length) {
+			int end = start;
+			while (end < candidates.length && candidates[end][0] == candidates[start][0])
+				end++;
+			
+			int [] attempts = new int[end - start];
+			int [] users = new int[end - start];
+			for (int i = start; i < end; i++) {
+				users[i - start] = (int) candidates[i][1];
+				attempts[i - start] = (int) candidates[i][2];
+			}
+			patternAttempts.put((int) candidates[start][0], attempts);
+			patternUsers.put((int) candidates[start][0], users);
+			start = end;
+		}
+	}
+	
+	/**
+	 * Sets the seed used by all the samplers.
+	 * 
+	 * @param newSeed Seed
+	 */
+	public static synchronized void setSeed(long newSeed) {
+		seed = newSeed;
+	}
+	
+	public static synchronized long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Counts the negative candidates for the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of attempts from the other users
+	 */
+	public int countCandidates(int userId, int patternId) {
+		int [] users = patternUsers.get(patternId);
+		if (users == null)
+			return 0;
+		int [] range = userRange(users, userId);
+		return users.length - (range[1] - range[0]);
+	}
+	
+	/**
+	 * Draws attempts with the pattern from the other users.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxAttempts Max attempts
+	 * @return Attempts ids, ordered
+	 */
+	public int [] sample(int userId, int patternId, int maxAttempts) {
+		int [] attempts = patternAttempts.get(patternId);
+		if (attempts == null)
+			return new int[0];
+		
+		int [] range = userRange(patternUsers.get(patternId), userId);
+		int skipped = range[1] - range[0];
+		int n = attempts.length - skipped;
+		int k = Math.min(maxAttempts, n);
+		Random random = new Random(mix(getSeed(), userId, patternId));
+		
+		// Floyd's algorithm, over the candidates without the user range
+		Set<Integer> chosen = new HashSet<Integer>();
+		for (int j = n - k; j < n; j++) {
+			int t = random.nextInt(j + 1);
+			chosen.add(chosen.contains(t) ? j : t);
+		}
+		
+		int [] ids = new int[k];
+		int i = 0;
+		for (Integer index : chosen) {
+			ids[i++] = attempts[index < range[0] ? index : index + skipped];
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+	
+	/**
+	 * Finds the first and the last (exclusive) positions of the user.
+	 */
+	private static int [] userRange(int [] users, int userId) {
+		int lo = 0, hi = users.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (users[mid] < userId) lo = mid + 1; else hi = mid;
+		}
+		int end = lo;
+		while (end < users.length && users[end] == userId)
+			end++;
+		return new int[] {lo, end};
+	}
+	
+	private static long mix(long seed, int userId, int patternId) {
+		long h = seed ^ (userId * 0x9E3779B97F4A7C15L) ^ (patternId * 0xC2B2AE3D27D4EB4FL);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
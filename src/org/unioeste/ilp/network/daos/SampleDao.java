@@ -28,8 +28,14 @@ import org.unioeste.ilp.network.models.Sample;
 
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
 
 /**
  * DAO for the entity Sample on the database.
@@ -37,17 +43,34 @@ import com.j256.ormlite.support.ConnectionSource;
  * Uses ORMLite {http://ormlite.com/} for mapping objects on the 
  * database and building queries.
  *  
+ * The queries executed many times are prepared once with arguments, so
+ * an instance must be used by one thread at a time, like its connection.
+ * 
  * @author Lucas Andr de Alencar
  *
  */
 public class SampleDao {
 
+	// Number of values loaded for each sample: event_time, pressure and pressure_area
+	public static final int SAMPLE_FIELDS = 3;
+	
 	private Dao<Sample, Integer> sampleDao;
 	private AttemptDao attemptDao;
 	
+	private PreparedQuery<Sample> countQuery;
+	private SelectArg countAttemptId = new SelectArg();
+	
+	private PreparedQuery<Sample> userSamplesQuery;
+	private SelectArg userSamplesUserId = new SelectArg();
+	private SelectArg userSamplesPatternId = new SelectArg();
+	
 	public SampleDao(ConnectionSource connection) throws SQLException {
+		this(connection, new AttemptDao(connection));
+	}
+	
+	public SampleDao(ConnectionSource connection, AttemptDao attemptDao) throws SQLException {
 		sampleDao = DaoManager.createDao(connection, Sample.class);
-		attemptDao = new AttemptDao(connection);
+		this.attemptDao = attemptDao;
 	}
 	
 	public Dao<Sample, Integer> getDao() {
@@ -66,8 +89,12 @@ public class SampleDao {
 	}
 	
 	public int count(int attemptId) throws SQLException {
-		QueryBuilder<Sample, Integer> query = sampleDao.queryBuilder().setCountOf(true);
-		return (int) sampleDao.countOf(query.where().eq("attempt_id", attemptId).prepare());
+		if (countQuery == null) {
+			QueryBuilder<Sample, Integer> query = sampleDao.queryBuilder().setCountOf(true);
+			countQuery = query.where().eq("attempt_id", countAttemptId).prepare();
+		}
+		countAttemptId.setValue(attemptId);
+		return (int) sampleDao.countOf(countQuery);
 	}
 	
 	/**
@@ -85,17 +112,183 @@ public class SampleDao {
 	
 	/**
 	 * Gets all the samples from the attempts.
+	 * All the attempts are fetched on a single query, ordered by attempt and sample.
 	 * 
 	 * @param attempts List of attempts
 	 * @return List of samples
 	 * @throws SQLException
 	 */
 	public List<Sample> getSamplesFromAttempts(List<Attempt> attempts) throws SQLException {
-		List<Sample> samples = new ArrayList<Sample>();
+		if (attempts.isEmpty())
+			return new ArrayList<Sample>();
+		
+		QueryBuilder<Sample, Integer> query = sampleDao.queryBuilder();
+		query.where().in("attempt_id", attemptIds(attempts));
+		query.orderBy("attempt_id", true).orderBy("_id", true);
+		return query(query);
+	}
+	
+	/**
+	 * Loads all the samples from the attempts on a single query,
+	 * writing the rows straight into the samples buffer without mapping Sample objects.
+	 * 
+	 * Each row uses SAMPLE_FIELDS positions on the buffer (event_time, pressure and pressure_area)
+	 * and the rows are ordered by attempt and sample. When attemptIds isn't null,
+	 * the attempt of each row is written on it.
+	 * 
+	 * @param attempts List of attempts
+	 * @param samples Preallocated buffer of samples
+	 * @param attemptIds Preallocated buffer of attempts, may be null
+	 * @return Number of rows loaded
+	 * @throws SQLException
+	 */
+	public int loadSamplesFromAttempts(List<Attempt> attempts, double [] samples, int [] attemptIds) throws SQLException {
+		if (attempts.isEmpty())
+			return 0;
+		
+		QueryBuilder<Sample, Integer> query = sampleDao.queryBuilder();
+		query.where().in("attempt_id", attemptIds(attempts));
+		return loadSamples(prepareSamplesQuery(query), samples, attemptIds);
+	}
+	
+	/**
+	 * Reads all the samples from the attempts on a single query, passing each row
+	 * of the results to the sink while they are read.
+	 * 
+	 * @param attempts List of attempts
+	 * @param sink Receives the samples, ordered by attempt and sample
+	 * @return Number of rows read
+	 * @throws SQLException
+	 */
+	public int streamSamplesFromAttempts(List<Attempt> attempts, SampleSink sink) throws SQLException {
+		if (attempts.isEmpty())
+			return 0;
+		
+		QueryBuilder<Sample, Integer> query = sampleDao.queryBuilder();
+		query.where().in("attempt_id", attemptIds(attempts));
+		return streamSamples(prepareSamplesQuery(query), sink);
+	}
+	
+	/**
+	 * Loads all the samples from a user with the pattern specified on a single query,
+	 * writing the rows straight into the samples buffer.
+	 * 
+	 * See loadSamplesFromAttempts for the layout of the buffers.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param samples Preallocated buffer of samples
+	 * @param attemptIds Preallocated buffer of attempts, may be null
+	 * @return Number of rows loaded
+	 * @throws SQLException
+	 */
+	public int loadUserSamples(int userId, int patternId, double [] samples, int [] attemptIds) throws SQLException {
+		return loadSamples(prepareUserSamplesQuery(userId, patternId), samples, attemptIds);
+	}
+	
+	/**
+	 * Reads all the samples from a user with the pattern specified on a single query,
+	 * passing each row of the results to the sink while they are read.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param sink Receives the samples, ordered by attempt and sample
+	 * @return Number of rows read
+	 * @throws SQLException
+	 */
+	public int streamUserSamples(int userId, int patternId, SampleSink sink) throws SQLException {
+		return streamSamples(prepareUserSamplesQuery(userId, patternId), sink);
+	}
+	
+	private PreparedQuery<Sample> prepareUserSamplesQuery(int userId, int patternId) throws SQLException {
+		if (userSamplesQuery == null) {
+			QueryBuilder<Attempt, Integer> attemptQuery = attemptDao.joinedExperience(userSamplesUserId, userSamplesPatternId);
+			userSamplesQuery = prepareSamplesQuery(joinedAttempt(attemptQuery));
+		}
+		userSamplesUserId.setValue(userId);
+		userSamplesPatternId.setValue(patternId);
+		return userSamplesQuery;
+	}
+	
+	/**
+	 * Selects only the columns read by loadSamples, ordered by attempt and sample.
+	 */
+	private PreparedQuery<Sample> prepareSamplesQuery(QueryBuilder<Sample, Integer> query) throws SQLException {
+		query.selectColumns("event_time", "pressure", "pressure_area", "attempt_id");
+		query.orderBy("attempt_id", true).orderBy("_id", true);
+		return query.prepare();
+	}
+	
+	/**
+	 * Runs the samples query writing the rows into the buffers.
+	 * 
+	 * @param query Prepared samples query
+	 * @param samples Preallocated buffer of samples
+	 * @param attemptIds Preallocated buffer of attempts, may be null
+	 * @return Number of rows loaded
+	 * @throws SQLException
+	 */
+	private int loadSamples(PreparedQuery<Sample> query, final double [] samples, final int [] attemptIds) throws SQLException {
+		return streamSamples(query, new SampleSink() {
+			private int rows = 0;
+			
+			public void sample(int attemptId, double eventTime, double pressure, double pressureArea) {
+				int offset = rows * SAMPLE_FIELDS;
+				if (offset + SAMPLE_FIELDS > samples.length)
+					throw new IllegalStateException("Samples buffer is smaller than the number of samples loaded.");
+				
+				samples[offset] = eventTime;
+				samples[offset + 1] = pressure;
+				samples[offset + 2] = pressureArea;
+				if (attemptIds != null)
+					attemptIds[rows] = attemptId;
+				rows++;
+			}
+		});
+	}
+	
+	/**
+	 * Runs the samples query reading the columns directly from the database results,
+	 * each row is passed to the sink before the next one is read.
+	 * 
+	 * @param query Prepared samples query
+	 * @param sink Receives the samples
+	 * @return Number of rows read
+	 * @throws SQLException
+	 */
+	private int streamSamples(PreparedQuery<Sample> query, SampleSink sink) throws SQLException {
+		ConnectionSource connectionSource = sampleDao.getConnectionSource();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		CompiledStatement statement = null;
+		DatabaseResults results = null;
+		try {
+			statement = query.compile(connection, StatementType.SELECT);
+			results = statement.runQuery(null);
+			int eventTime = results.findColumn("event_time");
+			int pressure = results.findColumn("pressure");
+			int pressureArea = results.findColumn("pressure_area");
+			int attempt = results.findColumn("attempt_id");
+			
+			int rows = 0;
+			while (results.next()) {
+				sink.sample(results.getInt(attempt), results.getDouble(eventTime),
+						results.getDouble(pressure), results.getDouble(pressureArea));
+				rows++;
+			}
+			return rows;
+		} finally {
+			if (results != null) results.closeQuietly();
+			if (statement != null) statement.closeQuietly();
+			connectionSource.releaseConnection(connection);
+		}
+	}
+	
+	private List<Integer> attemptIds(List<Attempt> attempts) {
+		List<Integer> ids = new ArrayList<Integer>(attempts.size());
 		for (int i = 0; i < attempts.size(); i++) {
-			samples.addAll(sampleDao.queryForEq("attempt_id", attempts.get(i).getId()));
+			ids.add(attempts.get(i).getId());
 		}
-		return samples;
+		return ids;
 	}
 	
 	/**
@@ -0,0 +1,44 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.daos;
+
+/**
+ * Receives the samples read by the SampleDao, one row of the results at a time,
+ * ordered by attempt and sample.
+ * 
+ * The values are passed while the results are read, so the rows can be written
+ * straight into their destination, without a list of Sample objects or
+ * an intermediate buffer.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public interface SampleSink {
+
+	/**
+	 * Receives the next sample.
+	 * 
+	 * @param attemptId Attempt of the sample
+	 * @param eventTime Event time
+	 * @param pressure Pressure
+	 * @param pressureArea Pressure area
+	 */
+	void sample(int attemptId, double eventTime, double pressure, double pressureArea);
+}
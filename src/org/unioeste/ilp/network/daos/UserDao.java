@@ -21,6 +21,7 @@ package org.unioeste.ilp.network.daos;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Random;
 
 import org.unioeste.ilp.network.models.User;
 
@@ -43,10 +44,18 @@ public class UserDao {
 
 	Dao<User, Integer> userDao;
 	
+	// Draws the random users of the process, seeded with the seed of the ImpostorSampler
+	private static Random random;
+	private static long randomSeed;
+	
 	public UserDao(ConnectionSource connection) throws SQLException {
 		userDao = DaoManager.createDao(connection, User.class);
 	}
 	
+	public Dao<User, Integer> getDao() {
+		return userDao;
+	}
+	
 	/**
 	 * Counts the number of users on database.
 	 * 
@@ -58,16 +67,28 @@ public class UserDao {
 	}
 	
 	/**
-	 * Gets a random user from database.
+	 * Gets a random user from database, except the administrator.
+	 * The users are drawn by one generator of the process, seeded with the
+	 * seed of the ImpostorSampler, so each call draws the next user and
+	 * the same seed gives always the same sequence of users.
 	 * 
 	 * @return Random user id
 	 * @throws SQLException
 	 */
 	public int getRandomUserId() throws SQLException {
-		QueryBuilder<User, Integer> query = userDao.queryBuilder();
-		query.where().ne("_id", 1);
-		query.orderByRaw("random()").limit((long) 1);
-		return userDao.query(query.prepare()).get(0).getId();
+		QueryBuilder<User, Integer> query = userDao.queryBuilder().selectColumns("_id");
+		query.where().ne("_id", ImpostorSampler.ADMIN_USER_ID);
+		List<User> users = userDao.query(query.orderBy("_id", true).prepare());
+		return users.get(nextRandom(users.size())).getId();
+	}
+	
+	private static synchronized int nextRandom(int bound) {
+		long seed = ImpostorSampler.getSeed();
+		if (random == null || randomSeed != seed) {
+			random = new Random(seed);
+			randomSeed = seed;
+		}
+		return random.nextInt(bound);
 	}
 	
 	/**
@@ -0,0 +1,207 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.datasets;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+
+/**
+ * View of the rows of one or more datasets on the order of an array of indices.
+ * 
+ * The indices refer to the rows of the datasets one after the other: the rows
+ * of the first dataset, then the rows of the second one, and so on. The rows
+ * aren't copied, they are read from the datasets when asked, so the datasets
+ * must not be changed while the view is used. Rows can't be added to the view.
+ * 
+ * A range of the rows is described by its begin and size, without the array
+ * of indices, so it's created on constant time.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class IndexedDataSet implements MLDataSet {
+
+	private MLDataSet [] sources;
+	
+	// First row of each dataset on the indices
+	private int [] offsets;
+	private int [] indices;
+	
+	// Range of the rows, when there is no array of indices
+	private int begin;
+	private int size;
+	
+	public IndexedDataSet(MLDataSet source, int [] indices) {
+		this(new MLDataSet [] {source}, indices);
+	}
+	
+	public IndexedDataSet(MLDataSet [] sources, int [] indices) {
+		int total = init(sources);
+		for (int i = 0; i < indices.length; i++) {
+			if (indices[i] < 0 || indices[i] >= total)
+				throw new IndexOutOfBoundsException("Index: " + indices[i] + ", Rows: " + total);
+		}
+		this.indices = indices;
+		size = indices.length;
+	}
+	
+	/**
+	 * Creates the view of the rows from begin to end (inclusive) of the datasets.
+	 * 
+	 * @param sources Datasets
+	 * @param begin Begin position
+	 * @param end End position
+	 */
+	public IndexedDataSet(MLDataSet [] sources, int begin, int end) {
+		int total = init(sources);
+		if (begin < 0 || end >= total || end < begin - 1)
+			throw new IndexOutOfBoundsException("Begin: " + begin + ", End: " + end + ", Rows: " + total);
+		this.begin = begin;
+		size = end - begin + 1;
+	}
+	
+	public IndexedDataSet(MLDataSet source, int begin, int end) {
+		this(new MLDataSet [] {source}, begin, end);
+	}
+	
+	/**
+	 * Sets the datasets and finds their offsets.
+	 * 
+	 * @return Number of rows on the datasets
+	 */
+	private int init(MLDataSet [] sources) {
+		if (sources.length == 0)
+			throw new IllegalStateException("The view needs at least one dataset.");
+		
+		this.sources = sources;
+		offsets = new int[sources.length];
+		int total = 0;
+		for (int s = 0; s < sources.length; s++) {
+			if (sources[s].size() > 0 && sources[s].getInputSize() != sources[0].getInputSize())
+				throw new IllegalStateException("Dataset with " + sources[s].getInputSize() + " inputs different from the view with " + sources[0].getInputSize() + " inputs.");
+			offsets[s] = total;
+			total += sources[s].size();
+		}
+		return total;
+	}
+	
+	/**
+	 * Finds the dataset of the row, the datasets are few.
+	 */
+	private int source(int row) {
+		int s = sources.length - 1;
+		while (row < offsets[s])
+			s--;
+		return s;
+	}
+	
+	/**
+	 * Gets the index of the row of the view on the datasets.
+	 * 
+	 * @param index Row of the view
+	 * @return Index on the datasets, one after the other
+	 */
+	public int getIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return indices != null ? indices[index] : begin + index;
+	}
+	
+	public int getIdealSize() {
+		return sources[0].getIdealSize();
+	}
+	
+	public int getInputSize() {
+		return sources[0].getInputSize();
+	}
+	
+	public boolean isSupervised() {
+		return sources[0].isSupervised();
+	}
+	
+	public long getRecordCount() {
+		return size;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void getRecord(long index, MLDataPair pair) {
+		int row = getIndex((int) index);
+		int s = source(row);
+		sources[s].getRecord(row - offsets[s], pair);
+	}
+	
+	public MLDataPair get(int index) {
+		int row = getIndex(index);
+		int s = source(row);
+		return sources[s].get(row - offsets[s]);
+	}
+	
+	public void add(MLData data) {
+		throw new UnsupportedOperationException("Rows can't be added to a view.");
+	}
+	
+	public void add(MLData inputData, MLData idealData) {
+		throw new UnsupportedOperationException("Rows can't be added to a view.");
+	}
+	
+	public void add(MLDataPair inputData) {
+		throw new UnsupportedOperationException("Rows can't be added to a view.");
+	}
+	
+	public MLDataSet openAdditional() {
+		MLDataSet [] additional = new MLDataSet[sources.length];
+		for (int s = 0; s < sources.length; s++) {
+			additional[s] = sources[s].openAdditional();
+		}
+		if (indices == null)
+			return new IndexedDataSet(additional, begin, begin + size - 1);
+		return new IndexedDataSet(additional, indices);
+	}
+	
+	public void close() {
+	}
+	
+	public Iterator<MLDataPair> iterator() {
+		return new Iterator<MLDataPair>() {
+			private int index = 0;
+			
+			public boolean hasNext() {
+				return index < size;
+			}
+			
+			public MLDataPair next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return get(index++);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException("Rows can't be removed from a view.");
+			}
+		};
+	}
+}
@@ -19,12 +19,17 @@
 
 package org.unioeste.ilp.network.datasets;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+import org.encog.ml.data.MLData;
 import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
-import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
 
 /**
  * Dataset that maps all the labels on an array of values.
@@ -32,32 +37,108 @@ import org.encog.ml.data.basic.BasicMLDataSet;
  * 
  * Separates the labels in 1.0 (positive) and 0.0 (negative).
  * 
+ * The inputs, ideals and labels are kept on contiguous arrays, row after row,
+ * instead of one data pair object for each row. The trainers read the rows with
+ * getRecord, that copies the row into the pair of the trainer without allocating.
+ * The number of positive and negative labels is counted as the labels are added.
+ * 
+ * On the datasets of replicator networks the ideal of each row is its input,
+ * so the ideals aren't stored: they are read from the input array.
+ * 
+ * A view is a range or a list of the rows of another dataset, sharing its arrays.
+ * It's created without copying the rows, so the training and test sets can be
+ * separated from the same dataset many times. Rows can't be added to a view.
+ * 
  * @author Lucas Andr de Alencar
  *
  */
-public class LabeledDataSet extends BasicMLDataSet {
-	
+public class LabeledDataSet implements MLDataSet, Serializable {
+
 	private static final long serialVersionUID = 5798083182160514599L;
 	
-	protected List<Double> labels;
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private int inputSize;
+	private int idealSize;
+	private int numRows;
+	private int capacity;
+	private boolean replicator;
+	
+	// First row of the dataset on the arrays, not 0 on views
+	private int offset;
+	private boolean view;
+	
+	// Rows of the dataset on the arrays, on views of a list of rows
+	private int [] rows;
+	private double [] inputs = new double[0];
+	private double [] ideals = new double[0];
+	
+	private int numLabels;
+	private double [] labels;
+	private int numPositives;
+	private int numNegatives;
 	
 	public LabeledDataSet() {
-		super();
-		initLabels();
+		this(INITIAL_CAPACITY);
 	}
 	
-	private void initLabels() {
-		labels = new ArrayList<Double>();
+	/**
+	 * Creates the dataset with room for the rows, the arrays
+	 * are allocated when the first row is added.
+	 * 
+	 * @param capacity Number of rows
+	 */
+	public LabeledDataSet(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		labels = new double[this.capacity];
+	}
+	
+	/**
+	 * Creates the dataset with room for the rows. On a replicator
+	 * dataset the ideal of each row must be equal to its input.
+	 * 
+	 * @param capacity Number of rows
+	 * @param replicator Ideals equal to the inputs
+	 */
+	public LabeledDataSet(int capacity, boolean replicator) {
+		this(capacity);
+		this.replicator = replicator;
 	}
 	
 	public LabeledDataSet(MLDataSet dataset) {
-		super(dataset);
-		initLabels();
+		this((int) dataset.getRecordCount());
+		add(dataset);
+	}
+	
+	/**
+	 * Creates a view sharing the arrays of the dataset, the labels are counted on demand.
+	 */
+	private LabeledDataSet(LabeledDataSet dataset, int numRows, int numLabels) {
+		inputSize = dataset.inputSize;
+		idealSize = dataset.idealSize;
+		replicator = dataset.replicator;
+		inputs = dataset.inputs;
+		ideals = dataset.ideals;
+		labels = dataset.labels;
+		this.numRows = numRows;
+		this.numLabels = numLabels;
+		capacity = numRows;
+		numPositives = -1;
+		numNegatives = -1;
+		view = true;
+	}
+	
+	/**
+	 * Gets the position of the row on the arrays.
+	 */
+	private int row(int index) {
+		return rows != null ? rows[index] : offset + index;
 	}
 	
 	public LabeledDataSet(MLDataSet dataset, List<Double> labels) {
-		super(dataset);
-		this.labels = labels;
+		this((int) dataset.getRecordCount());
+		add(dataset);
+		setLabels(labels);
 	}
 	
 	private void validateLabels(List<MLDataPair> dataset, List<Double> labels) {
@@ -80,22 +161,97 @@ public class LabeledDataSet extends BasicMLDataSet {
 			throw new IllegalStateException("Number os labels different from the dataset size. Verify if begin and end matchs with the labels size.");
 	}
 	
+	private void add(MLDataSet dataset) {
+		for (int i = 0; i < dataset.size(); i++) {
+			this.add(dataset.get(i));
+		}
+	}
+	
+	private void clear() {
+		numRows = 0;
+		clearLabels();
+	}
+	
+	private void checkNotView() {
+		if (view)
+			throw new UnsupportedOperationException("Rows can't be changed on a view of the dataset.");
+	}
+	
+	private void clearLabels() {
+		checkNotView();
+		numLabels = 0;
+		numPositives = 0;
+		numNegatives = 0;
+	}
+	
+	private void addLabel(double label) {
+		checkNotView();
+		if (numLabels == labels.length)
+			labels = Arrays.copyOf(labels, labels.length + (labels.length >> 1) + 1);
+		labels[numLabels++] = label;
+		if (label == 1.0) numPositives++;
+		if (label == 0.0) numNegatives++;
+	}
+	
+	/**
+	 * Appends the row, the sizes of the rows are fixed by the first one.
+	 */
+	private void addRow(double [] input, double [] ideal) {
+		checkNotView();
+		if (replicator) {
+			if (ideal != null && ideal != input && !Arrays.equals(ideal, input))
+				throw new IllegalStateException("Row with ideal different from the input on a replicator dataset.");
+			ideal = input;
+		}
+		if (numRows == 0) {
+			inputSize = input.length;
+			idealSize = ideal != null ? ideal.length : 0;
+		}
+		if (input.length != inputSize || (ideal != null ? ideal.length : 0) != idealSize)
+			throw new IllegalStateException("Row with " + input.length + " inputs different from the dataset with " + inputSize + " inputs.");
+		
+		if (numRows == 0 || numRows == capacity) {
+			capacity = numRows == 0 ? capacity : capacity + (capacity >> 1) + 1;
+			inputs = Arrays.copyOf(inputs, capacity * inputSize);
+			ideals = replicator ? inputs : Arrays.copyOf(ideals, capacity * idealSize);
+		}
+		
+		System.arraycopy(input, 0, inputs, numRows * inputSize, inputSize);
+		if (idealSize > 0 && !replicator)
+			System.arraycopy(ideal, 0, ideals, numRows * idealSize, idealSize);
+		numRows++;
+	}
+	
 	public void setLabels(List<Double> labels) {
-		this.labels = labels;
+		clearLabels();
+		for (int i = 0; i < labels.size(); i++) {
+			addLabel(labels.get(i));
+		}
 	}
 	
+	/**
+	 * Gets a copy of the labels.
+	 * 
+	 * @return Labels
+	 */
 	public List<Double> getLabels() {
-		return labels;
+		List<Double> list = new ArrayList<Double>(numLabels);
+		for (int i = 0; i < numLabels; i++) {
+			list.add(labels[row(i)]);
+		}
+		return list;
 	}
 	
 	public void setLabels(double [] labels) {
 		for (int i = 0; i < labels.length; i++) {
-			this.labels.add(labels[i]);
+			addLabel(labels[i]);
 		}
 	}
 	
 	public double getLabel(int index) {
-		return this.labels.get(index);
+		if (index < 0 || index >= numLabels)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Labels: " + numLabels);
+		return this.labels[row(index)];
 	}
 	
 	/**
@@ -105,8 +261,20 @@ public class LabeledDataSet extends BasicMLDataSet {
 	 * @param label Label
 	 */
 	public void add(MLDataPair inputData, double label) {
-		super.add(inputData);
-		this.labels.add(label);
+		this.add(inputData);
+		addLabel(label);
+	}
+	
+	/**
+	 * Add the row with specified label. The arrays are copied.
+	 * 
+	 * @param input Input
+	 * @param ideal Ideal, null on unsupervised datasets
+	 * @param label Label
+	 */
+	public void add(double [] input, double [] ideal, double label) {
+		addRow(input, ideal);
+		addLabel(label);
 	}
 	
 	/**
@@ -122,7 +290,9 @@ public class LabeledDataSet extends BasicMLDataSet {
 		for (int i = begin; i <= end; i++) {
 			this.add(theData.get(i));
 		}
-		this.labels.addAll(labels);
+		for (int i = 0; i < labels.size(); i++) {
+			addLabel(labels.get(i));
+		}
 	}
 	
 	/**
@@ -140,7 +310,7 @@ public class LabeledDataSet extends BasicMLDataSet {
 		}
 		
 		for (int i = 0; i < labels.length; i++) {
-			this.labels.add(labels[i]);
+			addLabel(labels[i]);
 		}
 	}
 	
@@ -172,8 +342,10 @@ public class LabeledDataSet extends BasicMLDataSet {
 	 */
 	public void setData(List<MLDataPair> theData, List<Double> labels) {
 		validateLabels(theData, labels);
-		super.setData(theData);
-		this.labels.addAll(labels);
+		clear();
+		for (int i = 0; i < theData.size(); i++) {
+			this.add(theData.get(i), labels.get(i));
+		}
 	}
 	
 	/**
@@ -184,26 +356,34 @@ public class LabeledDataSet extends BasicMLDataSet {
 	 */
 	public void setData(List<MLDataPair> theData, double [] labels) {
 		validateLabels(theData, labels);
-		super.setData(theData);
-		for (int i = 0; i < labels.length; i++) {
-			this.labels.add(labels[i]);
+		clear();
+		for (int i = 0; i < theData.size(); i++) {
+			this.add(theData.get(i), labels[i]);
 		}
 	}
 	
 	public String toString() {
-		String s = 0 + "\t" + labels.get(0) + "\t" + get(0);
-		for (int i = 1; i < labels.size(); i++) {
-			s = s.concat("\n" + i + "\t" + labels.get(i) + "\t" + get(i));
+		String s = 0 + "\t" + getLabel(0) + "\t" + get(0);
+		for (int i = 1; i < numLabels; i++) {
+			s = s.concat("\n" + i + "\t" + getLabel(i) + "\t" + get(i));
 		}
 		return s;
 	}
 	
-	private int sumNumLabels(double label) {
-		int sum = 0;
-		for (int i = 0; i < labels.size(); i++) {
-			if (labels.get(i).equals(label)) sum++;
+	/**
+	 * Counts the labels of a view, the first time they are asked.
+	 */
+	private synchronized void countLabels() {
+		if (numPositives >= 0)
+			return;
+		int positives = 0, negatives = 0;
+		for (int i = 0; i < numLabels; i++) {
+			double label = labels[row(i)];
+			if (label == 1.0) positives++;
+			if (label == 0.0) negatives++;
 		}
-		return sum;
+		numNegatives = negatives;
+		numPositives = positives;
 	}
 	
 	/**
@@ -212,7 +392,8 @@ public class LabeledDataSet extends BasicMLDataSet {
 	 * @return Number of positive labels
 	 */
 	public int getNumPositives() {
-		return sumNumLabels(1.0);
+		countLabels();
+		return numPositives;
 	}
 	
 	/**
@@ -221,6 +402,186 @@ public class LabeledDataSet extends BasicMLDataSet {
 	 * @return Number of negative labels
 	 */
 	public int getNumNegatives() {
-		return sumNumLabels(0.0);
+		countLabels();
+		return numNegatives;
+	}
+	
+	/**
+	 * Gets a view of the rows from begin to end (inclusive), with their labels.
+	 * The rows aren't copied, the view shares the arrays of the dataset.
+	 * 
+	 * @param begin Begin position
+	 * @param end End position
+	 * @return LabeledDataSet
+	 */
+	public LabeledDataSet view(int begin, int end) {
+		if (begin < 0 || end >= numRows || end < begin - 1)
+			throw new IndexOutOfBoundsException("Begin: " + begin + ", End: " + end + ", Size: " + numRows);
+		
+		int size = end - begin + 1;
+		LabeledDataSet view = new LabeledDataSet(this, size, Math.max(0, Math.min(numLabels - begin, size)));
+		if (rows != null) {
+			view.rows = Arrays.copyOfRange(rows, begin, end + 1);
+		} else {
+			view.offset = offset + begin;
+		}
+		return view;
+	}
+	
+	/**
+	 * Gets a view of the rows on the positions specified, with their labels.
+	 * The rows aren't copied, the view shares the arrays of the dataset.
+	 * 
+	 * @param indices Positions of the rows, all of them labeled
+	 * @return LabeledDataSet
+	 */
+	public LabeledDataSet view(int [] indices) {
+		int [] viewRows = new int[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			if (indices[i] < 0 || indices[i] >= numLabels)
+				throw new IndexOutOfBoundsException("Index: " + indices[i] + ", Labels: " + numLabels);
+			viewRows[i] = row(indices[i]);
+		}
+		LabeledDataSet view = new LabeledDataSet(this, indices.length, indices.length);
+		view.rows = viewRows;
+		return view;
+	}
+	
+	/**
+	 * Checks if the dataset is a view of the rows of another dataset.
+	 * 
+	 * @return true on views
+	 */
+	public boolean isView() {
+		return view;
+	}
+	
+	/**
+	 * Gets the position of the row on the buffers,
+	 * it's the index of the row unless the dataset is a view.
+	 * 
+	 * @param index Row
+	 * @return Row on the buffers
+	 */
+	public int getBufferRow(int index) {
+		if (index < 0 || index >= numRows)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numRows);
+		return row(index);
+	}
+	
+	/**
+	 * Gets the inputs of all the rows, row after row. The array may be
+	 * longer than the rows on the dataset, the rows of a view are
+	 * found with getBufferRow.
+	 * 
+	 * @return Inputs
+	 */
+	public double [] getInputBuffer() {
+		return inputs;
+	}
+	
+	/**
+	 * Checks if the ideals are the inputs of the rows.
+	 * 
+	 * @return true on the datasets of replicator networks
+	 */
+	public boolean isReplicator() {
+		return replicator;
+	}
+	
+	/**
+	 * Gets the ideals of all the rows, row after row. The array may be
+	 * longer than the rows on the dataset, on a replicator dataset
+	 * it's the input array.
+	 * 
+	 * @return Ideals
+	 */
+	public double [] getIdealBuffer() {
+		return ideals;
+	}
+	
+	public int getInputSize() {
+		return inputSize;
+	}
+	
+	public int getIdealSize() {
+		return idealSize;
+	}
+	
+	public boolean isSupervised() {
+		return idealSize > 0;
+	}
+	
+	public long getRecordCount() {
+		return numRows;
+	}
+	
+	public int size() {
+		return numRows;
+	}
+	
+	/**
+	 * Copies the row into the arrays of the pair. The pair
+	 * must have been created with the sizes of the dataset.
+	 */
+	public void getRecord(long index, MLDataPair pair) {
+		if (index < 0 || index >= numRows)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numRows);
+		int row = row((int) index);
+		System.arraycopy(inputs, row * inputSize, pair.getInputArray(), 0, inputSize);
+		if (idealSize > 0)
+			System.arraycopy(ideals, row * idealSize, pair.getIdealArray(), 0, idealSize);
+	}
+	
+	/**
+	 * Gets a copy of the row.
+	 */
+	public MLDataPair get(int index) {
+		MLDataPair pair = BasicMLDataPair.createPair(inputSize, idealSize);
+		getRecord(index, pair);
+		return pair;
+	}
+	
+	public void add(MLData data) {
+		addRow(data.getData(), null);
+	}
+	
+	public void add(MLData inputData, MLData idealData) {
+		addRow(inputData.getData(), idealData != null ? idealData.getData() : null);
+	}
+	
+	public void add(MLDataPair inputData) {
+		addRow(inputData.getInputArray(), inputData.isSupervised() ? inputData.getIdealArray() : null);
+	}
+	
+	/**
+	 * The rows aren't changed while the dataset is read,
+	 * so the same dataset is shared.
+	 */
+	public MLDataSet openAdditional() {
+		return this;
+	}
+	
+	public void close() {
+	}
+	
+	public Iterator<MLDataPair> iterator() {
+		return new Iterator<MLDataPair>() {
+			private int index = 0;
+			
+			public boolean hasNext() {
+				return index < numRows;
+			}
+			
+			public MLDataPair next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return get(index++);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException("Rows can't be removed from the dataset.");
+			}
+		};
 	}
 }
@@ -0,0 +1,246 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.datasets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+
+/**
+ * Dataset with the rows on a memory mapped file, out of the heap.
+ * 
+ * The rows have a fixed stride: the inputs followed by the ideals, or only the
+ * inputs on a replicator dataset, whose ideals are its inputs. The file is mapped
+ * on segments of whole rows, each smaller than the limit of a mapping, so the file
+ * can have more rows than the heap could keep. getRecord copies the row straight
+ * from the mapping into the arrays of the pair, without creating objects.
+ * 
+ * The files are written by the MappedDataSetWriter. Like the other datasets, an
+ * instance must be read by one thread at a time, openAdditional creates another
+ * view of the same mapping for each thread. Rows can't be added.
+ * 
+ * File layout (little endian): magic, version, number of rows, inputs, ideals,
+ * replicator flag and padding on the header, then the rows.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class MappedDataSet implements MLDataSet {
+
+	public static final String EXTENSION = ".rows";
+	
+	static final int MAGIC = 0x494c504d; // ILPM
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	
+	// Max bytes mapped on each segment
+	private static final long SEGMENT_SIZE = 1L << 30;
+	
+	private File file;
+	private long numRows;
+	private int inputSize;
+	private int idealSize;
+	private boolean replicator;
+	// Doubles on each row
+	private int stride;
+	private int segmentRows;
+	
+	private MappedByteBuffer [] segments;
+	// Positions of this view on the segments
+	private DoubleBuffer [] views;
+	
+	/**
+	 * Maps the rows of the file.
+	 * 
+	 * @param file File written by the MappedDataSetWriter
+	 * @throws IOException
+	 */
+	public MappedDataSet(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IllegalStateException(file + " isn't a mapped dataset file.");
+			
+			numRows = header.getLong();
+			inputSize = header.getInt();
+			idealSize = header.getInt();
+			replicator = header.getInt() != 0;
+			stride = replicator ? inputSize : inputSize + idealSize;
+			if (HEADER_SIZE + numRows * stride * 8 > channel.size())
+				throw new IllegalStateException(file + " is smaller than its " + numRows + " rows.");
+			
+			segmentRows = (int) Math.max(1, SEGMENT_SIZE / (stride * 8L));
+			segments = new MappedByteBuffer[(int) ((numRows + segmentRows - 1) / segmentRows)];
+			for (int s = 0; s < segments.length; s++) {
+				long first = (long) s * segmentRows;
+				long rows = Math.min(segmentRows, numRows - first);
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * stride * 8, rows * stride * 8);
+			}
+		} finally {
+			raf.close(); // The mappings stay valid
+		}
+		createViews();
+	}
+	
+	/**
+	 * Another view of the mapping of the dataset.
+	 */
+	private MappedDataSet(MappedDataSet owner) {
+		file = owner.file;
+		numRows = owner.numRows;
+		inputSize = owner.inputSize;
+		idealSize = owner.idealSize;
+		replicator = owner.replicator;
+		stride = owner.stride;
+		segmentRows = owner.segmentRows;
+		segments = owner.segments;
+		createViews();
+	}
+	
+	private void createViews() {
+		views = new DoubleBuffer[segments.length];
+		for (int s = 0; s < segments.length; s++) {
+			ByteBuffer segment = segments[s].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			views[s] = segment.asDoubleBuffer();
+		}
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public boolean isReplicator() {
+		return replicator;
+	}
+	
+	public int getIdealSize() {
+		return idealSize;
+	}
+	
+	public int getInputSize() {
+		return inputSize;
+	}
+	
+	public boolean isSupervised() {
+		return idealSize > 0;
+	}
+	
+	public long getRecordCount() {
+		return numRows;
+	}
+	
+	public int size() {
+		if (numRows > Integer.MAX_VALUE)
+			throw new IllegalStateException("The dataset has " + numRows + " rows, use getRecordCount.");
+		return (int) numRows;
+	}
+	
+	public void getRecord(long index, MLDataPair pair) {
+		if (index < 0 || index >= numRows)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Rows: " + numRows);
+		if (views == null)
+			throw new IllegalStateException("The dataset " + file + " is closed.");
+		
+		DoubleBuffer view = views[(int) (index / segmentRows)];
+		view.position((int) (index % segmentRows) * stride);
+		double [] input = pair.getInputArray();
+		view.get(input, 0, inputSize);
+		
+		double [] ideal = pair.getIdealArray();
+		if (ideal != null && idealSize > 0) {
+			if (replicator)
+				System.arraycopy(input, 0, ideal, 0, inputSize);
+			else
+				view.get(ideal, 0, idealSize);
+		}
+	}
+	
+	public MLDataPair get(int index) {
+		MLDataPair pair = BasicMLDataPair.createPair(inputSize, idealSize);
+		getRecord(index, pair);
+		return pair;
+	}
+	
+	public void add(MLData data) {
+		throw new UnsupportedOperationException("Rows can't be added to a mapped dataset.");
+	}
+	
+	public void add(MLData inputData, MLData idealData) {
+		throw new UnsupportedOperationException("Rows can't be added to a mapped dataset.");
+	}
+	
+	public void add(MLDataPair inputData) {
+		throw new UnsupportedOperationException("Rows can't be added to a mapped dataset.");
+	}
+	
+	public MLDataSet openAdditional() {
+		if (views == null)
+			throw new IllegalStateException("The dataset " + file + " is closed.");
+		return new MappedDataSet(this);
+	}
+	
+	/**
+	 * Releases the mapping of this view. The memory is unmapped
+	 * when no view of the file is referenced anymore.
+	 */
+	public void close() {
+		views = null;
+		segments = null;
+	}
+	
+	public Iterator<MLDataPair> iterator() {
+		return new Iterator<MLDataPair>() {
+			private long index = 0;
+			
+			public boolean hasNext() {
+				return index < numRows;
+			}
+			
+			public MLDataPair next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				MLDataPair pair = BasicMLDataPair.createPair(inputSize, idealSize);
+				getRecord(index++, pair);
+				return pair;
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException("Rows can't be removed from a mapped dataset.");
+			}
+		};
+	}
+}
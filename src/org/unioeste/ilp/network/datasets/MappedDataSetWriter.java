@@ -0,0 +1,206 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.datasets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+
+/**
+ * Writes the rows of a MappedDataSet, one row at a time, through a small buffer.
+ * The rows don't need to be on the heap, so the file can be written while
+ * the examples are generated.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class MappedDataSetWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	
+	private int inputSize;
+	private int idealSize;
+	private boolean replicator;
+	private long numRows = 0;
+	
+	/**
+	 * Creates the file, replacing an existing one.
+	 * 
+	 * @param file File
+	 * @param inputSize Number of inputs
+	 * @param idealSize Number of ideals
+	 * @param replicator Ideals equal to the inputs, only the inputs are written
+	 * @throws IOException
+	 */
+	public MappedDataSetWriter(File file, int inputSize, int idealSize, boolean replicator) throws IOException {
+		if (replicator && idealSize != inputSize)
+			throw new IllegalStateException("Replicator dataset with " + inputSize + " inputs and " + idealSize + " ideals.");
+		this.file = file;
+		this.inputSize = inputSize;
+		this.idealSize = idealSize;
+		this.replicator = replicator;
+		
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		int stride = replicator ? inputSize : inputSize + idealSize;
+		buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, stride * 8)).order(ByteOrder.LITTLE_ENDIAN);
+		channel.position(MappedDataSet.HEADER_SIZE);
+	}
+	
+	/**
+	 * Adds a row of a replicator dataset.
+	 * 
+	 * @param input Input
+	 * @throws IOException
+	 */
+	public void add(double [] input) throws IOException {
+		if (!replicator)
+			throw new IllegalStateException("The ideals of the row are missing.");
+		add(input, null);
+	}
+	
+	/**
+	 * Adds a row, the ideal is ignored on a replicator dataset.
+	 * 
+	 * @param input Input
+	 * @param ideal Ideal
+	 * @throws IOException
+	 */
+	public void add(double [] input, double [] ideal) throws IOException {
+		if (input.length != inputSize)
+			throw new IllegalStateException("Row with " + input.length + " inputs, the dataset has " + inputSize + " inputs.");
+		if (!replicator && idealSize > 0 && (ideal == null || ideal.length != idealSize))
+			throw new IllegalStateException("Row without the " + idealSize + " ideals of the dataset.");
+		
+		int stride = replicator ? inputSize : inputSize + idealSize;
+		if (buffer.remaining() < stride * 8)
+			flush();
+		for (int j = 0; j < inputSize; j++) {
+			buffer.putDouble(input[j]);
+		}
+		if (!replicator) {
+			for (int j = 0; j < idealSize; j++) {
+				buffer.putDouble(ideal[j]);
+			}
+		}
+		numRows++;
+	}
+	
+	public void add(MLDataPair pair) throws IOException {
+		add(pair.getInputArray(), pair.getIdealArray());
+	}
+	
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	public long getNumRows() {
+		return numRows;
+	}
+	
+	/**
+	 * Writes the buffered rows and the header, closing the file.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+			ByteBuffer header = ByteBuffer.allocate(MappedDataSet.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MappedDataSet.MAGIC).putInt(MappedDataSet.VERSION).putLong(numRows);
+			header.putInt(inputSize).putInt(idealSize).putInt(replicator ? 1 : 0).putInt(0);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Writes all the rows of the dataset on the file and maps it, only the
+	 * inputs are written when all the ideals equal the inputs.
+	 * 
+	 * @param dataset Dataset
+	 * @param file File
+	 * @return MappedDataSet
+	 * @throws IOException
+	 */
+	public static MappedDataSet write(MLDataSet dataset, File file) throws IOException {
+		return write(dataset, file, isReplicator(dataset));
+	}
+	
+	/**
+	 * Checks if the ideals of all the rows equal their inputs.
+	 */
+	public static boolean isReplicator(MLDataSet dataset) {
+		if (dataset.getInputSize() != dataset.getIdealSize())
+			return false;
+		MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+		for (long i = 0; i < dataset.getRecordCount(); i++) {
+			dataset.getRecord(i, pair);
+			if (!Arrays.equals(pair.getInputArray(), pair.getIdealArray()))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes all the rows of the dataset on the file and maps it.
+	 * 
+	 * @param dataset Dataset
+	 * @param file File
+	 * @param replicator Ideals equal to the inputs
+	 * @return MappedDataSet
+	 * @throws IOException
+	 */
+	public static MappedDataSet write(MLDataSet dataset, File file, boolean replicator) throws IOException {
+		MappedDataSetWriter writer = new MappedDataSetWriter(file, dataset.getInputSize(), dataset.getIdealSize(), replicator);
+		try {
+			MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+			for (long i = 0; i < dataset.getRecordCount(); i++) {
+				dataset.getRecord(i, pair);
+				writer.add(pair);
+			}
+		} finally {
+			writer.close();
+		}
+		return new MappedDataSet(file);
+	}
+}
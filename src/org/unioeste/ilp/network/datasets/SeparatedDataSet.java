@@ -32,6 +32,9 @@ import org.encog.ml.data.basic.BasicMLDataSet;
  * The dataset may be used as a normal dataset and when necessary,
  * the test dataset can be added.
  * 
+ * The training and test sets may also be views of other datasets,
+ * then the examples aren't copied to the dataset.
+ * 
  * @author Lucas Andr de Alencar
  *
  */
@@ -39,12 +42,25 @@ public class SeparatedDataSet extends BasicMLDataSet {
 
 	private static final long serialVersionUID = 7780117384199947990L;
 
-	private BasicMLDataSet testData;
+	private MLDataSet trainingData;
+	private MLDataSet testData;
 	
 	public SeparatedDataSet() {
 		super();
 	}
 	
+	/**
+	 * Creates the dataset with the training and test sets, they aren't copied.
+	 * 
+	 * @param trainingData Training set
+	 * @param testData Test set
+	 */
+	public SeparatedDataSet(MLDataSet trainingData, MLDataSet testData) {
+		super();
+		this.trainingData = trainingData;
+		this.testData = testData;
+	}
+	
 	public SeparatedDataSet(final double[][] input, final double[][] ideal) {
 		super(input, ideal);
 	}
@@ -62,11 +78,16 @@ public class SeparatedDataSet extends BasicMLDataSet {
 	}
 	
 	public MLDataSet getTrainingData() {
-		return this;
+		return trainingData != null ? trainingData : this;
 	}
 	
+	/**
+	 * Sets the training set, the set isn't copied.
+	 * 
+	 * @param dataset MLDataSet
+	 */
 	public void setTrainingData(MLDataSet dataset) {
-		setData(((BasicMLDataSet) dataset).getData());
+		trainingData = dataset;
 	}
 	
 	public void add(MLDataSet theData, int begin, int end) {
@@ -83,8 +104,13 @@ public class SeparatedDataSet extends BasicMLDataSet {
 		testData = new BasicMLDataSet(theData);
 	}
 	
+	/**
+	 * Sets the test set, the set isn't copied.
+	 * 
+	 * @param set MLDataSet
+	 */
 	public void setTestSet(final MLDataSet set) {
-		testData = new BasicMLDataSet(set);
+		testData = set;
 	}
 	
 	public void setTestSet(final MLDataSet set, int begin, int end) {
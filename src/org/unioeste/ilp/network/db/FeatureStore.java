@@ -0,0 +1,512 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.db;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.unioeste.ilp.network.daos.AttemptDao;
+import org.unioeste.ilp.network.daos.DaoRegistry;
+import org.unioeste.ilp.network.daos.ExperienceDao;
+import org.unioeste.ilp.network.daos.ImpostorSampler;
+import org.unioeste.ilp.network.daos.SampleDao;
+import org.unioeste.ilp.network.daos.SampleSink;
+import org.unioeste.ilp.network.daos.UserDao;
+import org.unioeste.ilp.network.features.SampleColumns;
+import org.unioeste.ilp.network.models.Attempt;
+import org.unioeste.ilp.network.models.Experience;
+import org.unioeste.ilp.network.models.Sample;
+
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+
+/**
+ * In memory snapshot of the tables users, experiences, attempts and samples.
+ * 
+ * The database is read once and the samples are kept on primitive columns
+ * (event_time, pressure and pressure_area), ordered by attempt. The samples
+ * of the attempt on index i are on the positions attemptOffsets[i] until
+ * attemptOffsets[i + 1] - 1 of the columns. The attempts are indexed
+ * by user and pattern, so the datasets can be built without touching
+ * SQLite or ORMLite.
+ * 
+ * A store loaded with load(path) is shared by all the handlers that
+ * use the same database path.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class FeatureStore {
+
+	private static final Map<String, FeatureStore> stores = new HashMap<String, FeatureStore>();
+	
+	private int [] userIds;
+	
+	private int [] attemptIds;
+	private int [] attemptUsers;
+	private int [] attemptPatterns;
+	private int [] attemptOffsets;
+	
+	private double [] eventTime;
+	private double [] pressure;
+	private double [] pressureArea;
+	
+	// Attempts indexes of each user and pattern
+	private Map<Long, int[]> userPatternAttempts;
+	// Attempts indexes of each pattern
+	private Map<Integer, int[]> patternAttempts;
+	
+	private ImpostorSampler impostorSampler;
+	
+	// Columns computed from the samples, created on the first use
+	private SampleColumns columns;
+	
+	private FeatureStore() {}
+	
+	/**
+	 * Loads the snapshot of the database on the path, making it available
+	 * to the handlers of this database. The snapshot is loaded only once.
+	 * 
+	 * @param path Database path
+	 * @return FeatureStore
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static synchronized FeatureStore load(String path) throws SQLException, ClassNotFoundException {
+		FeatureStore store = stores.get(path);
+		if (store == null) {
+			SQLiteConnectionManager manager = SQLiteConnectionManager.getInstance(path);
+			ConnectionSource connection = manager.lease();
+			try {
+				store = load(manager.getDaoRegistry(connection));
+			} finally {
+				manager.release(connection);
+			}
+			stores.put(path, store);
+		}
+		return store;
+	}
+	
+	/**
+	 * Gets the snapshot loaded for the database on the path.
+	 * 
+	 * @param path Database path
+	 * @return FeatureStore or null when the snapshot wasn't loaded
+	 */
+	public static synchronized FeatureStore getLoaded(String path) {
+		return stores.get(path);
+	}
+	
+	/**
+	 * Discards the snapshot of the database on the path.
+	 * 
+	 * @param path Database path
+	 */
+	public static synchronized void unload(String path) {
+		stores.remove(path);
+	}
+	
+	/**
+	 * Reads all the tables through the DAOs and builds the snapshot.
+	 * 
+	 * @param daoRegistry DAOs of the connection
+	 * @return FeatureStore
+	 * @throws SQLException
+	 */
+	public static FeatureStore load(DaoRegistry daoRegistry) throws SQLException {
+		FeatureStore store = new FeatureStore();
+		store.loadUsers(daoRegistry.getUserDao());
+		
+		Map<Integer, int[]> experiences = store.loadExperiences(daoRegistry.getExperienceDao());
+		store.loadAttempts(daoRegistry.getAttemptDao(), experiences);
+		store.loadSamples(daoRegistry.getSampleDao());
+		store.buildIndexes();
+		return store;
+	}
+	
+	private void loadUsers(UserDao userDao) throws SQLException {
+		userIds = new int[userDao.count()];
+		DatabaseResults results = null;
+		CompiledStatement statement = null;
+		ConnectionSource connectionSource = userDao.getDao().getConnectionSource();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		try {
+			statement = userDao.getDao().queryBuilder().selectColumns("_id").orderBy("_id", true).prepare().compile(connection, StatementType.SELECT);
+			results = statement.runQuery(null);
+			int id = results.findColumn("_id");
+			for (int i = 0; results.next(); i++) {
+				userIds[i] = results.getInt(id);
+			}
+		} finally {
+			close(connectionSource, connection, statement, results);
+		}
+	}
+	
+	/**
+	 * Maps each experience to its user and pattern.
+	 */
+	private Map<Integer, int[]> loadExperiences(ExperienceDao experienceDao) throws SQLException {
+		Map<Integer, int[]> experiences = new HashMap<Integer, int[]>();
+		QueryBuilder<Experience, Integer> query = experienceDao.queryBuilder().selectColumns("user_id", "pattern_id");
+		
+		DatabaseResults results = null;
+		CompiledStatement statement = null;
+		ConnectionSource connectionSource = experienceDao.getDao().getConnectionSource();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		try {
+			statement = query.prepare().compile(connection, StatementType.SELECT);
+			results = statement.runQuery(null);
+			int id = results.findColumn("_id");
+			int user = results.findColumn("user_id");
+			int pattern = results.findColumn("pattern_id");
+			while (results.next()) {
+				int [] userPattern = {results.getInt(user), results.getInt(pattern)};
+				experiences.put(results.getInt(id), userPattern);
+			}
+		} finally {
+			close(connectionSource, connection, statement, results);
+		}
+		return experiences;
+	}
+	
+	private void loadAttempts(AttemptDao attemptDao, Map<Integer, int[]> experiences) throws SQLException {
+		int numAttempts = (int) attemptDao.getDao().countOf();
+		attemptIds = new int[numAttempts];
+		attemptUsers = new int[numAttempts];
+		attemptPatterns = new int[numAttempts];
+		QueryBuilder<Attempt, Integer> query = attemptDao.getDao().queryBuilder().selectColumns("experience_id").orderBy("_id", true);
+		
+		DatabaseResults results = null;
+		CompiledStatement statement = null;
+		ConnectionSource connectionSource = attemptDao.getDao().getConnectionSource();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		try {
+			statement = query.prepare().compile(connection, StatementType.SELECT);
+			results = statement.runQuery(null);
+			int id = results.findColumn("_id");
+			int experience = results.findColumn("experience_id");
+			for (int i = 0; results.next(); i++) {
+				int [] userPattern = experiences.get(results.getInt(experience));
+				attemptIds[i] = results.getInt(id);
+				attemptUsers[i] = userPattern != null ? userPattern[0] : 0;
+				attemptPatterns[i] = userPattern != null ? userPattern[1] : 0;
+			}
+		} finally {
+			close(connectionSource, connection, statement, results);
+		}
+	}
+	
+	private void loadSamples(SampleDao sampleDao) throws SQLException {
+		int numSamples = (int) sampleDao.getDao().countOf();
+		eventTime = new double[numSamples];
+		pressure = new double[numSamples];
+		pressureArea = new double[numSamples];
+		attemptOffsets = new int[attemptIds.length + 1];
+		
+		QueryBuilder<Sample, Integer> query = sampleDao.getDao().queryBuilder();
+		query.selectColumns("event_time", "pressure", "pressure_area", "attempt_id");
+		query.orderBy("attempt_id", true).orderBy("_id", true);
+		
+		DatabaseResults results = null;
+		CompiledStatement statement = null;
+		ConnectionSource connectionSource = sampleDao.getDao().getConnectionSource();
+		DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		try {
+			statement = query.prepare().compile(connection, StatementType.SELECT);
+			results = statement.runQuery(null);
+			int time = results.findColumn("event_time");
+			int press = results.findColumn("pressure");
+			int area = results.findColumn("pressure_area");
+			int attempt = results.findColumn("attempt_id");
+			
+			int row = 0, attemptIndex = 0;
+			while (results.next()) {
+				int index = Arrays.binarySearch(attemptIds, results.getInt(attempt));
+				if (index < 0)
+					continue; // Sample without attempt
+				// Closes the attempts before this one
+				while (attemptIndex < index)
+					attemptOffsets[++attemptIndex] = row;
+				
+				eventTime[row] = results.getDouble(time);
+				pressure[row] = results.getDouble(press);
+				pressureArea[row] = results.getDouble(area);
+				row++;
+			}
+			while (attemptIndex < attemptIds.length)
+				attemptOffsets[++attemptIndex] = row;
+		} finally {
+			close(connectionSource, connection, statement, results);
+		}
+	}
+	
+	private void buildIndexes() {
+		Map<Long, Integer> userPatternCounts = new HashMap<Long, Integer>();
+		Map<Integer, Integer> patternCounts = new HashMap<Integer, Integer>();
+		for (int i = 0; i < attemptIds.length; i++) {
+			increment(userPatternCounts, key(attemptUsers[i], attemptPatterns[i]));
+			increment(patternCounts, attemptPatterns[i]);
+		}
+		
+		userPatternAttempts = new HashMap<Long, int[]>();
+		patternAttempts = new HashMap<Integer, int[]>();
+		Map<Long, Integer> userPatternSizes = new HashMap<Long, Integer>();
+		Map<Integer, Integer> patternSizes = new HashMap<Integer, Integer>();
+		for (int i = 0; i < attemptIds.length; i++) {
+			long key = key(attemptUsers[i], attemptPatterns[i]);
+			int [] attempts = userPatternAttempts.get(key);
+			if (attempts == null) {
+				attempts = new int[userPatternCounts.get(key)];
+				userPatternAttempts.put(key, attempts);
+			}
+			attempts[increment(userPatternSizes, key) - 1] = i;
+			
+			int [] pattern = patternAttempts.get(attemptPatterns[i]);
+			if (pattern == null) {
+				pattern = new int[patternCounts.get(attemptPatterns[i])];
+				patternAttempts.put(attemptPatterns[i], pattern);
+			}
+			pattern[increment(patternSizes, attemptPatterns[i]) - 1] = i;
+		}
+		
+		impostorSampler = new ImpostorSampler(attemptIds, attemptUsers, attemptPatterns);
+	}
+	
+	private static <K> int increment(Map<K, Integer> counts, K key) {
+		Integer count = counts.get(key);
+		int value = count == null ? 1 : count + 1;
+		counts.put(key, value);
+		return value;
+	}
+	
+	private static long key(int userId, int patternId) {
+		return ((long) userId << 32) | (patternId & 0xffffffffL);
+	}
+	
+	private static void close(ConnectionSource connectionSource, DatabaseConnection connection, CompiledStatement statement, DatabaseResults results) throws SQLException {
+		if (results != null) results.closeQuietly();
+		if (statement != null) statement.closeQuietly();
+		connectionSource.releaseConnection(connection);
+	}
+	
+	public int [] getUserIds() {
+		return userIds;
+	}
+	
+	/**
+	 * Gets the patterns that have attempts, in ascending order.
+	 * 
+	 * @return Patterns ids
+	 */
+	public int [] getPatternIds() {
+		int [] patternIds = new int[patternAttempts.size()];
+		int i = 0;
+		for (Integer patternId : patternAttempts.keySet()) {
+			patternIds[i++] = patternId;
+		}
+		Arrays.sort(patternIds);
+		return patternIds;
+	}
+	
+	public int getNumAttempts() {
+		return attemptIds.length;
+	}
+	
+	public int getNumSamples() {
+		return eventTime.length;
+	}
+	
+	/**
+	 * Gets the indexes of the attempts of the user with the pattern, ordered by attempt id.
+	 * The array returned is shared and must not be modified.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Attempts indexes
+	 */
+	public int [] getAttempts(int userId, int patternId) {
+		int [] attempts = userPatternAttempts.get(key(userId, patternId));
+		return attempts != null ? attempts : new int[0];
+	}
+	
+	/**
+	 * Gets the first attempts of the user with the pattern, until reach the max specified.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxAttempts Max attempts
+	 * @return Attempts indexes
+	 */
+	public int [] getPositiveAttempts(int userId, int patternId, int maxAttempts) {
+		int [] attempts = getAttempts(userId, patternId);
+		return Arrays.copyOf(attempts, Math.min(maxAttempts, attempts.length));
+	}
+	
+	/**
+	 * Gets random attempts with the pattern from the other users (excluding the administrator),
+	 * ordered by attempt id. The attempts are drawn by the ImpostorSampler, the same
+	 * used on the database.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxAttempts Max attempts
+	 * @return Attempts indexes
+	 */
+	public int [] getNegativeRandomAttempts(int userId, int patternId, int maxAttempts) {
+		int [] ids = impostorSampler.sample(userId, patternId, maxAttempts);
+		int [] attempts = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			attempts[i] = Arrays.binarySearch(attemptIds, ids[i]);
+		}
+		return attempts;
+	}
+	
+	/**
+	 * Counts the attempts of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of attempts
+	 */
+	public int countAttempts(int userId, int patternId) {
+		return getAttempts(userId, patternId).length;
+	}
+	
+	/**
+	 * Counts the dots of the pattern drawn by the user, based on his first attempt.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of samples on each attempt
+	 */
+	public int countDots(int userId, int patternId) {
+		int [] attempts = getAttempts(userId, patternId);
+		if (attempts.length == 0)
+			throw new IllegalStateException("User " + userId + " has no attempts with pattern " + patternId + ".");
+		return countSamples(attempts[0]);
+	}
+	
+	public int getAttemptId(int attempt) {
+		return attemptIds[attempt];
+	}
+	
+	public int getAttemptUser(int attempt) {
+		return attemptUsers[attempt];
+	}
+	
+	public int countSamples(int attempt) {
+		return attemptOffsets[attempt + 1] - attemptOffsets[attempt];
+	}
+	
+	/**
+	 * Copies the samples of the attempts to the buffers, with the same layout
+	 * used by the SampleDao loaders: SAMPLE_FIELDS values on each row
+	 * and the attempt id of each row on attemptIds (when it isn't null).
+	 * 
+	 * @param attempts Attempts indexes
+	 * @param samples Preallocated buffer of samples
+	 * @param sampleAttemptIds Preallocated buffer of attempts, may be null
+	 * @return Number of rows copied
+	 */
+	public int copySamples(int [] attempts, double [] samples, int [] sampleAttemptIds) {
+		int rows = 0;
+		for (int a = 0; a < attempts.length; a++) {
+			int attempt = attempts[a];
+			for (int s = attemptOffsets[attempt]; s < attemptOffsets[attempt + 1]; s++) {
+				int offset = rows * SampleDao.SAMPLE_FIELDS;
+				if (offset + SampleDao.SAMPLE_FIELDS > samples.length)
+					throw new IllegalStateException("Samples buffer is smaller than the number of samples copied.");
+				
+				samples[offset] = eventTime[s];
+				samples[offset + 1] = pressure[s];
+				samples[offset + 2] = pressureArea[s];
+				if (sampleAttemptIds != null)
+					sampleAttemptIds[rows] = attemptIds[attempt];
+				rows++;
+			}
+		}
+		return rows;
+	}
+	
+	/**
+	 * Passes the samples of the attempts to the sink, on the order of the attempts.
+	 * 
+	 * @param attempts Attempts indexes
+	 * @param sink Receives the samples
+	 * @return Number of rows passed
+	 */
+	public int streamSamples(int [] attempts, SampleSink sink) {
+		int rows = 0;
+		for (int a = 0; a < attempts.length; a++) {
+			int attempt = attempts[a];
+			for (int s = attemptOffsets[attempt]; s < attemptOffsets[attempt + 1]; s++) {
+				sink.sample(attemptIds[attempt], eventTime[s], pressure[s], pressureArea[s]);
+				rows++;
+			}
+		}
+		return rows;
+	}
+	
+	/**
+	 * Gets the columns of the samples used by the feature sets. The columns
+	 * computed from the samples are cached on them, shared by all the handlers.
+	 * 
+	 * @return SampleColumns
+	 */
+	public synchronized SampleColumns getColumns() {
+		if (columns == null)
+			columns = new SampleColumns(eventTime, pressure, pressureArea, attemptOffsets);
+		return columns;
+	}
+	
+	/**
+	 * Gets the event time column. The array is shared and must not be modified.
+	 */
+	public double [] getEventTime() {
+		return eventTime;
+	}
+	
+	/**
+	 * Gets the pressure column. The array is shared and must not be modified.
+	 */
+	public double [] getPressure() {
+		return pressure;
+	}
+	
+	/**
+	 * Gets the pressure area column. The array is shared and must not be modified.
+	 */
+	public double [] getPressureArea() {
+		return pressureArea;
+	}
+	
+	/**
+	 * Gets the offsets of the attempts on the columns. The array is shared and must not be modified.
+	 */
+	public int [] getAttemptOffsets() {
+		return attemptOffsets;
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.db;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Queue of the experiments, on a SQLite database shared by the worker processes.
+ * 
+ * Each job is a (user, pattern, variant, configuration) of the grid, submitted
+ * once however many times the grid is submitted. A worker claims the first
+ * pending job with a lease, renews the lease while the job runs and completes
+ * the job at the end. The job of a worker that stops renewing its lease, like
+ * a process that crashed, is claimed again by the next worker when the lease
+ * expires. A job that fails is run again, until MAX_ATTEMPTS. A job whose lease
+ * expired MAX_ATTEMPTS times, like a job that kills the process of every worker
+ * that runs it, is marked as failed instead of being claimed again.
+ * 
+ * The jobs are claimed on an immediate transaction, so two processes never
+ * claim the same job while its lease is valid. The methods are synchronized,
+ * the connection is shared by the threads of the worker.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class JobQueue {
+
+	public static final String DEFAULT_QUEUE_PATH = "db/jobs.db";
+	public static final int MAX_ATTEMPTS = 3;
+	
+	public static final String PENDING = "pending";
+	public static final String RUNNING = "running";
+	public static final String DONE = "done";
+	public static final String FAILED = "failed";
+	
+	private static final String driverName = "org.sqlite.JDBC";
+	// Seconds waiting the lock of the database held by another process
+	private static final int BUSY_TIMEOUT = 60;
+	
+	private static final String CREATE_TABLE =
+		"CREATE TABLE IF NOT EXISTS jobs (" +
+		"id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		"user_id INTEGER NOT NULL, " +
+		"pattern_id INTEGER NOT NULL, " +
+		"variant TEXT NOT NULL, " +
+		"configuration TEXT NOT NULL, " +
+		"status TEXT NOT NULL, " +
+		"worker TEXT, " +
+		"lease_expires INTEGER NOT NULL DEFAULT 0, " +
+		"attempts INTEGER NOT NULL DEFAULT 0, " +
+		"error TEXT, " +
+		"UNIQUE (user_id, pattern_id, variant, configuration))";
+	
+	// Pending jobs and jobs with an expired lease, on the order they were submitted
+	private static final String SELECT_AVAILABLE =
+		"SELECT id, user_id, pattern_id, variant, configuration, attempts FROM jobs " +
+		"WHERE status = '" + PENDING + "' OR (status = '" + RUNNING + "' AND lease_expires < ? AND attempts < " + MAX_ATTEMPTS + ") " +
+		"ORDER BY id LIMIT 1";
+	
+	// Jobs with an expired lease on their last attempt
+	private static final String FAIL_EXPIRED =
+		"UPDATE jobs SET status = '" + FAILED + "', error = 'Lease expired on attempt ' || attempts " +
+		"WHERE status = '" + RUNNING + "' AND lease_expires < ? AND attempts >= " + MAX_ATTEMPTS;
+	
+	private Connection connection;
+	private String worker;
+	
+	/**
+	 * Opens the queue, creating its table when it doesn't exist.
+	 * 
+	 * @param path Queue database
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public JobQueue(String path) throws SQLException, ClassNotFoundException {
+		Class.forName(driverName);
+		connection = new SQLiteConfig().createConnection("jdbc:sqlite:" + path.trim());
+		worker = ManagementFactory.getRuntimeMXBean().getName();
+		
+		Statement statement = connection.createStatement();
+		try {
+			// The timeout of the driver is the busy timeout of the connection
+			statement.setQueryTimeout(BUSY_TIMEOUT);
+			statement.executeUpdate(CREATE_TABLE);
+		} finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Gets the name of the worker, the process id and host of the JVM.
+	 */
+	public String getWorker() {
+		return worker;
+	}
+	
+	/**
+	 * Adds the job to the grid, when it isn't there yet.
+	 * 
+	 * @return Job was added?
+	 * @throws SQLException
+	 */
+	public synchronized boolean submit(int userId, int patternId, String variant, String configuration) throws SQLException {
+		PreparedStatement insert = connection.prepareStatement("INSERT OR IGNORE INTO jobs "
+				+ "(user_id, pattern_id, variant, configuration, status) VALUES (?, ?, ?, ?, '" + PENDING + "')");
+		try {
+			insert.setInt(1, userId);
+			insert.setInt(2, patternId);
+			insert.setString(3, variant);
+			insert.setString(4, configuration);
+			return insert.executeUpdate() > 0;
+		} finally {
+			insert.close();
+		}
+	}
+	
+	/**
+	 * Claims the next pending job, or a job whose lease expired.
+	 * 
+	 * @param leaseMillis Duration of the lease
+	 * @return Job, null when no job is available now
+	 * @throws SQLException
+	 */
+	public synchronized Job claim(long leaseMillis) throws SQLException {
+		execute("BEGIN IMMEDIATE");
+		boolean committed = false;
+		try {
+			long now = System.currentTimeMillis();
+			PreparedStatement failExpired = connection.prepareStatement(FAIL_EXPIRED);
+			try {
+				failExpired.setLong(1, now);
+				failExpired.executeUpdate();
+			} finally {
+				failExpired.close();
+			}
+			
+			Job job = null;
+			PreparedStatement select = connection.prepareStatement(SELECT_AVAILABLE);
+			try {
+				select.setLong(1, now);
+				ResultSet results = select.executeQuery();
+				if (results.next())
+					job = new Job(results.getInt(1), results.getInt(2), results.getInt(3), results.getString(4),
+							results.getString(5), results.getInt(6) + 1);
+				results.close();
+			} finally {
+				select.close();
+			}
+			
+			if (job != null) {
+				PreparedStatement update = connection.prepareStatement("UPDATE jobs SET status = '" + RUNNING + "', "
+						+ "worker = ?, lease_expires = ?, attempts = ? WHERE id = ?");
+				try {
+					update.setString(1, worker);
+					update.setLong(2, now + leaseMillis);
+					update.setInt(3, job.getAttempt());
+					update.setInt(4, job.getId());
+					update.executeUpdate();
+				} finally {
+					update.close();
+				}
+			}
+			execute("COMMIT");
+			committed = true;
+			return job;
+		} finally {
+			if (!committed)
+				execute("ROLLBACK");
+		}
+	}
+	
+	/**
+	 * Renews the lease of the job.
+	 * 
+	 * @return The worker still holds the lease? False when the lease expired
+	 * and the job was claimed by another worker.
+	 * @throws SQLException
+	 */
+	public synchronized boolean heartbeat(Job job, long leaseMillis) throws SQLException {
+		PreparedStatement update = connection.prepareStatement("UPDATE jobs SET lease_expires = ? "
+				+ "WHERE id = ? AND worker = ? AND status = '" + RUNNING + "'");
+		try {
+			update.setLong(1, System.currentTimeMillis() + leaseMillis);
+			update.setInt(2, job.getId());
+			update.setString(3, worker);
+			return update.executeUpdate() > 0;
+		} finally {
+			update.close();
+		}
+	}
+	
+	/**
+	 * Marks the job as done.
+	 * 
+	 * @return The worker still held the lease?
+	 * @throws SQLException
+	 */
+	public synchronized boolean complete(Job job) throws SQLException {
+		PreparedStatement update = connection.prepareStatement("UPDATE jobs SET status = '" + DONE + "', error = NULL "
+				+ "WHERE id = ? AND worker = ? AND status = '" + RUNNING + "'");
+		try {
+			update.setInt(1, job.getId());
+			update.setString(2, worker);
+			return update.executeUpdate() > 0;
+		} finally {
+			update.close();
+		}
+	}
+	
+	/**
+	 * Releases the job after an error, it's run again until MAX_ATTEMPTS.
+	 * 
+	 * @return The worker still held the lease?
+	 * @throws SQLException
+	 */
+	public synchronized boolean fail(Job job, String error) throws SQLException {
+		PreparedStatement update = connection.prepareStatement("UPDATE jobs SET status = ?, lease_expires = 0, error = ? "
+				+ "WHERE id = ? AND worker = ? AND status = '" + RUNNING + "'");
+		try {
+			update.setString(1, job.getAttempt() >= MAX_ATTEMPTS ? FAILED : PENDING);
+			update.setString(2, error);
+			update.setInt(3, job.getId());
+			update.setString(4, worker);
+			return update.executeUpdate() > 0;
+		} finally {
+			update.close();
+		}
+	}
+	
+	/**
+	 * Counts the jobs pending or running, by any worker.
+	 * 
+	 * @throws SQLException
+	 */
+	public synchronized int countUnfinished() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM jobs WHERE status IN ('" + PENDING + "', '" + RUNNING + "')");
+			int count = results.getInt(1);
+			results.close();
+			return count;
+		} finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Counts the jobs by status.
+	 * 
+	 * @throws SQLException
+	 */
+	public synchronized Map<String, Integer> countByStatus() throws SQLException {
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		counts.put(PENDING, 0);
+		counts.put(RUNNING, 0);
+		counts.put(DONE, 0);
+		counts.put(FAILED, 0);
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet results = statement.executeQuery("SELECT status, COUNT(*) FROM jobs GROUP BY status");
+			while (results.next()) {
+				counts.put(results.getString(1), results.getInt(2));
+			}
+			results.close();
+		} finally {
+			statement.close();
+		}
+		return counts;
+	}
+	
+	/**
+	 * Counts the jobs that were claimed more than once: reclaimed after
+	 * an expired lease or run again after an error.
+	 * 
+	 * @throws SQLException
+	 */
+	public synchronized int countRetried() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM jobs WHERE attempts > 1");
+			int count = results.getInt(1);
+			results.close();
+			return count;
+		} finally {
+			statement.close();
+		}
+	}
+	
+	private void execute(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate(sql);
+		} finally {
+			statement.close();
+		}
+	}
+	
+	public synchronized void close() throws SQLException {
+		connection.close();
+	}
+	
+	/**
+	 * Job claimed from the queue.
+	 */
+	public static class Job {
+		
+		private int id;
+		private int userId;
+		private int patternId;
+		private String variant;
+		private String configuration;
+		private int attempt;
+		
+		private Job(int id, int userId, int patternId, String variant, String configuration, int attempt) {
+			this.id = id;
+			this.userId = userId;
+			this.patternId = patternId;
+			this.variant = variant;
+			this.configuration = configuration;
+			this.attempt = attempt;
+		}
+		
+		public int getId() {
+			return id;
+		}
+		
+		public int getUserId() {
+			return userId;
+		}
+		
+		public int getPatternId() {
+			return patternId;
+		}
+		
+		public String getVariant() {
+			return variant;
+		}
+		
+		public String getConfiguration() {
+			return configuration;
+		}
+		
+		/**
+		 * Gets the number of the attempt, 1 on the first claim of the job.
+		 */
+		public int getAttempt() {
+			return attempt;
+		}
+		
+		@Override
+		public String toString() {
+			return variant + (configuration.length() > 0 ? " " + configuration : "") + " user " + userId
+					+ " pattern " + patternId + " (job " + id + ", attempt " + attempt + ")";
+		}
+	}
+}
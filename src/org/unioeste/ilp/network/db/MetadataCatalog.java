@@ -0,0 +1,251 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.db;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.unioeste.ilp.network.daos.AttemptDao;
+import org.unioeste.ilp.network.daos.DaoRegistry;
+import org.unioeste.ilp.network.daos.ImpostorSampler;
+import org.unioeste.ilp.network.daos.SampleDao;
+import org.unioeste.ilp.network.train.TrainingSetHandler;
+
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Counts of the database computed once: number of dots drawn by each user
+ * on each pattern, number of attempts of each user with each pattern and
+ * the number of attempts available as negative examples on each pattern.
+ * 
+ * The catalog is built from the FeatureStore when it's loaded, otherwise from two
+ * grouped queries on the database. The FeatureCache registers the catalog
+ * read from its file, so the database isn't opened.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class MetadataCatalog {
+
+	private static final Map<String, MetadataCatalog> catalogs = new HashMap<String, MetadataCatalog>();
+	
+	// Number of dots and attempts of each user and pattern
+	private Map<Long, int[]> userPatterns = new HashMap<Long, int[]>();
+	// Attempts of each pattern, without the administrator
+	private Map<Integer, Integer> patternPools = new HashMap<Integer, Integer>();
+	
+	/**
+	 * Gets the catalog of the database on the path, building it on the first call.
+	 * 
+	 * @param path Database path
+	 * @return MetadataCatalog
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static MetadataCatalog getInstance(String path) throws SQLException, ClassNotFoundException {
+		synchronized (MetadataCatalog.class) {
+			MetadataCatalog catalog = catalogs.get(path);
+			if (catalog != null)
+				return catalog;
+			
+			FeatureStore store = FeatureStore.getLoaded(path);
+			if (store != null) {
+				catalog = fromStore(store);
+				catalogs.put(path, catalog);
+				return catalog;
+			}
+		}
+		
+		// The connection is leased outside the lock, the handlers wait for the lock holding connections
+		SQLiteConnectionManager manager = SQLiteConnectionManager.getInstance(path);
+		ConnectionSource connection = manager.lease();
+		try {
+			return getInstance(path, connection);
+		} finally {
+			manager.release(connection);
+		}
+	}
+	
+	/**
+	 * Gets the catalog of the database on the path, building it
+	 * through the connection on the first call.
+	 * 
+	 * @param path Database path
+	 * @param connection Connection leased from the manager of the database
+	 * @return MetadataCatalog
+	 * @throws SQLException
+	 */
+	public static synchronized MetadataCatalog getInstance(String path, ConnectionSource connection) throws SQLException {
+		MetadataCatalog catalog = catalogs.get(path);
+		if (catalog == null) {
+			catalog = fromDatabase(SQLiteConnectionManager.getInstance(path).getDaoRegistry(connection));
+			catalogs.put(path, catalog);
+		}
+		return catalog;
+	}
+	
+	/**
+	 * Makes the catalog available for the database on the path.
+	 * 
+	 * @param path Database path
+	 * @param catalog MetadataCatalog
+	 */
+	public static synchronized void register(String path, MetadataCatalog catalog) {
+		catalogs.put(path, catalog);
+	}
+	
+	private static MetadataCatalog fromStore(FeatureStore store) {
+		MetadataCatalog catalog = new MetadataCatalog();
+		int [] userIds = store.getUserIds();
+		int [] patternIds = store.getPatternIds();
+		for (int u = 0; u < userIds.length; u++) {
+			for (int p = 0; p < patternIds.length; p++) {
+				int numAttempts = store.countAttempts(userIds[u], patternIds[p]);
+				if (numAttempts > 0)
+					catalog.add(userIds[u], patternIds[p], store.countDots(userIds[u], patternIds[p]), numAttempts);
+			}
+		}
+		return catalog;
+	}
+	
+	private static MetadataCatalog fromDatabase(DaoRegistry daoRegistry) throws SQLException {
+		AttemptDao attemptDao = daoRegistry.getAttemptDao();
+		SampleDao sampleDao = daoRegistry.getSampleDao();
+		
+		// Attempts and first attempt of each user and pattern
+		Map<Integer, long[]> firstAttempts = new HashMap<Integer, long[]>();
+		GenericRawResults<String[]> attempts = attemptDao.getDao().queryRaw(
+				"SELECT `experiences`.`user_id`, `experiences`.`pattern_id`, COUNT(*), MIN(`attempts`.`_id`) FROM `attempts` " +
+				"INNER JOIN `experiences` ON `attempts`.`experience_id` = `experiences`.`_id` " +
+				"GROUP BY `experiences`.`user_id`, `experiences`.`pattern_id`");
+		try {
+			List<String[]> rows = attempts.getResults();
+			for (int i = 0; i < rows.size(); i++) {
+				String [] row = rows.get(i);
+				long [] userPattern = {Integer.parseInt(row[0]), Integer.parseInt(row[1]), Integer.parseInt(row[2])};
+				firstAttempts.put(Integer.parseInt(row[3]), userPattern);
+			}
+		} finally {
+			attempts.close();
+		}
+		
+		// Dots on the first attempt of each user and pattern
+		MetadataCatalog catalog = new MetadataCatalog();
+		if (firstAttempts.isEmpty())
+			return catalog;
+		
+		StringBuilder ids = new StringBuilder();
+		for (Integer attemptId : firstAttempts.keySet()) {
+			ids.append(ids.length() > 0 ? "," : "").append(attemptId);
+		}
+		GenericRawResults<String[]> dots = sampleDao.getDao().queryRaw(
+				"SELECT `attempt_id`, COUNT(*) FROM `samples` WHERE `attempt_id` IN (" + ids + ") GROUP BY `attempt_id`");
+		try {
+			List<String[]> rows = dots.getResults();
+			for (int i = 0; i < rows.size(); i++) {
+				long [] userPattern = firstAttempts.get(Integer.parseInt(rows.get(i)[0]));
+				catalog.add((int) userPattern[0], (int) userPattern[1], Integer.parseInt(rows.get(i)[1]), (int) userPattern[2]);
+			}
+		} finally {
+			dots.close();
+		}
+		return catalog;
+	}
+	
+	private static long key(int userId, int patternId) {
+		return ((long) userId << 32) | (patternId & 0xffffffffL);
+	}
+	
+	/**
+	 * Adds the counts of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param numDots Number of dots on each attempt
+	 * @param numAttempts Number of attempts
+	 */
+	public void add(int userId, int patternId, int numDots, int numAttempts) {
+		userPatterns.put(key(userId, patternId), new int[] {numDots, numAttempts});
+		if (userId != ImpostorSampler.ADMIN_USER_ID) {
+			Integer pool = patternPools.get(patternId);
+			patternPools.put(patternId, pool == null ? numAttempts : pool + numAttempts);
+		}
+	}
+	
+	private int [] get(int userId, int patternId) {
+		int [] counts = userPatterns.get(key(userId, patternId));
+		if (counts == null)
+			throw new IllegalStateException("User " + userId + " has no attempts with pattern " + patternId + ".");
+		return counts;
+	}
+	
+	/**
+	 * Gets the number of dots drawn by the user on the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of samples on each attempt
+	 */
+	public int getNumDots(int userId, int patternId) {
+		return get(userId, patternId)[0];
+	}
+	
+	/**
+	 * Gets the number of inputs of the examples of the user with the pattern,
+	 * built by the default feature set of the TrainingSetHandler.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Input size
+	 */
+	public int getInputSize(int userId, int patternId) {
+		return TrainingSetHandler.getDefaultFeatures().getInputSize(getNumDots(userId, patternId));
+	}
+	
+	/**
+	 * Counts the attempts of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of attempts, 0 when the user hasn't drawn the pattern
+	 */
+	public int countAttempts(int userId, int patternId) {
+		int [] counts = userPatterns.get(key(userId, patternId));
+		return counts != null ? counts[1] : 0;
+	}
+	
+	/**
+	 * Counts the attempts with the pattern that can be used as
+	 * negative examples for the user.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of attempts from the other users, without the administrator
+	 */
+	public int countImpostors(int userId, int patternId) {
+		Integer pool = patternPools.get(patternId);
+		if (pool == null)
+			return 0;
+		return userId != ImpostorSampler.ADMIN_USER_ID ? pool - countAttempts(userId, patternId) : pool;
+	}
+}
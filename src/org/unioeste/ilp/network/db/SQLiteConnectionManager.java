@@ -0,0 +1,259 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.unioeste.ilp.network.daos.DaoRegistry;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Process wide manager of the connections with a SQLite database.
+ * 
+ * Holds a small pool of read only connection sources that are leased
+ * to the handlers and released when they finish their queries. A connection
+ * source is used by one thread at a time, so workers running in parallel
+ * can share the manager safely. When all the connections are leased,
+ * the next lease waits until one of them is released.
+ * 
+ * The manager keeps the time spent waiting for a connection and the time
+ * the connections stayed leased, showing the contention on the database.
+ * 
+ * Each connection source has a DaoRegistry, built on its first use,
+ * so the handlers don't create the DAOs again on every lease.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class SQLiteConnectionManager {
+
+	public static final int DEFAULT_POOL_SIZE = 4;
+	
+	private static final Map<String, SQLiteConnectionManager> managers = new HashMap<String, SQLiteConnectionManager>();
+	
+	private final String path;
+	private final int poolSize;
+	
+	private final BlockingQueue<ConnectionSource> idle;
+	private final List<ConnectionSource> connections;
+	private final Map<ConnectionSource, Long> leases;
+	private final Map<ConnectionSource, DaoRegistry> registries;
+	
+	private long leaseCount = 0;
+	private long waitNanos = 0;
+	private long maxWaitNanos = 0;
+	private long leaseNanos = 0;
+	private long maxLeaseNanos = 0;
+	
+	private long registryUses = 0;
+	private long registryBuildNanos = 0;
+	// Upper bound: the first build of each registry counted again on each reuse
+	private long registryMaxSavedNanos = 0;
+	
+	private SQLiteConnectionManager(String path, int poolSize) {
+		if (poolSize <= 0)
+			throw new IllegalArgumentException("Pool size must be greater than 0.");
+		
+		this.path = path;
+		this.poolSize = poolSize;
+		this.idle = new LinkedBlockingQueue<ConnectionSource>();
+		this.connections = new ArrayList<ConnectionSource>();
+		this.leases = new ConcurrentHashMap<ConnectionSource, Long>();
+		this.registries = new HashMap<ConnectionSource, DaoRegistry>();
+	}
+	
+	/**
+	 * Gets the manager of the database on the path, creating it on the first call.
+	 * 
+	 * @param path Database path
+	 * @return SQLiteConnectionManager
+	 */
+	public static synchronized SQLiteConnectionManager getInstance(String path) {
+		SQLiteConnectionManager manager = managers.get(path);
+		if (manager == null) {
+			manager = new SQLiteConnectionManager(path, DEFAULT_POOL_SIZE);
+			managers.put(path, manager);
+		}
+		return manager;
+	}
+	
+	/**
+	 * Closes the connections of all the managers created.
+	 */
+	public static synchronized void closeAll() {
+		Iterator<SQLiteConnectionManager> it = managers.values().iterator();
+		while (it.hasNext()) {
+			it.next().close();
+		}
+		managers.clear();
+	}
+	
+	/**
+	 * Leases a connection source from the pool. Creates a new one while
+	 * the pool isn't full, otherwise waits until a connection is released.
+	 * 
+	 * Every lease must be followed by a release of the same connection source.
+	 * 
+	 * @return ConnectionSource
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public ConnectionSource lease() throws SQLException, ClassNotFoundException {
+		long start = System.nanoTime();
+		ConnectionSource connection = idle.poll();
+		if (connection == null)
+			connection = createConnection();
+		
+		if (connection == null) {
+			try {
+				connection = idle.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a connection with " + path + ".");
+			}
+		}
+		
+		long now = System.nanoTime();
+		leases.put(connection, now);
+		recordWait(now - start);
+		return connection;
+	}
+	
+	/**
+	 * Returns the connection source to the pool.
+	 * 
+	 * @param connection ConnectionSource leased
+	 */
+	public void release(ConnectionSource connection) {
+		Long start = leases.remove(connection);
+		if (start == null)
+			throw new IllegalStateException("Connection wasn't leased by this manager.");
+		
+		recordLease(System.nanoTime() - start);
+		idle.offer(connection);
+	}
+	
+	/**
+	 * Gets the DAOs of a leased connection source, building them on the first call.
+	 * 
+	 * @param connection ConnectionSource leased
+	 * @return DaoRegistry
+	 * @throws SQLException
+	 */
+	public synchronized DaoRegistry getDaoRegistry(ConnectionSource connection) throws SQLException {
+		if (!leases.containsKey(connection))
+			throw new IllegalStateException("Connection wasn't leased by this manager.");
+		
+		registryUses++;
+		DaoRegistry registry = registries.get(connection);
+		if (registry == null) {
+			registry = new DaoRegistry(connection);
+			registries.put(connection, registry);
+			registryBuildNanos += registry.getBuildNanos();
+		} else {
+			// Each use saves at most the first build, DaoManager caches the DAOs so a rebuild costs less
+			registryMaxSavedNanos += registry.getBuildNanos();
+		}
+		return registry;
+	}
+	
+	private synchronized ConnectionSource createConnection() throws SQLException, ClassNotFoundException {
+		if (connections.size() >= poolSize)
+			return null;
+		
+		ConnectionSource connection = SQLiteConnectionSource.createReadOnlyConnectionSource(path);
+		connections.add(connection);
+		return connection;
+	}
+	
+	private synchronized void recordWait(long nanos) {
+		leaseCount++;
+		waitNanos += nanos;
+		maxWaitNanos = Math.max(maxWaitNanos, nanos);
+	}
+	
+	private synchronized void recordLease(long nanos) {
+		leaseNanos += nanos;
+		maxLeaseNanos = Math.max(maxLeaseNanos, nanos);
+	}
+	
+	public synchronized long getLeaseCount() {
+		return leaseCount;
+	}
+	
+	public synchronized long getWaitNanos() {
+		return waitNanos;
+	}
+	
+	public synchronized long getLeaseNanos() {
+		return leaseNanos;
+	}
+	
+	/**
+	 * Describes the use of the pool: number of leases and the total,
+	 * mean and max time waiting for and holding the connections.
+	 * 
+	 * @return String
+	 */
+	public synchronized String getStatistics() {
+		double meanWait = leaseCount > 0 ? waitNanos / 1e6 / leaseCount : 0;
+		double meanLease = leaseCount > 0 ? leaseNanos / 1e6 / leaseCount : 0;
+		return String.format(Locale.US, "%s: %d connections, %d leases, wait %.3f ms (mean %.3f, max %.3f), lease %.3f ms (mean %.3f, max %.3f)",
+				path, connections.size(), leaseCount,
+				waitNanos / 1e6, meanWait, maxWaitNanos / 1e6,
+				leaseNanos / 1e6, meanLease, maxLeaseNanos / 1e6);
+	}
+	
+	/**
+	 * Describes the use of the DAO registries: number of uses, time spent building them
+	 * and an upper bound of the time saved by not building the DAOs on every use, each
+	 * reuse counting the time of the first build of its registry. DaoManager caches the
+	 * DAOs of each connection, so the DAOs built again would take less than that.
+	 * 
+	 * @return String
+	 */
+	public synchronized String getDaoStatistics() {
+		return String.format(Locale.US, "%s: %d DAO registries built in %.3f ms, %d uses, at most %.3f ms saved",
+				path, registries.size(), registryBuildNanos / 1e6, registryUses, registryMaxSavedNanos / 1e6);
+	}
+	
+	/**
+	 * Closes all the connections on the pool.
+	 */
+	public synchronized void close() {
+		for (int i = 0; i < connections.size(); i++) {
+			connections.get(i).closeQuietly();
+		}
+		connections.clear();
+		idle.clear();
+		leases.clear();
+		registries.clear();
+	}
+}
@@ -21,7 +21,11 @@ package org.unioeste.ilp.network.db;
 
 import java.sql.SQLException;
 
+import org.sqlite.SQLiteConfig;
+
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.logger.Logger;
 import com.j256.ormlite.support.ConnectionSource;
 
 /**
@@ -49,13 +53,29 @@ public class SQLiteConnectionSource {
 		return createConnection(path);
 	}
 	
+	/**
+	 * Creates a connection source that opens the database in read only mode.
+	 * 
+	 * @param path Database path
+	 * @return ConnectionSource
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	public static ConnectionSource createReadOnlyConnectionSource(String path) throws ClassNotFoundException, SQLException {
+		Class.forName(driverName);
+		return new ReadOnlyConnectionSource(url(path));
+	}
+	
 	private static ConnectionSource createConnection(String path) throws ClassNotFoundException, SQLException {
 		Class.forName(driverName);
-		String url = "jdbc:sqlite:" + path.trim();
-		ConnectionSource connection = new JdbcConnectionSource(url);
+		ConnectionSource connection = new JdbcConnectionSource(url(path));
 		return connection;
 	}
 	
+	private static String url(String path) {
+		return "jdbc:sqlite:" + path.trim();
+	}
+	
 	public ConnectionSource getConnectionSource() {
 		return connection;
 	}
@@ -63,4 +83,21 @@ public class SQLiteConnectionSource {
 	public void closeConnection() throws SQLException {
 		connection.close();
 	}
+	
+	/**
+	 * JdbcConnectionSource that opens the SQLite connection with the read only flag.
+	 */
+	private static class ReadOnlyConnectionSource extends JdbcConnectionSource {
+		
+		public ReadOnlyConnectionSource(String url) throws SQLException {
+			super(url);
+		}
+		
+		@Override
+		protected JdbcDatabaseConnection makeConnection(Logger logger) throws SQLException {
+			SQLiteConfig config = new SQLiteConfig();
+			config.setReadOnly(true);
+			return new JdbcDatabaseConnection(config.createConnection(getUrl()));
+		}
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+/**
+ * Creates the secondary indexes used by the joins of the DAOs.
+ * 
+ * The database collected on the phones has only the primary keys, so every join
+ * between samples, attempts and experiences scans the whole table. The indexes
+ * are created on a copy of the database, keeping the original file untouched.
+ * All the statements can run many times over the same database.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class SchemaProvisioner {
+
+	public static final String[] INDEXES = {
+		"CREATE INDEX IF NOT EXISTS samples_attempt_id ON samples (attempt_id)",
+		"CREATE INDEX IF NOT EXISTS attempts_experience_id ON attempts (experience_id)",
+		"CREATE INDEX IF NOT EXISTS experiences_user_pattern ON experiences (user_id, pattern_id)"
+	};
+	
+	/**
+	 * Copies the database to the target path, when the copy doesn't exist
+	 * or is older than the source, and creates the indexes on the copy.
+	 * 
+	 * @param sourcePath Original database
+	 * @param targetPath Copy with the indexes
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static void provisionCopy(String sourcePath, String targetPath) throws IOException, SQLException, ClassNotFoundException {
+		File source = new File(sourcePath);
+		File target = new File(targetPath);
+		if (!source.exists())
+			throw new IllegalStateException("Database " + sourcePath + " doesn't exist.");
+		
+		if (!target.exists() || target.lastModified() < source.lastModified())
+			copy(source, target);
+		provision(targetPath);
+	}
+	
+	/**
+	 * Creates the indexes on the database and updates the statistics used by the query planner.
+	 * 
+	 * @param path Database path
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static void provision(String path) throws SQLException, ClassNotFoundException {
+		ConnectionSource connectionSource = SQLiteConnectionSource.createConnectionSource(path);
+		try {
+			DatabaseConnection connection = connectionSource.getReadWriteConnection();
+			try {
+				for (int i = 0; i < INDEXES.length; i++) {
+					connection.executeStatement(INDEXES[i], DatabaseConnection.DEFAULT_RESULT_FLAGS);
+				}
+				connection.executeStatement("ANALYZE", DatabaseConnection.DEFAULT_RESULT_FLAGS);
+			} finally {
+				connectionSource.releaseConnection(connection);
+			}
+		} finally {
+			connectionSource.closeQuietly();
+		}
+	}
+	
+	private static void copy(File source, File target) throws IOException {
+		FileChannel in = new FileInputStream(source).getChannel();
+		try {
+			FileChannel out = new FileOutputStream(target).getChannel();
+			try {
+				long position = 0, size = in.size();
+				while (position < size) {
+					position += in.transferTo(position, size - position, out);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Computes a column of values, one for each sample, over the whole columns
+ * of the samples.
+ * 
+ * The columns are cached by name on the SampleColumns, so an extractor asks
+ * for the columns it depends on through them and the columns shared by many
+ * extractors are computed only once.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public interface ColumnExtractor {
+
+	/**
+	 * Name of the column, it identifies the column on the cache.
+	 */
+	String getName();
+	
+	/**
+	 * Number of dots at the begin of each attempt that have no value,
+	 * like the first dot on the time between dots.
+	 */
+	int getFirstDot();
+	
+	/**
+	 * Computes the column.
+	 * 
+	 * @param columns Columns of the samples
+	 * @return One value for each sample
+	 */
+	double [] extract(SampleColumns columns);
+}
@@ -0,0 +1,59 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Difference between the value of each dot and the value of the previous dot
+ * of the same attempt. The first dot of each attempt has no value.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class DeltaColumn implements ColumnExtractor {
+
+	// Time between consecutive dots
+	public static final DeltaColumn TIME_DELTA = new DeltaColumn(RawColumn.EVENT_TIME);
+	
+	private ColumnExtractor column;
+	
+	public DeltaColumn(ColumnExtractor column) {
+		this.column = column;
+	}
+	
+	public String getName() {
+		return "delta(" + column.getName() + ")";
+	}
+	
+	public int getFirstDot() {
+		return column.getFirstDot() + 1;
+	}
+	
+	public double [] extract(SampleColumns columns) {
+		double [] values = columns.getColumn(column);
+		double [] deltas = new double[columns.getNumSamples()];
+		int first = column.getFirstDot() + 1;
+		for (int a = 0; a < columns.getNumAttempts(); a++) {
+			for (int s = columns.getBegin(a) + first; s < columns.getEnd(a); s++) {
+				deltas[s] = values[s] - values[s - 1];
+			}
+		}
+		return deltas;
+	}
+}
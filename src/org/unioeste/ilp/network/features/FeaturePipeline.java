@@ -0,0 +1,127 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Set of columns that make the input vector of each attempt.
+ * 
+ * The input vector has the values of the columns for each dot, dot after dot,
+ * on the order of the extractors. The dots at the begin of the attempt
+ * without value on a column are skipped on that column. The default set has
+ * the time between dots, the pressure and the pressure area, so it has
+ * numDots * 3 - 1 inputs.
+ * 
+ * The columns are taken from the SampleColumns, computed once for all the
+ * attempts and cached there, so a new set only computes its new columns.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class FeaturePipeline {
+
+	public static final FeaturePipeline DEFAULT = new FeaturePipeline(DeltaColumn.TIME_DELTA, RawColumn.PRESSURE, RawColumn.PRESSURE_AREA);
+	
+	// The default columns with the rates of change of the pressure and of the pressure area
+	public static final FeaturePipeline RATES = new FeaturePipeline(DeltaColumn.TIME_DELTA, RawColumn.PRESSURE, RawColumn.PRESSURE_AREA,
+			RateColumn.PRESSURE_RATE, RateColumn.PRESSURE_AREA_RATE);
+	
+	// The standard scores of the default columns on each attempt
+	public static final FeaturePipeline ZSCORES = new FeaturePipeline(new ZScoreColumn(DeltaColumn.TIME_DELTA),
+			new ZScoreColumn(RawColumn.PRESSURE), new ZScoreColumn(RawColumn.PRESSURE_AREA));
+	
+	private ColumnExtractor [] extractors;
+	
+	public FeaturePipeline(ColumnExtractor... extractors) {
+		if (extractors.length == 0)
+			throw new IllegalStateException("The feature set needs at least one column.");
+		this.extractors = extractors;
+	}
+	
+	public ColumnExtractor [] getExtractors() {
+		return extractors;
+	}
+	
+	/**
+	 * Gets the name of the set, the names of its columns.
+	 */
+	public String getName() {
+		StringBuilder name = new StringBuilder();
+		for (int e = 0; e < extractors.length; e++) {
+			if (e > 0)
+				name.append(',');
+			name.append(extractors[e].getName());
+		}
+		return name.toString();
+	}
+	
+	/**
+	 * Gets the number of inputs of the attempts with the number of dots.
+	 * 
+	 * @param numDots Number of dots on each attempt
+	 * @return Number of inputs
+	 */
+	public int getInputSize(int numDots) {
+		int size = 0;
+		for (int e = 0; e < extractors.length; e++) {
+			size += Math.max(0, numDots - extractors[e].getFirstDot());
+		}
+		return size;
+	}
+	
+	/**
+	 * Constructs the input matrix of the attempts. The matrix has numberOfExamples
+	 * rows, the rows without attempt are left with zeros.
+	 * 
+	 * @param columns Columns of the samples
+	 * @param attempts Attempts indexes on the columns
+	 * @param numberOfExamples Number of examples
+	 * @param numDots Number of dots on each attempt
+	 * @return 2 dimensions double matrix
+	 */
+	public double[][] inputs(SampleColumns columns, int [] attempts, int numberOfExamples, int numDots) {
+		if (attempts.length > numberOfExamples)
+			throw new IllegalStateException("More attempts than the " + numberOfExamples + " examples preallocated.");
+		
+		double [][] values = new double[extractors.length][];
+		int [] firstDots = new int[extractors.length];
+		for (int e = 0; e < extractors.length; e++) {
+			values[e] = columns.getColumn(extractors[e]);
+			firstDots[e] = extractors[e].getFirstDot();
+		}
+		
+		double [][] inputs = new double[numberOfExamples][getInputSize(numDots)];
+		for (int a = 0; a < attempts.length; a++) {
+			int begin = columns.getBegin(attempts[a]);
+			int dots = columns.getEnd(attempts[a]) - begin;
+			if (dots > numDots)
+				throw new IllegalStateException("Attempt " + attempts[a] + " has more samples than the " + numDots + " dots of the pattern.");
+			
+			double [] row = inputs[a];
+			int j = 0;
+			for (int d = 0; d < dots; d++) {
+				for (int e = 0; e < extractors.length; e++) {
+					if (d >= firstDots[e])
+						row[j++] = values[e][begin + d];
+				}
+			}
+		}
+		return inputs;
+	}
+}
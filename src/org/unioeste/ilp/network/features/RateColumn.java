@@ -0,0 +1,63 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Rate of change of the column over the time between consecutive dots,
+ * like the velocity of the pressure area or the derivative of the pressure.
+ * 
+ * Uses the cached deltas of the column and of the event time.
+ * Dots with the same event time have rate 0.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class RateColumn implements ColumnExtractor {
+
+	public static final RateColumn PRESSURE_RATE = new RateColumn(RawColumn.PRESSURE);
+	public static final RateColumn PRESSURE_AREA_RATE = new RateColumn(RawColumn.PRESSURE_AREA);
+	
+	private DeltaColumn delta;
+	private String name;
+	
+	public RateColumn(ColumnExtractor column) {
+		delta = new DeltaColumn(column);
+		name = "rate(" + column.getName() + ")";
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getFirstDot() {
+		return Math.max(delta.getFirstDot(), DeltaColumn.TIME_DELTA.getFirstDot());
+	}
+	
+	public double [] extract(SampleColumns columns) {
+		double [] deltas = columns.getColumn(delta);
+		double [] times = columns.getColumn(DeltaColumn.TIME_DELTA);
+		double [] rates = new double[columns.getNumSamples()];
+		for (int s = 0; s < rates.length; s++) {
+			if (times[s] != 0)
+				rates[s] = deltas[s] / times[s];
+		}
+		return rates;
+	}
+}
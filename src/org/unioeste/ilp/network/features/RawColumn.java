@@ -0,0 +1,51 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Column read from the samples table, as it's stored on the SampleColumns.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class RawColumn implements ColumnExtractor {
+
+	public static final RawColumn EVENT_TIME = new RawColumn("event_time");
+	public static final RawColumn PRESSURE = new RawColumn("pressure");
+	public static final RawColumn PRESSURE_AREA = new RawColumn("pressure_area");
+	
+	private String name;
+	
+	private RawColumn(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getFirstDot() {
+		return 0;
+	}
+	
+	public double [] extract(SampleColumns columns) {
+		throw new IllegalStateException("Column " + name + " isn't on the samples.");
+	}
+}
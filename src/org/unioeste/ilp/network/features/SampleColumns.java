@@ -0,0 +1,103 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columns of the samples of many attempts, ordered by attempt, with the
+ * columns computed from them.
+ * 
+ * The samples of the attempt on index i are on the positions attemptOffsets[i]
+ * until attemptOffsets[i + 1] - 1 of the columns, like on the FeatureStore.
+ * The raw columns (event_time, pressure and pressure_area) are never copied,
+ * the other columns are computed by their extractors on the first time they
+ * are asked and kept, so every feature set built later reuses them.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class SampleColumns {
+
+	private int [] attemptOffsets;
+	private int numSamples;
+	
+	// Columns by name
+	private Map<String, double[]> columns = new HashMap<String, double[]>();
+	
+	public SampleColumns(double [] eventTime, double [] pressure, double [] pressureArea, int [] attemptOffsets) {
+		this.attemptOffsets = attemptOffsets;
+		numSamples = attemptOffsets[attemptOffsets.length - 1];
+		if (eventTime.length < numSamples || pressure.length < numSamples || pressureArea.length < numSamples)
+			throw new IllegalStateException("Columns smaller than the " + numSamples + " samples of the attempts.");
+		
+		columns.put(RawColumn.EVENT_TIME.getName(), eventTime);
+		columns.put(RawColumn.PRESSURE.getName(), pressure);
+		columns.put(RawColumn.PRESSURE_AREA.getName(), pressureArea);
+	}
+	
+	public int getNumAttempts() {
+		return attemptOffsets.length - 1;
+	}
+	
+	public int getNumSamples() {
+		return numSamples;
+	}
+	
+	/**
+	 * Gets the position of the first sample of the attempt.
+	 */
+	public int getBegin(int attempt) {
+		return attemptOffsets[attempt];
+	}
+	
+	/**
+	 * Gets the position after the last sample of the attempt.
+	 */
+	public int getEnd(int attempt) {
+		return attemptOffsets[attempt + 1];
+	}
+	
+	/**
+	 * Gets the column of the extractor, computing it when it isn't cached.
+	 * The array is shared and must not be modified.
+	 * 
+	 * @param extractor Extractor
+	 * @return One value for each sample
+	 */
+	public synchronized double [] getColumn(ColumnExtractor extractor) {
+		double [] column = columns.get(extractor.getName());
+		if (column == null) {
+			column = extractor.extract(this);
+			if (column.length != numSamples)
+				throw new IllegalStateException("Column " + extractor.getName() + " has " + column.length + " values for " + numSamples + " samples.");
+			columns.put(extractor.getName(), column);
+		}
+		return column;
+	}
+	
+	/**
+	 * Checks if the column is cached.
+	 */
+	public synchronized boolean isCached(String name) {
+		return columns.containsKey(name);
+	}
+}
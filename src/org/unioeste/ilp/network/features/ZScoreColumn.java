@@ -0,0 +1,72 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.features;
+
+/**
+ * Standard score of the column on each attempt: the value of each dot minus
+ * the mean of the attempt, divided by the standard deviation of the attempt.
+ * Only the dots with value are used. An attempt with the same value on all the
+ * dots has score 0.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ZScoreColumn implements ColumnExtractor {
+
+	private ColumnExtractor column;
+	
+	public ZScoreColumn(ColumnExtractor column) {
+		this.column = column;
+	}
+	
+	public String getName() {
+		return "zscore(" + column.getName() + ")";
+	}
+	
+	public int getFirstDot() {
+		return column.getFirstDot();
+	}
+	
+	public double [] extract(SampleColumns columns) {
+		double [] values = columns.getColumn(column);
+		double [] scores = new double[columns.getNumSamples()];
+		for (int a = 0; a < columns.getNumAttempts(); a++) {
+			int begin = columns.getBegin(a) + column.getFirstDot();
+			int end = columns.getEnd(a);
+			if (end - begin < 1)
+				continue;
+			
+			double sum = 0, squares = 0;
+			for (int s = begin; s < end; s++) {
+				sum += values[s];
+				squares += values[s] * values[s];
+			}
+			double mean = sum / (end - begin);
+			double deviation = Math.sqrt(Math.max(0, squares / (end - begin) - mean * mean));
+			if (deviation == 0)
+				continue;
+			
+			for (int s = begin; s < end; s++) {
+				scores[s] = (values[s] - mean) / deviation;
+			}
+		}
+		return scores;
+	}
+}
@@ -91,7 +91,15 @@ public class ILPNeuralNetwork {
 		return rates;
 	}
 	
-	private static Rates ratesStatistics(String id, double [] fars, double [] frrs) {
+	/**
+	 * Calculates the mean and standard deviation of the FAR and FRR.
+	 * 
+	 * @param id Id of the rates
+	 * @param fars FARs
+	 * @param frrs FRRs
+	 * @return Rates
+	 */
+	public static Rates ratesStatistics(String id, double [] fars, double [] frrs) {
 		Rates rate = new Rates(id);
 		rate.setFAR(Calculator.mean(fars));
 		rate.setFRR(Calculator.mean(frrs));
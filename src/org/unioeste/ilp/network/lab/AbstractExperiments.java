@@ -21,10 +21,22 @@ package org.unioeste.ilp.network.lab;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.encog.ml.data.MLDataSet;
 import org.unioeste.ilp.network.AbstractNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.datasets.MappedDataSet;
+import org.unioeste.ilp.network.datasets.MappedDataSetWriter;
+import org.unioeste.ilp.network.train.ErrorLog;
+import org.unioeste.ilp.network.train.StoppingPolicy;
+import org.unioeste.ilp.network.train.TrainingScheduler;
+import org.unioeste.ilp.network.train.TrainingStop;
 import org.unioeste.ilp.network.util.AbstractNeuralNetworkFactory;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
 import org.unioeste.ilp.network.util.OutputHandler;
 
 /**
@@ -41,16 +53,146 @@ public abstract class AbstractExperiments {
 
 	protected AbstractNeuralNetworkFactory networkFactory;
 	protected Reporter reporter;
+	protected ColumnNormalizer normalizer;
+	protected TrainingScheduler scheduler;
+	
+	// Directory of the training sets read from the disk, null to train on the heap
+	private static File bufferDir;
+	
+	// Policies that stop the trainings, and the fraction of the training sets held out to validate them
+	private static List<StoppingPolicy> stoppingPolicies = Collections.emptyList();
+	private static double validationFraction = 0;
+	
+	// Sampling of the error logs of the trainings, all the epochs are logged by default
+	private static int logEvery = 1;
+	private static double logMinChange = 0;
+	
+	// Normalizes with the bounds fitted on each training set, the bounds fixed on ReplicatorNeuralNetwork by default
+	private static boolean fittedBounds = false;
+	
+	/**
+	 * Sets the directory where the training sets are written before the trainings.
+	 * The networks are then trained with the sets mapped from the disk (MappedDataSet),
+	 * so the training sets don't need to stay on the heap.
+	 * 
+	 * @param dir Buffer directory, null to train with the sets on the heap
+	 */
+	public static synchronized void setBufferDir(File dir) {
+		bufferDir = dir;
+	}
+	
+	public static synchronized File getBufferDir() {
+		return bufferDir;
+	}
+	
+	/**
+	 * Sets the policies that stop the trainings before the max error or max
+	 * iterations of the networks. The last rows of each training set are held
+	 * out of the training, as the validation set of the policies.
+	 * 
+	 * @param fraction Fraction of the training sets held out, 0 to train with all the rows
+	 * @param policies Stopping policies
+	 */
+	public static synchronized void setStopping(double fraction, StoppingPolicy... policies) {
+		if (fraction < 0 || fraction >= 1)
+			throw new IllegalStateException("The validation fraction must be in [0, 1), got " + fraction + ".");
+		validationFraction = fraction;
+		stoppingPolicies = Collections.unmodifiableList(Arrays.asList(policies.clone()));
+	}
+	
+	public static synchronized List<StoppingPolicy> getStoppingPolicies() {
+		return stoppingPolicies;
+	}
+	
+	public static synchronized double getValidationFraction() {
+		return validationFraction;
+	}
+	
+	/**
+	 * Sets the sampling of the error logs written with the trainings.
+	 * 
+	 * @param every Logs every that many epochs, 0 to log only on changes
+	 * @param minChange Logs when the error changed this fraction, 0 to ignore the changes
+	 * @see ErrorLog
+	 */
+	public static synchronized void setErrorLogSampling(int every, double minChange) {
+		if (every < 0 || minChange < 0)
+			throw new IllegalStateException("The sampling of the log can't be negative, got every " + every + " and change " + minChange + ".");
+		logEvery = every;
+		logMinChange = minChange;
+	}
+	
+	/**
+	 * Creates the log of the errors of a training, with the sampling set.
+	 */
+	protected static synchronized ErrorLog createErrorLog() {
+		return new ErrorLog(logEvery, logMinChange);
+	}
+	
+	/**
+	 * Sets if the datasets are normalized with the bounds fitted on the training sets.
+	 * The max errors of the networks were tuned for the fixed bounds, under the fitted
+	 * bounds they're stricter and the networks usually train up to the max iterations.
+	 * 
+	 * @param fitted True to fit the bounds, false to use the fixed ones
+	 * @see ColumnNormalizer
+	 */
+	public static synchronized void setFittedBounds(boolean fitted) {
+		fittedBounds = fitted;
+	}
+	
+	public static synchronized boolean isFittedBounds() {
+		return fittedBounds;
+	}
+	
+	/**
+	 * Creates the normalizer of the training set and of its test set,
+	 * with the fitted or the fixed bounds as set.
+	 * 
+	 * @param trainingSet Training set
+	 * @return ColumnNormalizer
+	 */
+	public static synchronized ColumnNormalizer createNormalizer(MLDataSet trainingSet) {
+		if (fittedBounds)
+			return ColumnNormalizer.fit(trainingSet);
+		return ColumnNormalizer.fixed(trainingSet.getInputSize());
+	}
 	
 	public AbstractExperiments() {
 		this.reporter = new Reporter();
+		this.scheduler = new TrainingScheduler();
 	}
 	
 	public AbstractExperiments(AbstractNeuralNetwork networkModel) {
 		this.reporter = new Reporter();
+		this.scheduler = new TrainingScheduler();
 		this.networkFactory = new AbstractNeuralNetworkFactory(networkModel);
 	}
 	
+	/**
+	 * Sets the scheduler that decides the threads of the trainings
+	 * and counts the networks trained.
+	 * 
+	 * @param scheduler TrainingScheduler
+	 */
+	public void setScheduler(TrainingScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	public TrainingScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Sets the normalizer applied to the datasets of the next experiments,
+	 * it's saved with each network trained.
+	 * 
+	 * @param normalizer ColumnNormalizer
+	 */
+	public void setNormalizer(ColumnNormalizer normalizer) {
+		this.normalizer = normalizer;
+	}
+	
 	/**
 	 * Writes the results on the path specified with the results added to the report.
 	 * 
@@ -58,10 +200,26 @@ public abstract class AbstractExperiments {
 	 * @throws IOException
 	 */
 	public void writeReport(String path) throws IOException {
-		reporter.commitReport();
 		reporter.writeReport(path);
 	}
 	
+	/**
+	 * Writes why and when the training of each network stopped.
+	 * 
+	 * @param path Path
+	 * @throws IOException
+	 */
+	public void writeStops(String path) throws IOException {
+		reporter.writeStops(path);
+	}
+	
+	/**
+	 * Gets the epochs saved by the stopping policies on the trainings.
+	 */
+	public long getEpochsSaved() {
+		return reporter.getEpochsSaved();
+	}
+	
 	/**
 	 * Default steps on an experiment with a neural network. It trains the network with the training set, saves it
 	 * on a file and then tests it with the test set. All the results on the tests are added on the
@@ -76,10 +234,46 @@ public abstract class AbstractExperiments {
 	 */
 	public void experimentIndividualNetwork(AbstractNeuralNetwork network, 
 			MLDataSet trainingSet, MLDataSet testSet, String dir, String experimentInfo) throws IOException {
+		experimentIndividualNetwork(reporter.reserve(), network, trainingSet, testSet, dir, experimentInfo);
+	}
+	
+	/**
+	 * Same as experimentIndividualNetwork, with the results added on the
+	 * position of the report reserved before the experiment.
+	 * 
+	 * @param position Position on the report
+	 * @param network Neural Network
+	 * @param trainingSet Training Set
+	 * @param testSet Test Set
+	 * @param dir Directory where to save the network
+	 * @param experimentInfo Name given for the experiment
+	 * @throws IOException
+	 */
+	protected void experimentIndividualNetwork(int position, AbstractNeuralNetwork network, 
+			MLDataSet trainingSet, MLDataSet testSet, String dir, String experimentInfo) throws IOException {
+		experimentIndividualNetwork(position, network, trainingSet, null, testSet, dir, experimentInfo);
+	}
+	
+	/**
+	 * Same as experimentIndividualNetwork, with the rows held out of the training set
+	 * to validate the stopping policies.
+	 * 
+	 * @param position Position on the report
+	 * @param network Neural Network
+	 * @param trainingSet Training Set
+	 * @param validationSet Rows held out of the training set, null when there's none
+	 * @param testSet Test Set
+	 * @param dir Directory where to save the network
+	 * @param experimentInfo Name given for the experiment
+	 * @throws IOException
+	 */
+	protected void experimentIndividualNetwork(int position, AbstractNeuralNetwork network, MLDataSet trainingSet,
+			MLDataSet validationSet, MLDataSet testSet, String dir, String experimentInfo) throws IOException {
 		
 		// Train neural network
 		String fileName = dir + "/training " + experimentInfo;
-		trainNetwork(network, fileName);
+		TrainingStop stop = trainNetwork(network, validationSet, fileName);
+		reporter.reportStop(position, experimentInfo, stop);
 		
 		// Saves neural network
 		String [] dirs = OutputHandler.separateDirs(dir);
@@ -87,15 +281,106 @@ public abstract class AbstractExperiments {
 		String netPath = OutputHandler.mountDir(dirs);
 		File file = new File(netPath + "/" + experimentInfo);
 		network.save(file);
+		if (normalizer != null)
+			normalizer.save(new File(file.getAbsolutePath() + ColumnNormalizer.EXTENSION));
 		
 		// Tests neural network
 		fileName = dir + "/test " + experimentInfo;
-		testNetwork(network, testSet, fileName);
+		double [] rates = testNetwork(network, testSet, fileName);
+		
+		reporter.report(position, experimentInfo, rates[0], rates[1]);
+	}
+	
+	/**
+	 * Runs the independent configurations of a sweep on the threads of the scheduler,
+	 * many at a time when the networks are small. Each configuration must reserve
+	 * its position on the report when it's created, the report keeps their order.
+	 * 
+	 * @param work Largest work of the networks, see TrainingScheduler.work
+	 * @param configurations Configurations
+	 * @throws IOException
+	 */
+	protected void runConfigurations(long work, List<? extends Callable<Void>> configurations) throws IOException {
+		try {
+			scheduler.invokeAll(work, configurations);
+		} catch (IllegalStateException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Separates the last rows of the training set, the validation fraction
+	 * of them, as the validation set. The rows aren't copied.
+	 * 
+	 * @param trainingSet Training set
+	 * @return Rows trained and rows held out, null when none is held out
+	 */
+	protected LabeledDataSet [] holdOut(LabeledDataSet trainingSet) {
+		int validationSize = (int) Math.round(trainingSet.size() * getValidationFraction());
+		if (validationSize == 0 || validationSize >= trainingSet.size())
+			return new LabeledDataSet [] {trainingSet, null};
 		
-		reporter.report(experimentInfo);
+		int end = trainingSet.size() - validationSize;
+		return new LabeledDataSet [] {trainingSet.view(0, end - 1), trainingSet.view(end, trainingSet.size() - 1)};
 	}
 	
-	protected abstract void trainNetwork(AbstractNeuralNetwork nn, String fileName)  throws IOException;
+	/**
+	 * Gets the set the network is trained with: the training set itself, or the
+	 * training set written on a file on the buffer directory and mapped from it.
+	 * 
+	 * @param trainingSet Training set
+	 * @return MLDataSet
+	 * @throws IOException
+	 */
+	protected MLDataSet openTrainingSet(MLDataSet trainingSet) throws IOException {
+		File dir = getBufferDir();
+		if (dir == null)
+			return trainingSet;
+		
+		if (!dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Can't create the buffer directory " + dir + ".");
+		File file = File.createTempFile("training", MappedDataSet.EXTENSION, dir);
+		boolean written = false;
+		try {
+			MLDataSet trainingData = MappedDataSetWriter.write(trainingSet, file);
+			written = true;
+			return trainingData;
+		} finally {
+			// closeTrainingSet deletes the file once it's mapped
+			if (!written)
+				file.delete();
+		}
+	}
+	
+	/**
+	 * Closes the set opened by openTrainingSet, deleting its file.
+	 * 
+	 * @param trainingData Set returned by openTrainingSet
+	 */
+	protected void closeTrainingSet(MLDataSet trainingData) {
+		if (trainingData instanceof MappedDataSet) {
+			MappedDataSet mapped = (MappedDataSet) trainingData;
+			File file = mapped.getFile();
+			mapped.close();
+			file.delete();
+		}
+	}
 	
-	protected abstract void testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException;
+	/**
+	 * Trains the network with its training strategy and the stopping policies,
+	 * writing the iterations on the file.
+	 * 
+	 * @return Why and when the training stopped
+	 */
+	protected abstract TrainingStop trainNetwork(AbstractNeuralNetwork nn, MLDataSet validationSet, String fileName)  throws IOException;
+	
+	/**
+	 * Tests the network with the test set, writing the results on the file.
+	 * 
+	 * @return FAR and FRR
+	 */
+	protected abstract double [] testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException;
 }
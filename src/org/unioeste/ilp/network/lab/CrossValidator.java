@@ -0,0 +1,260 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.lab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
+import org.unioeste.ilp.network.infoprovider.ILPNeuralNetwork;
+import org.unioeste.ilp.network.infoprovider.Rates;
+import org.unioeste.ilp.network.train.TrainingScheduler;
+import org.unioeste.ilp.network.util.AbstractNeuralNetworkFactory;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
+import org.unioeste.ilp.network.util.DataSetHelper;
+
+/**
+ * Evaluates a replicator network configuration on many separations of the
+ * same examples, instead of a single training and test set.
+ * 
+ * The examples are the positive examples of the user followed by the negative
+ * examples, labeled on one dataset. The folds are views of it: on k-fold the
+ * positive and negative examples are split into k parts each, the test set of
+ * each fold has one part of both, so every fold keeps the ratio of positive
+ * and negative examples. The training set has the other positive examples,
+ * the negative examples are only tested. On repeated holdout the same
+ * percentage of positive and negative examples is tested on each repetition.
+ * 
+ * The networks of the folds are trained by the TrainingScheduler, in parallel
+ * when the training sets are small, and the FAR and FRR of the folds are merged
+ * into their mean and standard deviation.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class CrossValidator {
+
+	public static final int DEFAULT_FOLDS = 5;
+	
+	private Random random;
+	private TrainingScheduler scheduler;
+	
+	public CrossValidator(long seed) {
+		this(seed, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates the validator with the seed of the separations and
+	 * the number of threads shared by the trainings.
+	 * 
+	 * @param seed Seed
+	 * @param numThreads Number of threads
+	 */
+	public CrossValidator(long seed, int numThreads) {
+		random = new Random(seed);
+		scheduler = new TrainingScheduler(numThreads);
+	}
+	
+	public TrainingScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Puts the training and test sets of the dataset on one labeled dataset,
+	 * where the folds are separated from.
+	 * 
+	 * @param dataset ReplicatorDataSet
+	 * @return LabeledDataSet
+	 */
+	public static LabeledDataSet pool(ReplicatorDataSet dataset) {
+		LabeledDataSet trainingSet = dataset.getTrainingSet();
+		LabeledDataSet testSet = dataset.getTestSet();
+		LabeledDataSet examples = new LabeledDataSet(trainingSet.size() + testSet.size(), true);
+		for (int i = 0; i < trainingSet.size(); i++) {
+			examples.add(trainingSet.get(i), trainingSet.getLabel(i));
+		}
+		for (int i = 0; i < testSet.size(); i++) {
+			examples.add(testSet.get(i), testSet.getLabel(i));
+		}
+		return examples;
+	}
+	
+	/**
+	 * Gets the positions of the examples with the label, on a random order.
+	 */
+	private int [] shuffled(LabeledDataSet examples, double label) {
+		int [] indices = new int[label == 1.0 ? examples.getNumPositives() : examples.getNumNegatives()];
+		int n = 0;
+		for (int i = 0; i < examples.size(); i++) {
+			if (examples.getLabel(i) == label)
+				indices[n++] = i;
+		}
+		int [] permutation = DataSetHelper.permutation(indices.length, random);
+		int [] shuffled = new int[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			shuffled[i] = indices[permutation[i]];
+		}
+		return shuffled;
+	}
+	
+	/**
+	 * Creates the fold with the examples from begin (inclusive) to end (exclusive)
+	 * of both lists on the test set and the other positive examples on the training set.
+	 */
+	private static ReplicatorDataSet fold(LabeledDataSet examples, int [] positives, int positiveBegin, int positiveEnd,
+			int [] negatives, int negativeBegin, int negativeEnd) {
+		
+		int [] training = new int[positives.length - (positiveEnd - positiveBegin)];
+		int [] test = new int[positiveEnd - positiveBegin + negativeEnd - negativeBegin];
+		int t = 0, s = 0;
+		for (int i = 0; i < positives.length; i++) {
+			if (i >= positiveBegin && i < positiveEnd)
+				test[s++] = positives[i];
+			else
+				training[t++] = positives[i];
+		}
+		for (int i = negativeBegin; i < negativeEnd; i++) {
+			test[s++] = negatives[i];
+		}
+		return new ReplicatorDataSet(examples.view(training), examples.view(test));
+	}
+	
+	/**
+	 * Separates the examples into k folds, keeping the ratio of positive
+	 * and negative examples on the test set of each fold.
+	 * 
+	 * @param examples Labeled examples
+	 * @param k Number of folds
+	 * @return Folds
+	 */
+	public List<ReplicatorDataSet> kFolds(LabeledDataSet examples, int k) {
+		int [] positives = shuffled(examples, 1.0);
+		int [] negatives = shuffled(examples, 0.0);
+		if (k < 2 || k > positives.length || k > negatives.length)
+			throw new IllegalStateException("Can't separate " + positives.length + " positive and " + negatives.length
+					+ " negative examples into " + k + " folds.");
+		
+		List<ReplicatorDataSet> folds = new ArrayList<ReplicatorDataSet>();
+		for (int f = 0; f < k; f++) {
+			folds.add(fold(examples, positives, positives.length * f / k, positives.length * (f + 1) / k,
+					negatives, negatives.length * f / k, negatives.length * (f + 1) / k));
+		}
+		return folds;
+	}
+	
+	/**
+	 * Separates the examples randomly on each repetition, testing
+	 * the same percentage of the positive and negative examples.
+	 * 
+	 * @param examples Labeled examples
+	 * @param testPercent Percentage of the examples on the test set
+	 * @param repetitions Number of separations
+	 * @return Separations
+	 */
+	public List<ReplicatorDataSet> repeatedHoldout(LabeledDataSet examples, double testPercent, int repetitions) {
+		List<ReplicatorDataSet> folds = new ArrayList<ReplicatorDataSet>();
+		for (int r = 0; r < repetitions; r++) {
+			int [] positives = shuffled(examples, 1.0);
+			int [] negatives = shuffled(examples, 0.0);
+			int numPositives = (int) Math.round(positives.length * (testPercent / 100));
+			int numNegatives = (int) Math.round(negatives.length * (testPercent / 100));
+			if (numPositives < 1 || numPositives >= positives.length || numNegatives < 1)
+				throw new IllegalStateException("Can't test " + testPercent + "% of " + positives.length + " positive and "
+						+ negatives.length + " negative examples.");
+			folds.add(fold(examples, positives, 0, numPositives, negatives, 0, numNegatives));
+		}
+		return folds;
+	}
+	
+	/**
+	 * Trains a network like the model on each fold and merges the rates of the folds.
+	 * 
+	 * @param id Configuration
+	 * @param networkModel Network model
+	 * @param folds Folds
+	 * @return Mean and standard deviation of the FAR and FRR
+	 */
+	public Rates evaluate(String id, final ReplicatorNeuralNetwork networkModel, List<ReplicatorDataSet> folds) {
+		List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+		for (final ReplicatorDataSet fold : folds) {
+			tasks.add(new Callable<double[]>() {
+				public double[] call() throws Exception {
+					return evaluateFold(networkModel, fold);
+				}
+			});
+		}
+		
+		long work = TrainingScheduler.work(folds.get(0).getTrainingSet(), networkModel.getNetwork().encodedArrayLength());
+		List<double[]> results;
+		try {
+			results = scheduler.invokeAll(work, tasks);
+		} catch (IllegalStateException e) {
+			throw new IllegalStateException("Folds of " + id + " couldn't be evaluated.", e);
+		}
+		
+		double [] fars = new double[folds.size()];
+		double [] frrs = new double[folds.size()];
+		for (int f = 0; f < folds.size(); f++) {
+			fars[f] = results.get(f)[0];
+			frrs[f] = results.get(f)[1];
+		}
+		return ILPNeuralNetwork.ratesStatistics(id, fars, frrs);
+	}
+	
+	/**
+	 * Normalizes the fold with the bounds of its training set, trains the network
+	 * and tests it.
+	 * 
+	 * @return FAR and FRR
+	 */
+	private double [] evaluateFold(ReplicatorNeuralNetwork networkModel, ReplicatorDataSet fold) {
+		ColumnNormalizer normalizer = AbstractExperiments.createNormalizer(fold.getTrainingSet());
+		LabeledDataSet trainingSet = normalizer.normalize(fold.getTrainingSet());
+		LabeledDataSet testSet = normalizer.normalize(fold.getTestSet());
+		
+		ReplicatorNeuralNetwork network = new AbstractNeuralNetworkFactory(networkModel).factoryReplicatorNetwork(networkModel.getHiddenLayers());
+		network.setTrainStrategy(new Backpropagation(network.getNetwork(), trainingSet));
+		scheduler.train(network);
+		
+		int fa = 0, fr = 0;
+		for (int i = 0; i < testSet.size(); i++) {
+			MLDataPair pair = testSet.get(i);
+			MLData result = network.compute(pair);
+			double error = network.calculateError(pair.getIdeal(), result);
+			if (ReplicatorExperiments.isFA(testSet.getLabel(i), network.getTrainError(), error)) fa++;
+			if (ReplicatorExperiments.isFR(testSet.getLabel(i), network.getTrainError(), error)) fr++;
+		}
+		return new double [] {(double) fa / testSet.getNumNegatives(), (double) fr / testSet.getNumPositives()};
+	}
+	
+	/**
+	 * Stops the threads of the validator.
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+}
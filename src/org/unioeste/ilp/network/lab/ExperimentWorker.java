@@ -0,0 +1,160 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.lab;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.unioeste.ilp.network.db.JobQueue;
+import org.unioeste.ilp.network.db.JobQueue.Job;
+
+/**
+ * Runs the jobs of the queue until the grid is finished.
+ * 
+ * While a job runs its lease is renewed three times per lease duration. When
+ * there's no job to claim but jobs are still running on other workers, the
+ * worker waits: a job of a worker that crashed is claimed again after its
+ * lease expires. Many workers, on many processes, can share the same queue.
+ * 
+ * A worker whose lease was lost, because its heartbeats didn't reach the queue
+ * in time and another worker claimed the job, can't interrupt the training: the
+ * job runs to its end on both workers, writing the same output directory, so its
+ * files may mix both runs until the new worker finishes. The worker that lost
+ * the lease doesn't complete or fail the job, its result is left to the new worker.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ExperimentWorker {
+
+	public static final long DEFAULT_LEASE = 60000;
+	
+	/**
+	 * Runs a job claimed from the queue.
+	 */
+	public interface Runner {
+		void run(Job job) throws Exception;
+	}
+	
+	private JobQueue queue;
+	private long leaseMillis;
+	private Runner runner;
+	
+	public ExperimentWorker(JobQueue queue, Runner runner) {
+		this(queue, DEFAULT_LEASE, runner);
+	}
+	
+	/**
+	 * Creates the worker of the queue.
+	 * 
+	 * @param queue JobQueue
+	 * @param leaseMillis Duration of the lease of the jobs
+	 * @param runner Runner of the jobs
+	 */
+	public ExperimentWorker(JobQueue queue, long leaseMillis, Runner runner) {
+		this.queue = queue;
+		this.leaseMillis = leaseMillis;
+		this.runner = runner;
+	}
+	
+	/**
+	 * Claims and runs jobs until no job is pending or running.
+	 * 
+	 * @return Number of jobs completed by this worker
+	 * @throws SQLException
+	 * @throws InterruptedException
+	 */
+	public int work() throws SQLException, InterruptedException {
+		ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "job-heartbeat");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		int completed = 0;
+		try {
+			while (true) {
+				Job job = queue.claim(leaseMillis);
+				if (job == null) {
+					if (queue.countUnfinished() == 0)
+						break;
+					// Waits the other workers, or their leases to expire
+					Thread.sleep(leaseMillis / 4);
+					continue;
+				}
+				
+				System.out.println("Trabalho iniciado por " + queue.getWorker() + ": " + job);
+				AtomicBoolean leaseLost = new AtomicBoolean(false);
+				ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(heartbeat(job, leaseLost),
+						leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+				Exception error = null;
+				try {
+					runner.run(job);
+				} catch (Exception e) {
+					error = e;
+				} finally {
+					heartbeat.cancel(false);
+				}
+				
+				if (leaseLost.get()) {
+					if (error != null)
+						error.printStackTrace();
+					System.out.println("Lease perdida, o resultado fica com o outro processo: " + job);
+				} else if (error == null) {
+					if (queue.complete(job))
+						completed++;
+					else
+						System.out.println("Lease perdida, o trabalho foi retomado por outro processo: " + job);
+				} else {
+					error.printStackTrace();
+					queue.fail(job, error.toString());
+				}
+			}
+		} finally {
+			heartbeats.shutdownNow();
+		}
+		return completed;
+	}
+	
+	private Runnable heartbeat(final Job job, final AtomicBoolean leaseLost) {
+		return new Runnable() {
+			public void run() {
+				if (leaseLost.get())
+					return;
+				try {
+					if (!queue.heartbeat(job, leaseMillis)) {
+						leaseLost.set(true);
+						System.out.println("Lease perdida: " + job);
+					}
+				} catch (SQLException e) {
+					// Tries again on the next heartbeat, before the lease expires
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+}
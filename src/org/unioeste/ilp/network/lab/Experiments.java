@@ -19,6 +19,7 @@
 
 package org.unioeste.ilp.network.lab;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,7 +29,8 @@ import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
 import org.unioeste.ilp.network.AbstractNeuralNetwork;
 import org.unioeste.ilp.network.NeuralNetwork;
-import org.unioeste.ilp.network.train.Trainer;
+import org.unioeste.ilp.network.train.ErrorLog;
+import org.unioeste.ilp.network.train.TrainingStop;
 import org.unioeste.ilp.network.util.OutputHandler;
 
 /**
@@ -123,14 +125,15 @@ public class Experiments extends AbstractExperiments {
 	}
 	
 	@Override
-	protected void trainNetwork(AbstractNeuralNetwork nn, String fileName) throws IOException {
-		List<String> output = new ArrayList<String>();
-		output = Trainer.train(nn);
-		OutputHandler.writeOutput(fileName, output);
+	protected TrainingStop trainNetwork(AbstractNeuralNetwork nn, MLDataSet validationSet, String fileName) throws IOException {
+		ErrorLog log = createErrorLog();
+		TrainingStop stop = scheduler.train(nn, log, validationSet, getStoppingPolicies());
+		log.write(new File(fileName));
+		return stop;
 	}
 	
 	@Override
-	protected void testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException {
+	protected double [] testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException {
 		List<String> output = new ArrayList<String>();
 		int fa = 0, fr = 0;
 		for (MLDataPair pair : testSet) {
@@ -141,7 +144,7 @@ public class Experiments extends AbstractExperiments {
 		}
 		// Writes the results to a file
 		OutputHandler.writeOutput(fileName, output);
-		reporter.report(fa, (int) testSet.getRecordCount() / 2, fr, (int) testSet.getRecordCount() / 2);
+		return new double [] {reporter.calculateFAR(fa, (int) testSet.getRecordCount() / 2), reporter.calculateFRR(fr, (int) testSet.getRecordCount() / 2)};
 	}
 	
 	private boolean isFA(MLData ideal, MLData result) {
@@ -19,24 +19,29 @@
 
 package org.unioeste.ilp.network.lab;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
 
 import org.encog.ml.data.MLData;
 import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
-import org.encog.ml.train.MLTrain;
 import org.encog.neural.networks.training.propagation.back.Backpropagation;
 import org.unioeste.ilp.network.AbstractNeuralNetwork;
 import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
 import org.unioeste.ilp.network.datasets.LabeledDataSet;
 import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
-import org.unioeste.ilp.network.train.Trainer;
+import org.unioeste.ilp.network.train.ErrorLog;
+import org.unioeste.ilp.network.train.TrainingScheduler;
+import org.unioeste.ilp.network.train.TrainingStop;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
 import org.unioeste.ilp.network.util.DataSetHelper;
-import org.unioeste.ilp.network.util.LabeledDataSetHelper;
+import org.unioeste.ilp.network.util.DataSetProvider;
 import org.unioeste.ilp.network.util.OutputHandler;
 import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
 
@@ -60,6 +65,7 @@ public class ReplicatorExperiments extends AbstractExperiments {
 	 * Experiment that varies the number of wrapper layer's units.
 	 * The wrapper layers are the second and forth one, that wraps
 	 * the middle layer. The number of units varies on these layers.
+	 * The configurations are independent and trained concurrently.
 	 * 
 	 * @param minUnit Min units
 	 * @param maxUnit Max units
@@ -70,27 +76,26 @@ public class ReplicatorExperiments extends AbstractExperiments {
 	 */
 	public void variantWrapperLayersUnits(int minUnit, int maxUnit, LabeledDataSet trainingSet, LabeledDataSet testSet, String dir) throws IOException {
 		System.out.println("Treinamento: variando unidades em camadas ocultas");
-		int [] hiddenLayers = new int[3];
+		List<Callable<Void>> configurations = new ArrayList<Callable<Void>>();
+		long work = 0;
 		for (int i = minUnit; i <= maxUnit; i++) {
-			hiddenLayers[0] = i;
-			hiddenLayers[1] = 3;
-			hiddenLayers[2] = i;
+			int [] hiddenLayers = {i, 3, i};
 			
 			ReplicatorNeuralNetwork network = networkFactory.factoryReplicatorNetwork(hiddenLayers);
-			MLTrain training = new Backpropagation(network.getNetwork(), trainingSet);
-			network.setTrainStrategy(training);
-			
 			String networkInfo = OutputHandler.networkToString(network.getNumInputs(), network.getHiddenLayers(), network.getNumOutputs());
 			
 			System.out.println("===================================");
 			System.out.println("rede=" + networkInfo + "; min=" + minUnit + "; max=" + maxUnit + "; treinamento=" + trainingSet.size() + "; testes=" + testSet.size());
 			
-			experimentIndividualNetwork(network, trainingSet, testSet, dir, networkInfo);
+			configurations.add(configuration(network, trainingSet, testSet, dir, networkInfo));
+			work = Math.max(work, TrainingScheduler.work(trainingSet, network.getNetwork().encodedArrayLength()));
 		}
+		runConfigurations(work, configurations);
 	}
 	
 	/**
 	 * Experiment that varies the number of units on the middle layer.
+	 * The configurations are independent and trained concurrently.
 	 * 
 	 * @param minUnit Min units
 	 * @param maxUnit Max units
@@ -102,26 +107,27 @@ public class ReplicatorExperiments extends AbstractExperiments {
 	 */
 	public void variantCentralLayerUnits(int minUnit, int maxUnit, int wrapperLayerUnits, LabeledDataSet trainingSet, LabeledDataSet testSet, String dir) throws IOException {
 		System.out.println("Treinamento: variando unidades em camadas oculta central");
-		int [] hiddenLayers = {wrapperLayerUnits, 3, wrapperLayerUnits};
+		List<Callable<Void>> configurations = new ArrayList<Callable<Void>>();
+		long work = 0;
 		for (int i = minUnit; i <= maxUnit; i++) {
-			hiddenLayers[1] = i;
+			int [] hiddenLayers = {wrapperLayerUnits, i, wrapperLayerUnits};
 			
 			ReplicatorNeuralNetwork network = networkFactory.factoryReplicatorNetwork(hiddenLayers);
-			MLTrain training = new Backpropagation(network.getNetwork(), trainingSet);
-			network.setTrainStrategy(training);
-			
 			String networkInfo = OutputHandler.networkToString(network.getNumInputs(), network.getHiddenLayers(), network.getNumOutputs());
 			
 			System.out.println("===================================");
 			System.out.println("rede=" + networkInfo + "; min=" + minUnit + "; max=" + maxUnit + "; treinamento=" + trainingSet.size() + "; testes=" + testSet.size());
 			
-			experimentIndividualNetwork(network, trainingSet, testSet, dir, networkInfo);
+			configurations.add(configuration(network, trainingSet, testSet, dir, networkInfo));
+			work = Math.max(work, TrainingScheduler.work(trainingSet, network.getNetwork().encodedArrayLength()));
 		}
+		runConfigurations(work, configurations);
 	}
 	
 	/**
 	 * Experiment that varies the permited max error on the training.
 	 * The max error is decremented on each iteration.
+	 * The configurations are independent and trained concurrently.
 	 * 
 	 * @param minError Min error
 	 * @param maxError Max error
@@ -133,16 +139,17 @@ public class ReplicatorExperiments extends AbstractExperiments {
 	 */
 	public void variantMaxError(double minError, double maxError, double decrement, LabeledDataSet trainingSet, LabeledDataSet testSet, String dir) throws IOException {
 		System.out.println("Treinamento: variando erro mximo");
+		List<Callable<Void>> configurations = new ArrayList<Callable<Void>>();
+		long work = 0;
 		for (double error = minError; error >= maxError; error *= decrement) {
 			ReplicatorNeuralNetwork network = networkFactory.factoryReplicatorNetwork(error);
-			MLTrain training = new Backpropagation(network.getNetwork(), trainingSet);
-			network.setTrainStrategy(training);
-			
 			System.out.println("===================================");
 			System.out.println("error=" + error + "; min=" + minError + "; max=" + maxError + "; decremento=" + decrement + "; treinamento=" + trainingSet.size() + "; testes=" + testSet.size());
 			
-			experimentIndividualNetwork(network, trainingSet, testSet, dir, "" + String.format(Locale.US, "%.10f", error));
+			configurations.add(configuration(network, trainingSet, testSet, dir, "" + String.format(Locale.US, "%.10f", error)));
+			work = Math.max(work, TrainingScheduler.work(trainingSet, network.getNetwork().encodedArrayLength()));
 		}
+		runConfigurations(work, configurations);
 	}
 	
 	/**
@@ -164,19 +171,20 @@ public class ReplicatorExperiments extends AbstractExperiments {
 		MLDataSet positive = ReplicatorDataSetProvider.getReplicatorSamples(userId, patternId, ReplicatorDataSetProvider.DEFAULT_SAMPLES_SET_SIZE);
 		ReplicatorNeuralNetwork network = networkFactory.factoryReplicatorNetwork();
 		
+		// The largest test set is drawn once on a random order, each training uses its first negative examples
+		int maxTestSetSize = Math.max(0, (int) positive.getRecordCount() - minExamples);
+		MLDataSet negative = drawNegativeExamples(userId, patternId, maxTestSetSize);
+		LabeledDataSet examples = ReplicatorDataSetProvider.labelExamples(positive, negative);
+		
 		for (int numExamples = minExamples; numExamples <= maxExamples; numExamples += increment) {
 			int testSetSize = ((int) positive.getRecordCount() - numExamples);
-			MLDataSet addTestSet = ReplicatorDataSetProvider.getNegativeReplicatorSamples(userId, patternId, testSetSize);
-			ReplicatorDataSet dataset = ReplicatorDataSetProvider.separateDataSet(positive, addTestSet, testSetSize);
+			ReplicatorDataSet dataset = ReplicatorDataSetProvider.separateDataSet(examples, positive.size(), numExamples, Math.min(testSetSize, negative.size()));
 			dataset = normalizeReplicatorDataSet(dataset);
 			
-			MLTrain training = new Backpropagation(network.getNetwork(), dataset.getTrainingSet());
-			network.setTrainStrategy(training);
-			
 			System.out.println("===================================");
 			System.out.println("exemplos=" + numExamples + "; min=" + minExamples + "; max" + maxExamples + "; incremento=" + increment + "; treinamento=" + dataset.getTrainingSet().size() + "; testes=" + dataset.getTestSet().size());
 			
-			experimentIndividualNetwork(network, dataset.getTrainingSet(), dataset.getTestSet(), dir, "" + numExamples);
+			experimentBackpropagation(reporter.reserve(), network, dataset.getTrainingSet(), dataset.getTestSet(), dir, "" + numExamples);
 		}
 	}
 	
@@ -200,23 +208,41 @@ public class ReplicatorExperiments extends AbstractExperiments {
 		MLDataSet positive = ReplicatorDataSetProvider.getReplicatorSamples(userId, patternId, sampleSize);
 		ReplicatorNeuralNetwork network = networkFactory.factoryReplicatorNetwork();
 		
+		// The largest test set is drawn once on a random order, each training uses its first negative examples
+		int maxTestSetSize = Math.max(0, (int) positive.getRecordCount() - DataSetHelper.datasetNumElementsPercent(positive, minPercent));
+		MLDataSet negative = drawNegativeExamples(userId, patternId, maxTestSetSize);
+		LabeledDataSet examples = ReplicatorDataSetProvider.labelExamples(positive, negative);
+		
 		for (double percent = minPercent; percent <= maxPercent; percent += percentIncrement) {
 			int numExamples = DataSetHelper.datasetNumElementsPercent(positive, percent);
 			int testSetSize = ((int) positive.getRecordCount() - numExamples);
-			MLDataSet addTestSet = ReplicatorDataSetProvider.getNegativeReplicatorSamples(userId, patternId, testSetSize);
-			ReplicatorDataSet dataset = ReplicatorDataSetProvider.separateDataSet(positive, addTestSet, testSetSize);
+			ReplicatorDataSet dataset = ReplicatorDataSetProvider.separateDataSet(examples, positive.size(), numExamples, Math.min(testSetSize, negative.size()));
 			dataset = normalizeReplicatorDataSet(dataset);
 			
-			MLTrain training = new Backpropagation(network.getNetwork(), dataset.getTrainingSet());
-			network.setTrainStrategy(training);
-			
 			System.out.println("===================================");
 			System.out.println("porcentagem=" + percent + "; min=" + minPercent + "; max=" + maxPercent + "; incremento=" + percentIncrement + "; treinamento=" + dataset.getTrainingSet().size() + "; testes=" + dataset.getTestSet().size());
 			
-			experimentIndividualNetwork(network, dataset.getTrainingSet(), dataset.getTestSet(), dir, "" + numExamples);
+			experimentBackpropagation(reporter.reserve(), network, dataset.getTrainingSet(), dataset.getTestSet(), dir, "" + numExamples);
 		}
 	}
 	
+	/**
+	 * Draws the negative examples of the largest test set on a random order. The sampler
+	 * returns them ordered by attempt, so the first examples of the draw would be the oldest
+	 * attempts; shuffled, the first examples of each smaller test set are a random subset.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxTestSetSize Size of the largest test set
+	 * @return Negative examples
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	private static MLDataSet drawNegativeExamples(int userId, int patternId, int maxTestSetSize) throws ClassNotFoundException, SQLException {
+		MLDataSet negative = ReplicatorDataSetProvider.getNegativeReplicatorSamples(userId, patternId, maxTestSetSize);
+		return DataSetHelper.randomize(negative, new Random(DataSetProvider.getSeed(userId, patternId)));
+	}
+	
 	/**
 	 * Same as variantNumExamplesPercent but has a default value of samples size associated.
 	 * 
@@ -234,21 +260,58 @@ public class ReplicatorExperiments extends AbstractExperiments {
 		variantNumExamplesPercent(minPercent, maxPercent, percentIncrement, userId, patternId, ReplicatorDataSetProvider.DEFAULT_SAMPLES_SET_SIZE, dir);
 	}
 	
+	/**
+	 * Normalizes the sets with the bounds of the training set,
+	 * the bounds are saved with the next network.
+	 */
 	private ReplicatorDataSet normalizeReplicatorDataSet(ReplicatorDataSet dataset) {
-		LabeledDataSet trainingSet = LabeledDataSetHelper.normalize(dataset.getTrainingSet());
-		LabeledDataSet testSet = LabeledDataSetHelper.normalize(dataset.getTestSet());
+		setNormalizer(createNormalizer(dataset.getTrainingSet()));
+		LabeledDataSet trainingSet = normalizer.normalize(dataset.getTrainingSet());
+		LabeledDataSet testSet = normalizer.normalize(dataset.getTestSet());
 		return new ReplicatorDataSet(trainingSet, testSet);
 	}
 	
+	/**
+	 * Creates the configuration of a sweep that trains the network with backpropagation,
+	 * reserving its position on the report.
+	 */
+	private Callable<Void> configuration(final ReplicatorNeuralNetwork network, final LabeledDataSet trainingSet,
+			final LabeledDataSet testSet, final String dir, final String experimentInfo) {
+		final int position = reporter.reserve();
+		return new Callable<Void>() {
+			public Void call() throws IOException {
+				experimentBackpropagation(position, network, trainingSet, testSet, dir, experimentInfo);
+				return null;
+			}
+		};
+	}
+	
+	/**
+	 * Trains the network with backpropagation on the training set, read from the disk
+	 * when a buffer directory is set, and tests it. The validation rows of the
+	 * stopping policies are held out of the training.
+	 */
+	private void experimentBackpropagation(int position, ReplicatorNeuralNetwork network, LabeledDataSet trainingSet, LabeledDataSet testSet, String dir, String experimentInfo) throws IOException {
+		LabeledDataSet [] slices = holdOut(trainingSet);
+		MLDataSet trainingData = openTrainingSet(slices[0]);
+		try {
+			network.setTrainStrategy(new Backpropagation(network.getNetwork(), trainingData));
+			experimentIndividualNetwork(position, network, slices[0], slices[1], testSet, dir, experimentInfo);
+		} finally {
+			closeTrainingSet(trainingData);
+		}
+	}
+	
 	@Override
-	protected void trainNetwork(AbstractNeuralNetwork network, String fileName) throws IOException {
-		List<String> output = new ArrayList<String>();
-		output = Trainer.train(network);
-		OutputHandler.writeOutput(fileName, output);
+	protected TrainingStop trainNetwork(AbstractNeuralNetwork network, MLDataSet validationSet, String fileName) throws IOException {
+		ErrorLog log = createErrorLog();
+		TrainingStop stop = scheduler.train(network, log, validationSet, getStoppingPolicies());
+		log.write(new File(fileName));
+		return stop;
 	}
 
 	@Override
-	protected void testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException {
+	protected double [] testNetwork(AbstractNeuralNetwork nn, MLDataSet testSet, String fileName) throws IOException {
 		List<String> output = new ArrayList<String>();
 		int fa = 0, fr = 0;
 		
@@ -266,14 +329,14 @@ public class ReplicatorExperiments extends AbstractExperiments {
 		}
 		// Writes the results to a file
 		OutputHandler.writeOutput(fileName, output);
-		reporter.report(fa, labeledTestSet.getNumNegatives(), fr, labeledTestSet.getNumPositives());
+		return new double [] {reporter.calculateFAR(fa, labeledTestSet.getNumNegatives()), reporter.calculateFRR(fr, labeledTestSet.getNumPositives())};
 	}
 	
-	private boolean isFA(double label, double trainError, double actualError) {
+	static boolean isFA(double label, double trainError, double actualError) {
 		return label == 0.0 && trainError > actualError;
 	}
 
-	private boolean isFR(double label, double trainError, double actualError) {
+	static boolean isFR(double label, double trainError, double actualError) {
 		return label == 1.0 && trainError <= actualError;
 	}
 }
@@ -21,13 +21,19 @@ package org.unioeste.ilp.network.lab;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
+import org.encog.ml.data.MLDataSet;
 import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
-import org.unioeste.ilp.network.daos.SampleDao;
 import org.unioeste.ilp.network.datasets.LabeledDataSet;
 import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
+import org.unioeste.ilp.network.db.MetadataCatalog;
 import org.unioeste.ilp.network.db.SQLiteConnectionSource;
-import org.unioeste.ilp.network.util.LabeledDataSetHelper;
+import org.unioeste.ilp.network.infoprovider.Rates;
+import org.unioeste.ilp.network.util.ColumnNormalizer;
+import org.unioeste.ilp.network.util.DataSetProvider;
 import org.unioeste.ilp.network.util.OutputHandler;
 import org.unioeste.ilp.network.util.ReplicatorDataSetProvider;
 
@@ -72,9 +78,10 @@ public class ReplicatorScientist extends Scientist {
 	}
 	
 	private static void execVariantWrapperLayersUnits(int minUnits, int maxUnits, ReplicatorNeuralNetwork networkModel, 
-			LabeledDataSet trainingSet, LabeledDataSet testSet, String path) throws IOException {
+			LabeledDataSet trainingSet, LabeledDataSet testSet, ColumnNormalizer normalizer, String path) throws IOException {
 
 		ReplicatorExperiments e = new ReplicatorExperiments(networkModel);
+		e.setNormalizer(normalizer);
 		e.variantWrapperLayersUnits(minUnits, maxUnits, trainingSet, testSet, path);
 		finishTraining(e, path);
 	}
@@ -95,11 +102,12 @@ public class ReplicatorScientist extends Scientist {
 		int minUnits = 3;
 		
 		int [] hiddenLayers = {minUnits, 3, minUnits};
-		LabeledDataSet trainingSet = LabeledDataSetHelper.normalize(dataset.getTrainingSet());
-		LabeledDataSet testSet = LabeledDataSetHelper.normalize(dataset.getTestSet());
+		ColumnNormalizer normalizer = AbstractExperiments.createNormalizer(dataset.getTrainingSet());
+		LabeledDataSet trainingSet = normalizer.normalize(dataset.getTrainingSet());
+		LabeledDataSet testSet = normalizer.normalize(dataset.getTestSet());
 		ReplicatorNeuralNetwork networkModel = createReplicatorNetworkModel(trainingSet, hiddenLayers);
 		
-		execVariantWrapperLayersUnits(minUnits, inputSize, networkModel, trainingSet, testSet, path);
+		execVariantWrapperLayersUnits(minUnits, inputSize, networkModel, trainingSet, testSet, normalizer, path);
 		System.out.println("Experimentos com RNN variando unidades com o usurio " + userId + " e padro " + patternId + " concludos.\n");
 	}
 	
@@ -109,20 +117,23 @@ public class ReplicatorScientist extends Scientist {
 		int inputSize = dataset.getTrainingSet().getInputSize();
 		
 		int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
-		LabeledDataSet trainingSet = LabeledDataSetHelper.normalize(dataset.getTrainingSet());
-		LabeledDataSet testSet = LabeledDataSetHelper.normalize(dataset.getTestSet());
+		ColumnNormalizer normalizer = AbstractExperiments.createNormalizer(dataset.getTrainingSet());
+		LabeledDataSet trainingSet = normalizer.normalize(dataset.getTrainingSet());
+		LabeledDataSet testSet = normalizer.normalize(dataset.getTestSet());
 		ReplicatorNeuralNetwork networkModel = createReplicatorNetworkModel(trainingSet, hiddenLayers);
 		
 		ReplicatorExperiments e = new ReplicatorExperiments(networkModel);
+		e.setNormalizer(normalizer);
 		e.variantCentralLayerUnits(3, inputSize, inputSize, trainingSet, testSet, path);
 		finishTraining(e, path);
 		System.out.println("Experimentos com RNN variando unidades com o usurio " + userId + " e padro " + patternId + " concludos.\n");
 	}
 	
 	private static void execVariantMaxError(double minError, double maxError, double decrement, ReplicatorNeuralNetwork networkModel,
-			LabeledDataSet trainingSet, LabeledDataSet testSet, String path) throws IOException {
+			LabeledDataSet trainingSet, LabeledDataSet testSet, ColumnNormalizer normalizer, String path) throws IOException {
 		
 		ReplicatorExperiments e = new ReplicatorExperiments(networkModel);
+		e.setNormalizer(normalizer);
 		e.variantMaxError(minError, maxError, decrement, trainingSet, testSet, path);
 		finishTraining(e, path);
 	}
@@ -142,18 +153,60 @@ public class ReplicatorScientist extends Scientist {
 		int inputSize = dataset.getTrainingSet().getInputSize();
 		
 		int [] hiddenLayers = {inputSize / 2, 3, inputSize / 2};
-		LabeledDataSet trainingSet = LabeledDataSetHelper.normalize(dataset.getTrainingSet());
-		LabeledDataSet testSet = LabeledDataSetHelper.normalize(dataset.getTestSet());
+		ColumnNormalizer normalizer = AbstractExperiments.createNormalizer(dataset.getTrainingSet());
+		LabeledDataSet trainingSet = normalizer.normalize(dataset.getTrainingSet());
+		LabeledDataSet testSet = normalizer.normalize(dataset.getTestSet());
 		ReplicatorNeuralNetwork networkModel = createReplicatorNetworkModel(trainingSet, hiddenLayers);
 		
-		execVariantMaxError(0.1, 0.000001, 0.1, networkModel, trainingSet, testSet, path);
+		execVariantMaxError(0.1, 0.000001, 0.1, networkModel, trainingSet, testSet, normalizer, path);
 		System.out.println("Experimentos com RNN variando erro mximo com o usurio " + userId + " e padro " + patternId + " concludos.\n");
 	}
 	
+	/**
+	 * Prepares for the cross validation of the networks with variant units on
+	 * the wrapper layers. The positive examples of the user and the same number
+	 * of negative examples are separated into k folds, the mean and standard
+	 * deviation of the rates of each network are written on the rates file.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param k Number of folds
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static void replicatorCrossValidation(int userId, int patternId, int k) throws ClassNotFoundException, SQLException, IOException {
+		MLDataSet positive = ReplicatorDataSetProvider.getReplicatorSamples(userId, patternId, ReplicatorDataSetProvider.DEFAULT_SAMPLES_SET_SIZE);
+		MLDataSet negative = ReplicatorDataSetProvider.getNegativeReplicatorSamples(userId, patternId, positive.size());
+		LabeledDataSet examples = ReplicatorDataSetProvider.labelExamples(positive, negative);
+		String path = initDirs("replicatorCrossValidation", userId, patternId);
+		int inputSize = examples.getInputSize();
+		
+		CrossValidator validator = new CrossValidator(DataSetProvider.getSeed(userId, patternId));
+		List<String> report = new ArrayList<String>();
+		try {
+			List<ReplicatorDataSet> folds = validator.kFolds(examples, k);
+			for (int units = 3; units <= inputSize; units++) {
+				int [] hiddenLayers = {units, 3, units};
+				ReplicatorNeuralNetwork networkModel = createReplicatorNetworkModel(inputSize, hiddenLayers);
+				String networkInfo = OutputHandler.networkToString(inputSize, hiddenLayers, inputSize);
+				
+				System.out.println("===================================");
+				System.out.println("rede=" + networkInfo + "; folds=" + k + "; exemplos=" + examples.size());
+				Rates rates = validator.evaluate(networkInfo, networkModel, folds);
+				report.add(networkInfo + "\t" + String.format(Locale.US, "%.20f\t%.20f\t%.20f\t%.20f",
+						rates.getFAR(), rates.getFRR(), rates.getFARStdDev(), rates.getFRRStdDev()));
+			}
+		} finally {
+			validator.shutdown();
+		}
+		System.out.println(validator.getScheduler().report());
+		OutputHandler.writeOutput(path + "/" + TRAINING_INFO_FILE, report);
+		System.out.println("Validao cruzada com RNN variando unidades com o usurio " + userId + " e padro " + patternId + " concluda.\n");
+	}
+	
 	private static int inputSize(int userId, int patternId) throws SQLException, ClassNotFoundException {
-		SQLiteConnectionSource conn = new SQLiteConnectionSource(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		SampleDao sampleDao = new SampleDao(conn.getConnectionSource());
-		return sampleDao.count(userId, patternId) * 3 - 1;
+		return MetadataCatalog.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH).getInputSize(userId, patternId);
 	}
 	
 	/**
@@ -21,9 +21,11 @@ package org.unioeste.ilp.network.lab;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
+import org.unioeste.ilp.network.train.TrainingStop;
 import org.unioeste.ilp.network.util.OutputHandler;
 
 /**
@@ -34,6 +36,13 @@ import org.unioeste.ilp.network.util.OutputHandler;
  * the FAR and FRR of each test made. Each row on the report
  * is a test made with a specific network.
  * 
+ * Each experiment reserves its position on the report before it starts, so
+ * the experiments can be tested on any order, by many threads, and the rows
+ * are still written on the order the experiments were created.
+ * 
+ * The reason each training stopped and the epochs it saved are kept on
+ * the same positions, on a separated report.
+ * 
  * This class is managed on the classes of experiments.
  * 
  * @author Lucas Andr de Alencar
@@ -41,66 +50,79 @@ import org.unioeste.ilp.network.util.OutputHandler;
  */
 public class Reporter {
 
-	private List<String> report;
-	
-	private double far = -1;
-	private double frr = -1;
-	private String network = null;
+	// Rows by the position of the experiment
+	private SortedMap<Integer, String> report;
+	// Stops of the trainings by the position of the experiment
+	private SortedMap<Integer, String> stops;
+	private int numReserved = 0;
+	private long epochsSaved = 0;
 	
 	public Reporter() {
-		report = new ArrayList<String>();
-	}
-	
-	public boolean hasPreviousReport() {
-		return far >= 0 && frr >= 0 && network != null;
+		report = new TreeMap<Integer, String>();
+		stops = new TreeMap<Integer, String>();
 	}
 	
-	public boolean isActualReportIncomplete() {
-		return far < 0 || frr < 0 || network == null;
+	/**
+	 * Reserves the position of the next experiment on the report.
+	 * 
+	 * @return Position of the experiment
+	 */
+	public synchronized int reserve() {
+		return numReserved++;
 	}
 	
-	public boolean isActualReportComplete() {
-		return !isActualReportIncomplete();
+	/**
+	 * Adds the row of the experiment on its position.
+	 * 
+	 * @param position Position reserved by the experiment
+	 * @param network Network
+	 * @param far FAR
+	 * @param frr FRR
+	 */
+	public synchronized void report(int position, String network, double far, double frr) {
+		checkReserved(position);
+		if (report.containsKey(position))
+			throw new IllegalStateException("The position " + position + " was already reported.");
+		report.put(position, network + "\t" + String.format(Locale.US, "%.20f", far) + "\t" + String.format(Locale.US, "%.20f", frr));
 	}
 	
-	public void commitReport() {
-		if (isActualReportComplete()) {
-			report.add(network + "\t" + String.format(Locale.US, "%.20f", far) + "\t" + String.format(Locale.US, "%.20f", frr));
-			clearActualReport();
-		} else
-			throw new IllegalStateException("Your actual report is incomplete. Missing" + getMissing() + ".");
+	public void report(int position, String network, int fa, int negativeSize, int fr, int positiveSize) {
+		report(position, network, calculateFAR(fa, negativeSize), calculateFRR(fr, positiveSize));
 	}
 	
-	public void clearActualReport() {
-		network = null;
-		far = -1;
-		frr = -1;
+	/**
+	 * Adds why and when the training of the experiment stopped on its position.
+	 * 
+	 * @param position Position reserved by the experiment
+	 * @param network Network
+	 * @param stop Stop of the training
+	 */
+	public synchronized void reportStop(int position, String network, TrainingStop stop) {
+		checkReserved(position);
+		if (stops.containsKey(position))
+			throw new IllegalStateException("The stop of the position " + position + " was already reported.");
+		stops.put(position, network + "\t" + stop);
+		epochsSaved += stop.getEpochsSaved();
 	}
 	
-	private String getMissing() {
-		String missing = "";
-		if (far < 0) missing = missing.concat(" far");
-		if (frr < 0) missing = missing.concat(" frr");
-		if (network == null) missing = missing.concat(" network");
-		return missing;
+	private void checkReserved(int position) {
+		if (position < 0 || position >= numReserved)
+			throw new IllegalStateException("The position " + position + " wasn't reserved.");
 	}
 	
-	public void report(String network, int fa, int fr, int size) {
-		if (hasPreviousReport()) commitReport();
-		this.network = network;
-		far = calculateFAR(fa, size);
-		frr = calculateFRR(fr, size);
+	/**
+	 * Gets the epochs saved by the trainings reported,
+	 * up to the max iterations of the networks.
+	 */
+	public synchronized long getEpochsSaved() {
+		return epochsSaved;
 	}
 	
-	public void report(int fa, int negativeSize, int fr, int positiveSize) {
-		if (hasPreviousReport()) commitReport();
-		far = calculateFAR(fa, negativeSize);
-		frr = calculateFRR(fr, positiveSize);
-	}
-	
-	public void report(String network) {
-		if (hasPreviousReport()) commitReport();
-		this.network = network;
+	/**
+	 * Checks if all the experiments reserved were reported.
+	 */
+	public synchronized boolean isComplete() {
+		return report.size() == numReserved;
 	}
 	
 	public double calculateFAR(int fa, int size) {
@@ -111,12 +133,22 @@ public class Reporter {
 		return (double)(fr) / (double)(size);
 	}
 	
-	public void writeReport(String path) throws IOException {
-		if (!hasPreviousReport()) {
-//			int reportSize = report.size();
-//			report.add("");
-//			report.add("Report line: " + reportSize);
-			OutputHandler.writeOutput(path, report);
-		} else throw new IllegalStateException("There's reports to commit. Before writing report, commit last changes.");
+	public synchronized void writeReport(String path) throws IOException {
+		if (isComplete())
+			OutputHandler.writeOutput(path, new ArrayList<String>(report.values()));
+		else throw new IllegalStateException("There's " + (numReserved - report.size()) + " experiments to report. Before writing report, wait them to end.");
+	}
+	
+	/**
+	 * Writes the stops of the trainings: network, reason, epochs
+	 * and epochs saved on each row.
+	 * 
+	 * @param path Path
+	 * @throws IOException
+	 */
+	public synchronized void writeStops(String path) throws IOException {
+		if (stops.size() == numReserved)
+			OutputHandler.writeOutput(path, new ArrayList<String>(stops.values()));
+		else throw new IllegalStateException("There's " + (numReserved - stops.size()) + " stops to report. Before writing the stops, wait the experiments to end.");
 	}
 }
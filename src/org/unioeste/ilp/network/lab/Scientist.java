@@ -41,6 +41,7 @@ public class Scientist {
 	
 	public static final String DEFAULT_EXPERIMENT_DIR = "experiments";
 	public static final String TRAINING_INFO_FILE = "rates";
+	public static final String STOPS_FILE = "stops";
 	
 	public static String initDirs(String training, int userId, int patternId) {
 		String [] dirs = new String[4];
@@ -53,6 +54,10 @@ public class Scientist {
 	
 	protected static void finishTraining(AbstractExperiments e, String path) throws IOException {
 		e.writeReport(path + "/" + TRAINING_INFO_FILE);
+		e.writeStops(path + "/" + STOPS_FILE);
+		e.getScheduler().shutdown();
+		System.out.println(e.getScheduler().report());
+		System.out.println("pocas economizadas pelas polticas de parada: " + e.getEpochsSaved());
 		Encog.getInstance().shutdown();
 	}
 	
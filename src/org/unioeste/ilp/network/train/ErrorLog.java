@@ -0,0 +1,170 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Error curve of a training, one error per epoch recorded.
+ * 
+ * The epochs and errors are kept on primitive arrays that grow when they're full,
+ * so recording an epoch doesn't allocate memory. The errors are only formatted
+ * when the log is written.
+ * 
+ * The log can be sampled: an epoch is recorded every few epochs, or when its
+ * error changed more than a fraction of the last error recorded. The first and
+ * the last epochs are always recorded.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ErrorLog {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private int every;
+	private double minChange;
+	
+	private int [] epochs;
+	private double [] errors;
+	private int size = 0;
+	
+	// Last epoch added, recorded or not
+	private int lastEpoch = 0;
+	private double lastError;
+	
+	/**
+	 * Creates the log that records all the epochs.
+	 */
+	public ErrorLog() {
+		this(1, 0);
+	}
+	
+	/**
+	 * Creates the sampled log.
+	 * 
+	 * @param every Records every that many epochs, 0 to record only on changes
+	 * @param minChange Records when the error changed this fraction of the last error recorded, like 0.01, 0 to ignore the changes
+	 */
+	public ErrorLog(int every, double minChange) {
+		if (every < 0 || minChange < 0)
+			throw new IllegalStateException("The sampling of the log can't be negative, got every " + every + " and change " + minChange + ".");
+		this.every = every;
+		this.minChange = minChange;
+		this.epochs = new int[INITIAL_CAPACITY];
+		this.errors = new double[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Adds the error of the epoch, recording it when it's sampled.
+	 * 
+	 * @param epoch Epoch, from 1
+	 * @param error Training error
+	 */
+	public void add(int epoch, double error) {
+		lastEpoch = epoch;
+		lastError = error;
+		if (size == 0 || (every > 0 && epoch % every == 0)
+				|| (minChange > 0 && Math.abs(error - errors[size - 1]) >= minChange * Math.abs(errors[size - 1])))
+			record(epoch, error);
+	}
+	
+	/**
+	 * Records the last epoch added, when it wasn't sampled.
+	 * Called at the end of the training.
+	 */
+	public void finish() {
+		if (lastEpoch > 0 && (size == 0 || epochs[size - 1] != lastEpoch))
+			record(lastEpoch, lastError);
+	}
+	
+	private void record(int epoch, double error) {
+		if (size == epochs.length) {
+			epochs = Arrays.copyOf(epochs, size * 2);
+			errors = Arrays.copyOf(errors, size * 2);
+		}
+		epochs[size] = epoch;
+		errors[size] = error;
+		size++;
+	}
+	
+	/**
+	 * Gets the number of epochs recorded.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public int getEpoch(int index) {
+		checkIndex(index);
+		return epochs[index];
+	}
+	
+	public double getError(int index) {
+		checkIndex(index);
+		return errors[index];
+	}
+	
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+	
+	/**
+	 * Formats the epochs recorded, the epoch and the error on each line.
+	 * 
+	 * @return List of lines
+	 */
+	public List<String> toLines() {
+		List<String> lines = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			lines.add(epochs[i] + "\t" + String.format(Locale.US, "%.20f", errors[i]));
+		}
+		return lines;
+	}
+	
+	/**
+	 * Writes the epochs recorded on the file, with the same lines of toLines.
+	 * 
+	 * @param file File
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Formatter formatter = new Formatter(new BufferedWriter(new FileWriter(file)), Locale.US);
+		try {
+			for (int i = 0; i < size; i++) {
+				formatter.format("%d\t%.20f\n", epochs[i], errors[i]);
+			}
+			formatter.flush();
+			if (formatter.ioException() != null)
+				throw formatter.ioException();
+		} finally {
+			formatter.close();
+		}
+	}
+}
@@ -0,0 +1,383 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.encog.ml.data.MLDataSet;
+import org.unioeste.ilp.network.daos.ImpostorSampler;
+import org.unioeste.ilp.network.db.FeatureStore;
+import org.unioeste.ilp.network.db.MetadataCatalog;
+import org.unioeste.ilp.network.features.FeaturePipeline;
+
+/**
+ * Persistent cache of the input vectors built by the TrainingSetHandler.
+ * 
+ * The vectors of each user and pattern (numDots * 3 - 1 inputs for each attempt)
+ * are written on a binary file next to the database, named with the suffix .features.
+ * On the next runs the file is memory mapped and the datasets are read from it,
+ * without opening the database. The file keeps the length and the CRC32
+ * of the database and is rebuilt when they don't match anymore.
+ * 
+ * File layout (big endian):
+ * header: magic, version, database length, database CRC32, number of blocks, number of rows;
+ * directory: user, pattern, rows and inputs of each block;
+ * rows: attempt id and user of each row, ordered by block;
+ * features: inputs of each row, ordered by block.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class FeatureCache {
+
+	public static final String FILE_SUFFIX = ".features";
+	
+	private static final int MAGIC = 0x494c5046; // ILPF
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+	private static final int BLOCK_ENTRY_SIZE = 4 * 4;
+	
+	private static final Map<String, FeatureCache> caches = new HashMap<String, FeatureCache>();
+	
+	private MappedByteBuffer buffer;
+	
+	private int [] rowAttemptIds;
+	private int [] rowUsers;
+	private int [] rowPatterns;
+	// Position of the features of each row on the file
+	private int [] rowPositions;
+	
+	// First row, number of rows and number of inputs of each user and pattern
+	private Map<Long, int[]> blocks;
+	// Row of each attempt id
+	private Map<Integer, Integer> attemptRows;
+	
+	private ImpostorSampler impostorSampler;
+	private MetadataCatalog catalog;
+	
+	private FeatureCache() {}
+	
+	/**
+	 * Opens the cache of the database on the path, making it available to the
+	 * handlers of this database. The cache is built from the database when the file
+	 * doesn't exist or was made from a different version of the database.
+	 * 
+	 * @param dbPath Database path
+	 * @return FeatureCache
+	 * @throws IOException
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	public static synchronized FeatureCache load(String dbPath) throws IOException, SQLException, ClassNotFoundException {
+		FeatureCache cache = caches.get(dbPath);
+		if (cache == null) {
+			File cacheFile = new File(dbPath + FILE_SUFFIX);
+			long [] fingerprint = fingerprint(new File(dbPath));
+			cache = map(cacheFile, fingerprint);
+			if (cache == null)
+				cache = write(dbPath, cacheFile, fingerprint);
+			if (cache == null)
+				throw new IllegalStateException("Can't write the cache " + cacheFile + ".");
+			caches.put(dbPath, cache);
+			MetadataCatalog.register(dbPath, cache.catalog);
+		}
+		return cache;
+	}
+	
+	/**
+	 * Gets the cache opened for the database on the path.
+	 * 
+	 * @param dbPath Database path
+	 * @return FeatureCache or null when the cache wasn't opened
+	 */
+	public static synchronized FeatureCache getLoaded(String dbPath) {
+		return caches.get(dbPath);
+	}
+	
+	/**
+	 * Length and CRC32 of the database file.
+	 */
+	private static long [] fingerprint(File db) throws IOException {
+		CRC32 crc = new CRC32();
+		FileInputStream in = new FileInputStream(db);
+		try {
+			byte [] chunk = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(chunk)) > 0) {
+				crc.update(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return new long[] {db.length(), crc.getValue()};
+	}
+	
+	/**
+	 * Builds the input vectors of all the users and patterns from the database
+	 * and writes them on the cache file.
+	 * 
+	 * Many processes may build the cache at the same time. Each one writes its own
+	 * temporary file and renames it to the cache file, so the cache file is always
+	 * complete. The process that loses the rename maps the cache of the winner.
+	 * 
+	 * @return FeatureCache mapped from the cache file, null when it can't be written
+	 */
+	private static FeatureCache write(String dbPath, File cacheFile, long [] fingerprint) throws IOException, SQLException, ClassNotFoundException {
+		FeatureStore store = FeatureStore.load(dbPath);
+		int [] userIds = store.getUserIds();
+		int [] patternIds = store.getPatternIds();
+		
+		// Only the users and patterns with attempts
+		int numBlocks = 0, numRows = 0;
+		long numFeatures = 0;
+		for (int u = 0; u < userIds.length; u++) {
+			for (int p = 0; p < patternIds.length; p++) {
+				int count = store.countAttempts(userIds[u], patternIds[p]);
+				if (count > 0) {
+					numBlocks++;
+					numRows += count;
+					numFeatures += (long) count * FeaturePipeline.DEFAULT.getInputSize(store.countDots(userIds[u], patternIds[p]));
+				}
+			}
+		}
+		
+		long size = HEADER_SIZE + (long) numBlocks * BLOCK_ENTRY_SIZE + numRows * 8L + numFeatures * 8;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("Features of " + dbPath + " don't fit on a single cache file.");
+		
+		File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+		TrainingSetHandler handler = new TrainingSetHandler(dbPath, FeaturePipeline.DEFAULT);
+		boolean written = false;
+		try {
+			file.setLength(size);
+			MappedByteBuffer out = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(MAGIC).putInt(VERSION).putLong(fingerprint[0]).putLong(fingerprint[1]);
+			out.putInt(numBlocks).putInt(numRows);
+			
+			int rowsPosition = HEADER_SIZE + numBlocks * BLOCK_ENTRY_SIZE;
+			int featuresPosition = rowsPosition + numRows * 8;
+			for (int u = 0; u < userIds.length; u++) {
+				for (int p = 0; p < patternIds.length; p++) {
+					int [] attempts = store.getAttempts(userIds[u], patternIds[p]);
+					if (attempts.length == 0)
+						continue;
+					
+					MLDataSet dataset = handler.getReplicatorSamples(userIds[u], patternIds[p]);
+					int inputs = dataset.getInputSize();
+					out.putInt(userIds[u]).putInt(patternIds[p]).putInt(attempts.length).putInt(inputs);
+					for (int i = 0; i < attempts.length; i++) {
+						out.putInt(rowsPosition, store.getAttemptId(attempts[i]));
+						out.putInt(rowsPosition + 4, userIds[u]);
+						rowsPosition += 8;
+						
+						double [] input = dataset.get(i).getInputArray();
+						for (int j = 0; j < inputs; j++) {
+							out.putDouble(featuresPosition, input[j]);
+							featuresPosition += 8;
+						}
+					}
+				}
+			}
+			out.force();
+			written = true;
+		} finally {
+			handler.closeConnection();
+			file.close();
+			if (!written)
+				tmpFile.delete();
+		}
+		
+		if (!tmpFile.renameTo(cacheFile)) {
+			// The rename doesn't replace the file on some systems, the outdated
+			// cache is deleted unless another process already wrote the current one
+			FeatureCache cache = map(cacheFile, fingerprint);
+			if (cache != null) {
+				tmpFile.delete();
+				return cache;
+			}
+			cacheFile.delete();
+			if (!tmpFile.renameTo(cacheFile))
+				tmpFile.delete();
+		}
+		return map(cacheFile, fingerprint);
+	}
+	
+	/**
+	 * Maps the cache file, checking if it was built from the same database.
+	 * 
+	 * @return FeatureCache or null when the file is missing or outdated
+	 */
+	private static FeatureCache map(File cacheFile, long [] fingerprint) throws IOException {
+		if (!cacheFile.exists() || cacheFile.length() < HEADER_SIZE)
+			return null;
+		
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+		MappedByteBuffer buffer;
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close(); // The mapping stays valid
+		}
+		
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+				|| buffer.getLong() != fingerprint[0] || buffer.getLong() != fingerprint[1])
+			return null;
+		
+		FeatureCache cache = new FeatureCache();
+		cache.buffer = buffer;
+		cache.readIndexes(buffer.getInt(), buffer.getInt());
+		return cache;
+	}
+	
+	private void readIndexes(int numBlocks, int numRows) {
+		rowAttemptIds = new int[numRows];
+		rowUsers = new int[numRows];
+		rowPatterns = new int[numRows];
+		rowPositions = new int[numRows];
+		blocks = new HashMap<Long, int[]>();
+		attemptRows = new HashMap<Integer, Integer>();
+		catalog = new MetadataCatalog();
+		
+		int rowsPosition = HEADER_SIZE + numBlocks * BLOCK_ENTRY_SIZE;
+		int featuresPosition = rowsPosition + numRows * 8;
+		int row = 0;
+		for (int b = 0; b < numBlocks; b++) {
+			int user = buffer.getInt(), pattern = buffer.getInt();
+			int rows = buffer.getInt(), inputs = buffer.getInt();
+			blocks.put(key(user, pattern), new int[] {row, rows, inputs});
+			catalog.add(user, pattern, (inputs + 1) / 3, rows);
+			
+			for (int i = 0; i < rows; i++, row++) {
+				rowAttemptIds[row] = buffer.getInt(rowsPosition);
+				rowUsers[row] = buffer.getInt(rowsPosition + 4);
+				rowPatterns[row] = pattern;
+				attemptRows.put(rowAttemptIds[row], row);
+				rowPositions[row] = featuresPosition;
+				rowsPosition += 8;
+				featuresPosition += inputs * 8;
+			}
+		}
+		
+		impostorSampler = new ImpostorSampler(rowAttemptIds, rowUsers, rowPatterns);
+	}
+	
+	private static long key(int userId, int patternId) {
+		return ((long) userId << 32) | (patternId & 0xffffffffL);
+	}
+	
+	private int [] getBlock(int userId, int patternId) {
+		int [] block = blocks.get(key(userId, patternId));
+		if (block == null)
+			throw new IllegalStateException("User " + userId + " has no attempts with pattern " + patternId + ".");
+		return block;
+	}
+	
+	/**
+	 * Counts the attempts of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of attempts
+	 */
+	public int countAttempts(int userId, int patternId) {
+		int [] block = blocks.get(key(userId, patternId));
+		return block != null ? block[1] : 0;
+	}
+	
+	/**
+	 * Gets the number of inputs of the vectors of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return Number of inputs
+	 */
+	public int getInputSize(int userId, int patternId) {
+		return getBlock(userId, patternId)[2];
+	}
+	
+	/**
+	 * Gets the input vectors of all the attempts of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return 2 dimensions double matrix
+	 */
+	public double[][] getInputs(int userId, int patternId) {
+		return getPositiveInputs(userId, patternId, countAttempts(userId, patternId));
+	}
+	
+	/**
+	 * Gets the input vectors of the first attempts of the user with the pattern.
+	 * The matrix has maxAttempts rows, the rows without attempt are left with zeros.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxAttempts Max attempts
+	 * @return 2 dimensions double matrix
+	 */
+	public double[][] getPositiveInputs(int userId, int patternId, int maxAttempts) {
+		int [] block = getBlock(userId, patternId);
+		double [][] inputs = new double[maxAttempts][block[2]];
+		int rows = Math.min(maxAttempts, block[1]);
+		for (int i = 0; i < rows; i++) {
+			readRow(block[0] + i, inputs[i]);
+		}
+		return inputs;
+	}
+	
+	/**
+	 * Gets the input vectors of random attempts with the pattern from the other users
+	 * (excluding the administrator), ordered by attempt id. The attempts are drawn
+	 * by the ImpostorSampler, the same used on the database.
+	 * The matrix has maxAttempts rows, the rows without attempt are left with zeros.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param maxAttempts Max attempts
+	 * @return 2 dimensions double matrix
+	 */
+	public double[][] getNegativeRandomInputs(int userId, int patternId, int maxAttempts) {
+		int numInputs = getInputSize(userId, patternId);
+		int [] ids = impostorSampler.sample(userId, patternId, maxAttempts);
+		
+		double [][] inputs = new double[maxAttempts][numInputs];
+		for (int i = 0; i < ids.length; i++) {
+			readRow(attemptRows.get(ids[i]), inputs[i]);
+		}
+		return inputs;
+	}
+	
+	private void readRow(int row, double [] input) {
+		int position = rowPositions[row];
+		for (int j = 0; j < input.length; j++) {
+			input[j] = buffer.getDouble(position + j * 8);
+		}
+	}
+}
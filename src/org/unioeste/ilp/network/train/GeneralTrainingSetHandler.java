@@ -22,9 +22,14 @@ package org.unioeste.ilp.network.train;
 import java.sql.SQLException;
 
 import org.unioeste.ilp.network.daos.AttemptDao;
+import org.unioeste.ilp.network.daos.DaoRegistry;
 import org.unioeste.ilp.network.daos.ExperienceDao;
 import org.unioeste.ilp.network.daos.SampleDao;
-import org.unioeste.ilp.network.db.SQLiteConnectionSource;
+import org.unioeste.ilp.network.db.FeatureStore;
+import org.unioeste.ilp.network.db.MetadataCatalog;
+import org.unioeste.ilp.network.db.SQLiteConnectionManager;
+
+import com.j256.ormlite.support.ConnectionSource;
 
 /**
  * Abstract class responsible for encapsulate training
@@ -32,39 +37,88 @@ import org.unioeste.ilp.network.db.SQLiteConnectionSource;
  * 
  * Just creates all the DAOs needed and initialize 
  * connection with the database.
+ * The DAOs are taken from the registry of the leased connection.
+ * 
+ * When a FeatureCache or a FeatureStore is loaded for the database,
+ * the handler reads from them and no connection is leased. A handler that
+ * needs the samples themselves loads the FeatureStore instead of the cache.
  * 
  * @author Lucas Andr de Alencar
  *
  */
 public abstract class GeneralTrainingSetHandler {
 
-	private SQLiteConnectionSource connection;
+	private SQLiteConnectionManager connectionManager;
+	private ConnectionSource connection;
+	private DaoRegistry daoRegistry;
 	
 	protected ExperienceDao experienceDao;
 	protected AttemptDao attemptDao;
 	protected SampleDao sampleDao;
 	
+	protected FeatureCache featureCache;
+	protected FeatureStore featureStore;
+	protected MetadataCatalog catalog;
+	
 	public GeneralTrainingSetHandler(String dbPath) throws SQLException, ClassNotFoundException {
-		connection = new SQLiteConnectionSource(dbPath);
+		this(dbPath, false);
+	}
+	
+	/**
+	 * Creates the handler, loading the FeatureStore of the database when the
+	 * samples are needed, instead of the vectors of the FeatureCache.
+	 * 
+	 * @param dbPath Database path
+	 * @param needsSamples Loads the FeatureStore
+	 * @throws SQLException
+	 * @throws ClassNotFoundException
+	 */
+	protected GeneralTrainingSetHandler(String dbPath, boolean needsSamples) throws SQLException, ClassNotFoundException {
+		if (needsSamples)
+			featureStore = FeatureStore.load(dbPath);
+		else
+			featureCache = FeatureCache.getLoaded(dbPath);
+		if (featureCache == null && featureStore == null)
+			featureStore = FeatureStore.getLoaded(dbPath);
+		if (featureCache == null && featureStore == null) {
+			connectionManager = SQLiteConnectionManager.getInstance(dbPath);
+			connection = connectionManager.lease();
+			daoRegistry = connectionManager.getDaoRegistry(connection);
+			catalog = MetadataCatalog.getInstance(dbPath, connection);
+		} else {
+			catalog = MetadataCatalog.getInstance(dbPath);
+		}
 	}
 	
 	protected void createExperienceDao() throws SQLException {
 		if (experienceDao == null)
-			experienceDao = new ExperienceDao(connection.getConnectionSource());
+			experienceDao = daoRegistry.getExperienceDao();
 	}
 	
 	protected void createAttemptDao() throws SQLException {
 		if (attemptDao == null)
-			attemptDao = new AttemptDao(connection.getConnectionSource());
+			attemptDao = daoRegistry.getAttemptDao();
 	}
 	
 	protected void createSampleDao() throws SQLException {
 		if (sampleDao == null)
-			sampleDao = new SampleDao(connection.getConnectionSource());
+			sampleDao = daoRegistry.getSampleDao();
 	}
 	
+	/**
+	 * Releases the connection back to the connection manager.
+	 * The handler can't be used after its connection is released,
+	 * closing it again does nothing.
+	 * 
+	 * @throws SQLException
+	 */
 	public void closeConnection() throws SQLException {
-		connection.closeConnection();
+		if (connection != null) {
+			ConnectionSource released = connection;
+			connection = null;
+			daoRegistry = null;
+			connectionManager.release(released);
+		}
 	}
 	
 }
@@ -0,0 +1,134 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import java.util.Arrays;
+
+import org.unioeste.ilp.network.daos.SampleSink;
+
+/**
+ * Builds the input matrix while the samples are read, writing each sample
+ * straight into its row.
+ * 
+ * A new row starts whenever the attempt of the sample changes. Each row has the
+ * pressure and pressure area of the dots with the time between consecutive
+ * dots, the first dot has no time.
+ * 
+ * When the number of examples is known the rows are preallocated and the
+ * attempts that don't come are left as rows of zeros. On the growth mode
+ * the rows are created as the attempts come and the matrix grows by half
+ * of its size when it's full, then it's trimmed to the attempts read.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class InputMatrixBuilder implements SampleSink {
+
+	// Values of each dot: time, pressure and pressure area
+	private static final int NUMBER_OF_CHARACT = 3;
+	private static final int INITIAL_ROWS = 16;
+	
+	private double [][] rows;
+	private int numberOfInputs;
+	private boolean growth;
+	
+	private int numRows = 0;
+	private int attemptId;
+	private int column;
+	private double lastEventTime;
+	
+	/**
+	 * Creates the builder with the rows preallocated.
+	 * 
+	 * @param numberOfExamples Number of examples
+	 * @param numDots Number of dots on each attempt
+	 */
+	public InputMatrixBuilder(int numberOfExamples, int numDots) {
+		numberOfInputs = numDots * NUMBER_OF_CHARACT - 1;
+		rows = new double[numberOfExamples][numberOfInputs];
+	}
+	
+	private InputMatrixBuilder(int numDots) {
+		numberOfInputs = numDots * NUMBER_OF_CHARACT - 1;
+		rows = new double[INITIAL_ROWS][];
+		growth = true;
+	}
+	
+	/**
+	 * Creates the builder on the growth mode, used when the number of examples
+	 * isn't known before the samples are read.
+	 * 
+	 * @param numDots Number of dots on each attempt
+	 * @return InputMatrixBuilder
+	 */
+	public static InputMatrixBuilder growing(int numDots) {
+		return new InputMatrixBuilder(numDots);
+	}
+	
+	public void sample(int attemptId, double eventTime, double pressure, double pressureArea) {
+		if (numRows == 0 || attemptId != this.attemptId)
+			nextRow(attemptId);
+		
+		if (column + (column != 0 ? NUMBER_OF_CHARACT : NUMBER_OF_CHARACT - 1) > numberOfInputs)
+			throw new IllegalStateException("Attempt " + attemptId + " has more samples than the " + (numberOfInputs + 1) / NUMBER_OF_CHARACT + " dots of the pattern.");
+		
+		double [] row = rows[numRows - 1];
+		if (column != 0)
+			row[column++] = eventTime - lastEventTime;
+		
+		row[column++] = pressure;
+		row[column++] = pressureArea;
+		
+		lastEventTime = eventTime;
+	}
+	
+	private void nextRow(int attemptId) {
+		if (numRows == rows.length) {
+			if (!growth)
+				throw new IllegalStateException("More attempts than the " + rows.length + " examples preallocated.");
+			rows = Arrays.copyOf(rows, rows.length + (rows.length >> 1) + 1);
+		}
+		if (growth)
+			rows[numRows] = new double[numberOfInputs];
+		
+		numRows++;
+		this.attemptId = attemptId;
+		column = 0;
+	}
+	
+	/**
+	 * Gets the number of attempts read.
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+	
+	/**
+	 * Gets the input matrix. On the growth mode it has one row
+	 * for each attempt read.
+	 * 
+	 * @return 2 dimensions double matrix
+	 */
+	public double [][] getInputs() {
+		if (growth && rows.length != numRows)
+			rows = Arrays.copyOf(rows, numRows);
+		return rows;
+	}
+}
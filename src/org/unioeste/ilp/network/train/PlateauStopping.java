@@ -0,0 +1,78 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import org.encog.ml.data.MLDataSet;
+import org.unioeste.ilp.network.AbstractNeuralNetwork;
+
+/**
+ * Stops the training when the training error improves less than a fraction
+ * of itself over a window of epochs.
+ * 
+ * The errors of the last epochs are kept on a ring, no memory is
+ * allocated by the epochs.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class PlateauStopping implements StoppingPolicy {
+
+	public static final String REASON = "plateau";
+	
+	private int window;
+	private double minImprovement;
+	
+	/**
+	 * Creates the policy.
+	 * 
+	 * @param window Number of epochs compared
+	 * @param minImprovement Min relative improvement of the error over the window, like 0.01
+	 */
+	public PlateauStopping(int window, double minImprovement) {
+		if (window < 1)
+			throw new IllegalStateException("The window must have at least one epoch, got " + window + ".");
+		this.window = window;
+		this.minImprovement = minImprovement;
+	}
+	
+	public Monitor start(AbstractNeuralNetwork network, MLDataSet validationSet) {
+		final double [] errors = new double[window];
+		return new Monitor() {
+			public String check(int epoch, double error) {
+				int index = epoch % window;
+				// Error of the epoch before the window
+				double previous = errors[index];
+				errors[index] = error;
+				if (epoch > window && previous - error < minImprovement * previous)
+					return REASON;
+				return null;
+			}
+			
+			public boolean finish(String reason) {
+				return false;
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return REASON + " (" + window + " epochs, " + minImprovement + ")";
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import org.encog.ml.data.MLDataSet;
+import org.unioeste.ilp.network.AbstractNeuralNetwork;
+
+/**
+ * Policy that stops the training of a network before its max error
+ * or max iterations.
+ * 
+ * The policy only holds its configuration, it's shared by the networks
+ * trained at the same time. Each training gets its own Monitor.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public interface StoppingPolicy {
+
+	/**
+	 * Starts monitoring the training of the network.
+	 * 
+	 * @param network Network being trained
+	 * @param validationSet Rows held out of the training set, null when there's none
+	 * @return Monitor of the training
+	 */
+	Monitor start(AbstractNeuralNetwork network, MLDataSet validationSet);
+	
+	/**
+	 * State of the policy on the training of a network.
+	 */
+	interface Monitor {
+		
+		/**
+		 * Checks the training after an epoch.
+		 * 
+		 * @param epoch Epochs trained, from 1
+		 * @param error Training error of the epoch
+		 * @return Reason to stop the training, null to continue
+		 */
+		String check(int epoch, double error);
+		
+		/**
+		 * Called when the training stops, by any reason.
+		 * 
+		 * @param reason Reason the training stopped
+		 * @return True when the weights of the network were changed
+		 */
+		boolean finish(String reason);
+	}
+}
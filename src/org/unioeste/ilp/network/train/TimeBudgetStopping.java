@@ -0,0 +1,65 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import org.encog.ml.data.MLDataSet;
+import org.unioeste.ilp.network.AbstractNeuralNetwork;
+
+/**
+ * Stops the training of each network after a wall clock budget.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class TimeBudgetStopping implements StoppingPolicy {
+
+	public static final String REASON = "time budget";
+	
+	private long budgetMillis;
+	
+	/**
+	 * Creates the policy.
+	 * 
+	 * @param budgetMillis Time of the training of each network
+	 */
+	public TimeBudgetStopping(long budgetMillis) {
+		if (budgetMillis <= 0)
+			throw new IllegalStateException("The time budget must be greater than 0, got " + budgetMillis + ".");
+		this.budgetMillis = budgetMillis;
+	}
+	
+	public Monitor start(AbstractNeuralNetwork network, MLDataSet validationSet) {
+		final long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		return new Monitor() {
+			public String check(int epoch, double error) {
+				return System.nanoTime() - deadline >= 0 ? REASON : null;
+			}
+			
+			public boolean finish(String reason) {
+				return false;
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return REASON + " (" + budgetMillis + " ms)";
+	}
+}
@@ -20,9 +20,10 @@
 package org.unioeste.ilp.network.train;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
+import org.encog.ml.data.MLDataSet;
 import org.encog.ml.train.MLTrain;
 import org.unioeste.ilp.network.AbstractNeuralNetwork;
 
@@ -37,6 +38,9 @@ import org.unioeste.ilp.network.AbstractNeuralNetwork;
  */
 public class Trainer {
 
+	public static final String MAX_ERROR = "max error";
+	public static final String MAX_ITERATIONS = "max iterations";
+	
 	/**
 	 * Performs the training until reach the max error determined.
 	 * 
@@ -65,37 +69,73 @@ public class Trainer {
 	 * @return List of iterations
 	 */
 	public static List<String> train(AbstractNeuralNetwork network) {
+		ErrorLog log = new ErrorLog();
+		train(network, log, null, Collections.<StoppingPolicy>emptyList());
+		return log.toLines();
+	}
+	
+	/**
+	 * Performs the network's training iterations.
+	 * The training continues until it reach the max error or the max number
+	 * of iterations set on the network, or until one of the policies stops it.
+	 * 
+	 * @param network AbstractNeuralNetwork
+	 * @param log Log where the errors of the iterations are added
+	 * @param validationSet Rows held out of the training set, null when there's none
+	 * @param policies Stopping policies, checked after each iteration
+	 * @return Why and when the training stopped
+	 */
+	public static TrainingStop train(AbstractNeuralNetwork network, ErrorLog log,
+			MLDataSet validationSet, List<StoppingPolicy> policies) {
 		MLTrain training = network.getTrainStrategy();
-		List<String> output = new ArrayList<String>();
-		double error = 0;
-		int epoch = 1;
-		do {
+		List<StoppingPolicy.Monitor> monitors = new ArrayList<StoppingPolicy.Monitor>();
+		for (StoppingPolicy policy : policies) {
+			monitors.add(policy.start(network, validationSet));
+		}
+		
+		String reason = null;
+		int epoch = 0;
+		while (reason == null) {
 			training.iteration();
-			error = training.getError();
-			output.add(epoch + "\t" + String.format(Locale.US, "%.20f", error));
-//			System.out.println("Iteration #" + epoch + " Error = " + training.getError());
 			epoch++;
-		} while (continueIterations(network, training.getError(), epoch));
+			double error = training.getError();
+			log.add(epoch, error);
+//			System.out.println("Iteration #" + epoch + " Error = " + training.getError());
+			reason = stopReason(network, error, epoch);
+			for (int m = 0; reason == null && m < monitors.size(); m++) {
+				reason = monitors.get(m).check(epoch, error);
+			}
+		}
+		log.finish();
+		boolean weightsChanged = false;
+		for (StoppingPolicy.Monitor monitor : monitors) {
+			weightsChanged |= monitor.finish(reason);
+		}
+		// The error of the last epoch is from the weights replaced by the policy,
+		// the train error (the threshold of the tests) is taken from the weights kept
+		if (weightsChanged)
+			training.setError(network.getNetwork().calculateError(training.getTraining()));
 		network.updateTrainError();
-		System.out.println("Ended training: Iteration #" + --epoch + " Error = " + training.getError());
+		System.out.println("Ended training: Iteration #" + epoch + " Error = " + training.getError() + " (" + reason + ")");
 		
 		training.finishTraining();
-		return output;
+		return new TrainingStop(reason, epoch, network.getMaxIterations());
 	}
 	
 	/**
-	 * Determines if the training may continue.
+	 * Determines if the training must stop.
 	 * Checks the network permited max training error and max number of iteraitions. 
 	 * 
 	 * @param network AbstractNeuralNetwork
 	 * @param error Current training error
-	 * @param iteration Current iteration
-	 * @return May continue?
+	 * @param epoch Epochs trained
+	 * @return Reason to stop, null when the training may continue
 	 */
-	private static boolean continueIterations(AbstractNeuralNetwork network, double error, int iteration) {
-		if (network.getMaxIterations() > 0 && iteration > 0)
-			return network.getMaxIterations() >= iteration && network.getMaxError() < error;
-		else
-			return network.getMaxError() < error;
+	private static String stopReason(AbstractNeuralNetwork network, double error, int epoch) {
+		if (network.getMaxError() >= error)
+			return MAX_ERROR;
+		if (network.getMaxIterations() > 0 && epoch >= network.getMaxIterations())
+			return MAX_ITERATIONS;
+		return null;
 	}
 }
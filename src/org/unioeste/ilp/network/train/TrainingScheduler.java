@@ -0,0 +1,273 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.train.MLTrain;
+import org.encog.neural.networks.ContainsFlat;
+import org.encog.neural.networks.training.propagation.Propagation;
+import org.unioeste.ilp.network.AbstractNeuralNetwork;
+
+/**
+ * Shares the threads between the propagation workers of each network and
+ * the networks trained at the same time.
+ * 
+ * The work of an iteration is the number of training rows times the number of
+ * weights of the network. Each propagation thread of Encog synchronizes on every
+ * iteration, so a network only gets one thread for each MIN_WORK_PER_THREAD of
+ * work, the other threads train other networks. The networks of a user, with a
+ * few dozens of training rows, are trained by one thread each, many at a time.
+ * A network with a large training set gets all the threads.
+ * 
+ * The networks trained by the scheduler are counted to report the throughput.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class TrainingScheduler {
+
+	// Rows times weights on each propagation thread, about 0.7ms of backpropagation,
+	// the synchronization of the threads costs about 50us on each iteration
+	public static final long MIN_WORK_PER_THREAD = 1 << 17;
+	
+	private int numThreads;
+	private ExecutorService executor;
+	
+	private AtomicInteger networks = new AtomicInteger();
+	// Time of the trainings, from the first start to the last end
+	private long firstStart = -1;
+	private long lastEnd;
+	
+	public TrainingScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates the scheduler with the threads shared by the trainings.
+	 * 
+	 * @param numThreads Number of threads
+	 */
+	public TrainingScheduler(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalStateException("The scheduler needs at least one thread, got " + numThreads + ".");
+		this.numThreads = numThreads;
+	}
+	
+	public int getNumThreads() {
+		return numThreads;
+	}
+	
+	/**
+	 * Gets the work of an iteration of the network on the training set.
+	 * 
+	 * @param trainingSet Training set
+	 * @param weights Number of weights of the network
+	 * @return Rows times weights
+	 */
+	public static long work(MLDataSet trainingSet, int weights) {
+		return trainingSet.getRecordCount() * weights;
+	}
+	
+	/**
+	 * Gets the number of propagation threads of a network with the work.
+	 */
+	public int getPropagationThreads(long work) {
+		return (int) Math.max(1, Math.min(numThreads, work / MIN_WORK_PER_THREAD));
+	}
+	
+	/**
+	 * Gets the number of networks with the work trained at the same time.
+	 */
+	public int getParallelNetworks(long work) {
+		return Math.max(1, numThreads / getPropagationThreads(work));
+	}
+	
+	/**
+	 * Sets the number of threads of the training, when it's a propagation.
+	 * 
+	 * @param training Training
+	 */
+	public void configure(MLTrain training) {
+		if (training instanceof Propagation) {
+			Propagation propagation = (Propagation) training;
+			int weights = ((ContainsFlat) propagation.getMethod()).getFlat().getWeights().length;
+			propagation.setThreadCount(getPropagationThreads(work(propagation.getTraining(), weights)));
+		}
+	}
+	
+	/**
+	 * Trains the network with its training strategy, configured by the
+	 * scheduler, and counts it on the throughput. Only the first and the
+	 * last errors of the training are logged.
+	 * 
+	 * @param network AbstractNeuralNetwork
+	 * @return Why and when the training stopped
+	 */
+	public TrainingStop train(AbstractNeuralNetwork network) {
+		return train(network, new ErrorLog(0, 0), null, Collections.<StoppingPolicy>emptyList());
+	}
+	
+	/**
+	 * Same as train, stopping the training with the policies.
+	 * 
+	 * @param network AbstractNeuralNetwork
+	 * @param log Log where the errors of the iterations are added
+	 * @param validationSet Rows held out of the training set, null when there's none
+	 * @param policies Stopping policies
+	 * @return Why and when the training stopped
+	 * @see Trainer#train(AbstractNeuralNetwork, ErrorLog, MLDataSet, List)
+	 */
+	public TrainingStop train(AbstractNeuralNetwork network, ErrorLog log, MLDataSet validationSet, List<StoppingPolicy> policies) {
+		configure(network.getTrainStrategy());
+		started();
+		try {
+			return Trainer.train(network, log, validationSet, policies);
+		} finally {
+			finished();
+		}
+	}
+	
+	private synchronized void started() {
+		if (firstStart < 0)
+			firstStart = System.nanoTime();
+	}
+	
+	private synchronized void finished() {
+		networks.incrementAndGet();
+		lastEnd = System.nanoTime();
+	}
+	
+	/**
+	 * Runs the tasks, each one training networks with the work, with as many
+	 * tasks at the same time as getParallelNetworks. The tasks run on the
+	 * calling thread when only one is run at a time.
+	 * 
+	 * @param work Work of the networks of the tasks
+	 * @param tasks Tasks
+	 * @return Results of the tasks, on the same order
+	 */
+	public <T> List<T> invokeAll(long work, List<? extends Callable<T>> tasks) {
+		int parallel = Math.min(getParallelNetworks(work), tasks.size());
+		List<T> results = new ArrayList<T>();
+		if (parallel <= 1) {
+			for (int t = 0; t < tasks.size(); t++) {
+				try {
+					results.add(tasks.get(t).call());
+				} catch (Exception e) {
+					throw new IllegalStateException("Task " + t + " failed.", e);
+				}
+			}
+			return results;
+		}
+		
+		// The first tasks are run on the first threads, each one takes the next task when it ends
+		final List<? extends Callable<T>> queue = tasks;
+		final AtomicInteger next = new AtomicInteger();
+		final Object [] values = new Object[tasks.size()];
+		List<Future<Void>> slots = new ArrayList<Future<Void>>();
+		ExecutorService executor = getExecutor();
+		for (int s = 0; s < parallel; s++) {
+			slots.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for (int t = next.getAndIncrement(); t < queue.size(); t = next.getAndIncrement()) {
+						values[t] = queue.get(t).call();
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> slot : slots) {
+			try {
+				slot.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting the trainings.", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Training task failed.", e.getCause());
+			}
+		}
+		for (int t = 0; t < values.length; t++) {
+			@SuppressWarnings("unchecked")
+			T value = (T) values[t];
+			results.add(value);
+		}
+		return results;
+	}
+	
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				private int count = 0;
+				
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "training-" + count++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	public int getNetworks() {
+		return networks.get();
+	}
+	
+	/**
+	 * Gets the networks trained per hour, from the start of the
+	 * first training to the end of the last one.
+	 */
+	public synchronized double getNetworksPerHour() {
+		if (networks.get() == 0 || lastEnd <= firstStart)
+			return 0;
+		return networks.get() * 3600e9 / (lastEnd - firstStart);
+	}
+	
+	/**
+	 * Describes the throughput of the trainings.
+	 */
+	public synchronized String report() {
+		double seconds = networks.get() == 0 ? 0 : (lastEnd - firstStart) / 1e9;
+		return String.format(Locale.US, "%d redes treinadas em %.1f s com %d threads: %.1f redes por hora",
+				networks.get(), seconds, numThreads, getNetworksPerHour());
+	}
+	
+	/**
+	 * Stops the threads of the scheduler.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+}
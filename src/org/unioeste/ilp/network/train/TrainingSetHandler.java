@@ -19,30 +19,62 @@
 
 package org.unioeste.ilp.network.train;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Iterator;
 import java.util.List;
 
+import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
 import org.encog.ml.data.basic.BasicMLDataSet;
+import org.unioeste.ilp.network.datasets.MappedDataSetWriter;
+import org.unioeste.ilp.network.features.FeaturePipeline;
 import org.unioeste.ilp.network.models.Attempt;
-import org.unioeste.ilp.network.models.Sample;
+import org.unioeste.ilp.network.util.DataSetHelper;
 
 /**
  * Handles with some operations with the Training set.
  * 
  * Converts the dataset on strutures used on Encog.
  * 
+ * The inputs are built by the FeaturePipeline of the handler. The FeatureCache
+ * and the database only build the default set, the other sets are built from
+ * the samples of the FeatureStore, which is loaded for them.
+ * 
  * @author Lucas Andr de Alencar
  *
  */
 public class TrainingSetHandler extends GeneralTrainingSetHandler {
 
-	// Number of Characteristics
-	private static final int NUMBER_OF_CHARACT = 3;
+	private static FeaturePipeline defaultFeatures = FeaturePipeline.DEFAULT;
+	
+	private FeaturePipeline features;
+	
+	/**
+	 * Sets the feature set of the handlers created without one.
+	 * 
+	 * @param features FeaturePipeline
+	 */
+	public static synchronized void setDefaultFeatures(FeaturePipeline features) {
+		defaultFeatures = features;
+	}
+	
+	public static synchronized FeaturePipeline getDefaultFeatures() {
+		return defaultFeatures;
+	}
 	
 	public TrainingSetHandler(String dbPath) throws ClassNotFoundException, SQLException {
-		super(dbPath);
+		this(dbPath, getDefaultFeatures());
+	}
+	
+	public TrainingSetHandler(String dbPath, FeaturePipeline features) throws ClassNotFoundException, SQLException {
+		super(dbPath, features != FeaturePipeline.DEFAULT);
+		this.features = features;
+	}
+	
+	public FeaturePipeline getFeatures() {
+		return features;
 	}
 	
 	/**
@@ -55,15 +87,24 @@ public class TrainingSetHandler extends GeneralTrainingSetHandler {
 	 * @throws SQLException
 	 */
 	public MLDataSet getSamples(int userId, int patternId) throws SQLException {
+		if (featureCache != null) {
+			double [][] inputs = featureCache.getInputs(userId, patternId);
+			return new BasicMLDataSet(inputs, constructIdealMatrix(inputs.length, 1, 1));
+		}
+		
+		if (featureStore != null) {
+			int [] attempts = featureStore.getAttempts(userId, patternId);
+			double [][] inputs = loadInputMatrix(attempts, attempts.length, catalog.getNumDots(userId, patternId));
+			return new BasicMLDataSet(inputs, constructIdealMatrix(attempts.length, 1, 1));
+		}
+		
 		createSampleDao();
 		createAttemptDao();
 		
-		int numDots = sampleDao.count(userId, patternId);
-		int numAttempts = attemptDao.count(userId, patternId);
-		List<Sample> samples = sampleDao.getUserSamples(userId, patternId);
+		int numDots = catalog.getNumDots(userId, patternId);
 		
-		double [][] inputs = constructInputMatrix(samples, numAttempts, numDots * NUMBER_OF_CHARACT);
-		double [][] ideals = constructIdealMatrix(numAttempts, 1, 1);
+		double [][] inputs = loadUserInputMatrix(userId, patternId, numDots);
+		double [][] ideals = constructIdealMatrix(inputs.length, 1, 1);
 		
 		return new BasicMLDataSet(inputs, ideals);
 	}
@@ -80,16 +121,25 @@ public class TrainingSetHandler extends GeneralTrainingSetHandler {
 	 * @throws SQLException
 	 */
 	public MLDataSet getReplicatorSamples(int userId, int patternId) throws SQLException {
+		if (featureCache != null) {
+			double [][] inputs = featureCache.getInputs(userId, patternId);
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
+		if (featureStore != null) {
+			int [] attempts = featureStore.getAttempts(userId, patternId);
+			double [][] inputs = loadInputMatrix(attempts, attempts.length, catalog.getNumDots(userId, patternId));
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
 		createSampleDao();
 		createAttemptDao();
 		
-		int numDots = sampleDao.count(userId, patternId);
-		int numAttempts = attemptDao.count(userId, patternId);
-		List<Sample> samples = sampleDao.getUserSamples(userId, patternId);
+		int numDots = catalog.getNumDots(userId, patternId);
 		
-		double [][] inputs = constructInputMatrix(samples, numAttempts, numDots * NUMBER_OF_CHARACT);
+		double [][] inputs = loadUserInputMatrix(userId, patternId, numDots);
 		
-		return new BasicMLDataSet(inputs, inputs);
+		return DataSetHelper.createReplicatorDataSet(inputs);
 	}
 	
 	/**
@@ -107,15 +157,25 @@ public class TrainingSetHandler extends GeneralTrainingSetHandler {
 	 * @throws SQLException
 	 */
 	public MLDataSet getReplicatorSamples(int userId, int patternId, int maxAttempts) throws SQLException {
+		if (featureCache != null) {
+			double [][] inputs = featureCache.getPositiveInputs(userId, patternId, maxAttempts);
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
+		if (featureStore != null) {
+			int [] attempts = featureStore.getPositiveAttempts(userId, patternId, maxAttempts);
+			double [][] inputs = loadInputMatrix(attempts, maxAttempts, catalog.getNumDots(userId, patternId));
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
 		createSampleDao();
 		createAttemptDao();
 		
-		int numDots = sampleDao.count(userId, patternId);
+		int numDots = catalog.getNumDots(userId, patternId);
 		List<Attempt> attempts = attemptDao.getPositiveAttempts(userId, patternId, maxAttempts);
-		List<Sample> samples = sampleDao.getSamplesFromAttempts(attempts);
 		
-		double [][] inputs = constructInputMatrix(samples, maxAttempts, numDots * NUMBER_OF_CHARACT);
-		return new BasicMLDataSet(inputs, inputs);
+		double [][] inputs = loadInputMatrix(attempts, maxAttempts, numDots);
+		return DataSetHelper.createReplicatorDataSet(inputs);
 	}
 	
 	/**
@@ -133,15 +193,25 @@ public class TrainingSetHandler extends GeneralTrainingSetHandler {
 	 * @throws SQLException
 	 */
 	public MLDataSet getNegativeReplicatorSamples(int userId, int patternId, int maxAttempts) throws SQLException {
+		if (featureCache != null) {
+			double [][] inputs = featureCache.getNegativeRandomInputs(userId, patternId, maxAttempts);
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
+		if (featureStore != null) {
+			int [] attempts = featureStore.getNegativeRandomAttempts(userId, patternId, maxAttempts);
+			double [][] inputs = loadInputMatrix(attempts, maxAttempts, catalog.getNumDots(userId, patternId));
+			return DataSetHelper.createReplicatorDataSet(inputs);
+		}
+		
 		createSampleDao();
 		createAttemptDao();
 		
-		int numDots = sampleDao.count(userId, patternId);
+		int numDots = catalog.getNumDots(userId, patternId);
 		List<Attempt> attempts = attemptDao.getNegativeRandomAttempts(userId, patternId, maxAttempts);
-		List<Sample> samples = sampleDao.getSamplesFromAttempts(attempts);
 		
-		double [][] inputs = constructInputMatrix(samples, maxAttempts, numDots * NUMBER_OF_CHARACT);
-		return new BasicMLDataSet(inputs, inputs);
+		double [][] inputs = loadInputMatrix(attempts, maxAttempts, numDots);
+		return DataSetHelper.createReplicatorDataSet(inputs);
 	}
 	
 	/**
@@ -156,52 +226,110 @@ public class TrainingSetHandler extends GeneralTrainingSetHandler {
 	 * @throws SQLException
 	 */
 	public MLDataSet getNegativeSamples(int userId, int patternId, int maxAttempts) throws SQLException {
+		if (featureCache != null) {
+			double [][] inputs = featureCache.getNegativeRandomInputs(userId, patternId, maxAttempts);
+			return new BasicMLDataSet(inputs, constructIdealMatrix(maxAttempts, 1, 0));
+		}
+		
+		if (featureStore != null) {
+			int [] attempts = featureStore.getNegativeRandomAttempts(userId, patternId, maxAttempts);
+			double [][] inputs = loadInputMatrix(attempts, maxAttempts, catalog.getNumDots(userId, patternId));
+			return new BasicMLDataSet(inputs, constructIdealMatrix(maxAttempts, 1, 0));
+		}
+		
 		createSampleDao();
 		createAttemptDao();
 		
-		int numDots = sampleDao.count(userId, patternId);
+		int numDots = catalog.getNumDots(userId, patternId);
 		List<Attempt> attempts = attemptDao.getNegativeRandomAttempts(userId, patternId, maxAttempts);
-		List<Sample> samples = sampleDao.getSamplesFromAttempts(attempts);
 		
-		double [][] inputs = constructInputMatrix(samples, maxAttempts, numDots * NUMBER_OF_CHARACT);
+		double [][] inputs = loadInputMatrix(attempts, maxAttempts, numDots);
 		double [][] ideals = constructIdealMatrix(maxAttempts, 1, 0);
 		
 		return new BasicMLDataSet(inputs, ideals);
 	}
 	
 	/**
-	 * Constructs the input matrix with columns equals number of inputs
-	 * on the dataset and row equals number of examples.
+	 * Writes the replicator samples of the user and pattern on an EGB file,
+	 * which can be read from the disk by a BufferedMLDataSet on the trainings.
 	 * 
-	 * @param samples Samples
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param file EGB file
+	 * @return Number of examples written
+	 * @throws SQLException
+	 */
+	public int exportReplicatorSamples(int userId, int patternId, File file) throws SQLException {
+		MLDataSet dataset = getReplicatorSamples(userId, patternId);
+		DataSetHelper.saveEGB(dataset, file);
+		return dataset.size();
+	}
+	
+	/**
+	 * Appends the replicator samples of the user and pattern to a mapped dataset,
+	 * so the samples of many users can be put on one set out of the heap.
+	 * Only the samples of one user are kept on the heap at a time.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param writer Writer of a replicator MappedDataSet
+	 * @return Number of examples written
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public int appendReplicatorSamples(int userId, int patternId, MappedDataSetWriter writer) throws SQLException, IOException {
+		MLDataSet dataset = getReplicatorSamples(userId, patternId);
+		MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+		for (int i = 0; i < dataset.size(); i++) {
+			dataset.getRecord(i, pair);
+			writer.add(pair);
+		}
+		return dataset.size();
+	}
+	
+	/**
+	 * Reads the samples from the user and pattern into the input matrix.
+	 * The number of attempts isn't asked before, the matrix grows while they are read.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param numDots Number of dots on each attempt
+	 * @return 2 dimensions double matrix
+	 * @throws SQLException
+	 */
+	private double[][] loadUserInputMatrix(int userId, int patternId, int numDots) throws SQLException {
+		InputMatrixBuilder builder = InputMatrixBuilder.growing(numDots);
+		sampleDao.streamUserSamples(userId, patternId, builder);
+		return builder.getInputs();
+	}
+	
+	/**
+	 * Reads the samples from the attempts into the input matrix,
+	 * each row of the results is written straight into its row.
+	 * 
+	 * @param attempts Attempts
 	 * @param numberOfExamples Number of examples
-	 * @param numberOfInput Number of inputs
+	 * @param numDots Number of dots on each attempt
 	 * @return 2 dimensions double matrix
 	 * @throws SQLException
 	 */
-	private double[][] constructInputMatrix(List<Sample> samples, int numberOfExamples, int numberOfInput) throws SQLException {
-		double [][] inputs = new double[numberOfExamples][numberOfInput - 1];
-		createAttemptDao();
-		int attempt_id = samples.get(0).getAttempt(attemptDao.getDao()).getId(), i = 0, j = 0;
-		double last_event_time = 0;
-		
-		Iterator<Sample> itSamples = samples.iterator();
-		while (itSamples.hasNext()) {
-			Sample sample = itSamples.next();
-			Attempt attempt = sample.getAttempt(attemptDao.getDao());
-			if (attempt.getId() != attempt_id) {
-				i++; j = 0; attempt_id = attempt.getId();
-			}
-			
-			if (j != 0)
-				inputs[i][j++] = sample.getEvent_time() - last_event_time;
-			
-			inputs[i][j++] = sample.getPressure();
-			inputs[i][j++] = sample.getPressure_area();
-			
-			last_event_time = sample.getEvent_time();
-		}
-		return inputs;
+	private double[][] loadInputMatrix(List<Attempt> attempts, int numberOfExamples, int numDots) throws SQLException {
+		InputMatrixBuilder builder = new InputMatrixBuilder(numberOfExamples, numDots);
+		sampleDao.streamSamplesFromAttempts(attempts, builder);
+		return builder.getInputs();
+	}
+	
+	/**
+	 * Builds the input matrix of the attempts with the feature set of the handler,
+	 * from the columns of the feature store.
+	 * 
+	 * @param attempts Attempts indexes on the store
+	 * @param numberOfExamples Number of examples
+	 * @param numDots Number of dots on each attempt
+	 * @return 2 dimensions double matrix
+	 */
+	private double[][] loadInputMatrix(int [] attempts, int numberOfExamples, int numDots) {
+		return features.inputs(featureStore.getColumns(), attempts, numberOfExamples, numDots);
 	}
 	
 	/**
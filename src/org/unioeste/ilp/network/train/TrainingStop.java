@@ -0,0 +1,75 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+/**
+ * Why and when the training of a network stopped.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class TrainingStop {
+
+	private String reason;
+	private int epochs;
+	private int maxIterations;
+	
+	/**
+	 * Creates the record of the training.
+	 * 
+	 * @param reason Reason the training stopped
+	 * @param epochs Epochs trained
+	 * @param maxIterations Max iterations of the network, 0 when there's none
+	 */
+	public TrainingStop(String reason, int epochs, int maxIterations) {
+		this.reason = reason;
+		this.epochs = epochs;
+		this.maxIterations = maxIterations;
+	}
+	
+	public String getReason() {
+		return reason;
+	}
+	
+	public int getEpochs() {
+		return epochs;
+	}
+	
+	/**
+	 * Checks if a stopping policy stopped the training, before
+	 * the max error and the max iterations of the network.
+	 */
+	public boolean isEarly() {
+		return !Trainer.MAX_ERROR.equals(reason) && !Trainer.MAX_ITERATIONS.equals(reason);
+	}
+	
+	/**
+	 * Gets the epochs not trained up to the max iterations of the network when
+	 * a stopping policy stopped the training, 0 when the network has no max iterations.
+	 */
+	public int getEpochsSaved() {
+		return isEarly() && maxIterations > 0 ? Math.max(0, maxIterations - epochs) : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return reason + "\t" + epochs + "\t" + getEpochsSaved();
+	}
+}
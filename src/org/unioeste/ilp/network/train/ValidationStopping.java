@@ -0,0 +1,93 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.train;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.unioeste.ilp.network.AbstractNeuralNetwork;
+
+/**
+ * Stops the training when the error on the validation set, the rows held
+ * out of the training set, doesn't improve for a number of checks.
+ * 
+ * The weights with the lowest validation error are kept, and restored
+ * on the network when this policy stops the training.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ValidationStopping implements StoppingPolicy {
+
+	public static final String REASON = "validation";
+	
+	private int patience;
+	private int interval;
+	
+	/**
+	 * Creates the policy.
+	 * 
+	 * @param patience Checks without improvement before stopping
+	 * @param interval Epochs between the checks of the validation error
+	 */
+	public ValidationStopping(int patience, int interval) {
+		if (patience < 1 || interval < 1)
+			throw new IllegalStateException("The patience and the interval must be at least 1, got " + patience + " and " + interval + ".");
+		this.patience = patience;
+		this.interval = interval;
+	}
+	
+	public Monitor start(AbstractNeuralNetwork network, final MLDataSet validationSet) {
+		if (validationSet == null || validationSet.getRecordCount() == 0)
+			throw new IllegalStateException("The validation stopping needs the rows held out of the training set.");
+		
+		final BasicNetwork basicNetwork = network.getNetwork();
+		final double [] bestWeights = new double[basicNetwork.encodedArrayLength()];
+		return new Monitor() {
+			private double bestError = Double.POSITIVE_INFINITY;
+			private int checksWithoutImprovement = 0;
+			
+			public String check(int epoch, double error) {
+				if (epoch % interval != 0)
+					return null;
+				double validationError = basicNetwork.calculateError(validationSet);
+				if (validationError < bestError) {
+					bestError = validationError;
+					basicNetwork.encodeToArray(bestWeights);
+					checksWithoutImprovement = 0;
+				} else if (++checksWithoutImprovement >= patience) {
+					return REASON;
+				}
+				return null;
+			}
+			
+			public boolean finish(String reason) {
+				if (!REASON.equals(reason))
+					return false;
+				basicNetwork.decodeFromArray(bestWeights);
+				return true;
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return REASON + " (patience " + patience + ", every " + interval + " epochs)";
+	}
+}
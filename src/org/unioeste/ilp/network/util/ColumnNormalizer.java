@@ -0,0 +1,250 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.LabeledDataSet;
+
+/**
+ * Normalizes each input column from its bounds to the range of the outputs (0 to 1).
+ * 
+ * The bounds are fitted on the training set, with the minimum and the maximum
+ * of each column found in a single pass over the rows, so the number of columns
+ * follows the number of dots of the pattern. The same bounds are applied to the
+ * test set and to the inputs scored later, and are saved with the network.
+ * 
+ * The bounds fixed on the ReplicatorNeuralNetwork class (17 columns) are
+ * still available, to compare the trainings.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ColumnNormalizer {
+
+	public static final String EXTENSION = ".norm";
+	
+	public static final double OUTPUT_LOW = 0.0;
+	public static final double OUTPUT_HIGH = 1.0;
+	
+	private double [] low;
+	private double [] high;
+	private double [] outputLow;
+	private double [] outputHigh;
+	
+	public ColumnNormalizer(double [] low, double [] high, double [] outputLow, double [] outputHigh) {
+		if (low.length != high.length || low.length != outputLow.length || low.length != outputHigh.length)
+			throw new IllegalStateException("Bounds with different number of columns.");
+		this.low = low;
+		this.high = high;
+		this.outputLow = outputLow;
+		this.outputHigh = outputHigh;
+	}
+	
+	private static double [] fill(int size, double value) {
+		double [] values = new double[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = value;
+		}
+		return values;
+	}
+	
+	/**
+	 * Gets the bounds fixed on the ReplicatorNeuralNetwork class.
+	 * 
+	 * @param inputSize Number of inputs
+	 * @return ColumnNormalizer
+	 */
+	public static ColumnNormalizer fixed(int inputSize) {
+		if (inputSize != ReplicatorNeuralNetwork.input_low_norm.length)
+			throw new IllegalStateException("The fixed bounds have " + ReplicatorNeuralNetwork.input_low_norm.length
+					+ " columns, the dataset has " + inputSize + " inputs.");
+		return new ColumnNormalizer(ReplicatorNeuralNetwork.input_low_norm, ReplicatorNeuralNetwork.input_high_norm,
+				ReplicatorNeuralNetwork.output_low_norm, ReplicatorNeuralNetwork.output_high_norm);
+	}
+	
+	/**
+	 * Fits the bounds of each input column on the dataset.
+	 * A column with the same value on all the rows is normalized to the low output.
+	 * 
+	 * @param dataset Training set
+	 * @return ColumnNormalizer
+	 */
+	public static ColumnNormalizer fit(MLDataSet dataset) {
+		int inputSize = dataset.getInputSize();
+		if (dataset.getRecordCount() == 0)
+			throw new IllegalStateException("Bounds can't be fitted on an empty dataset.");
+		
+		double [] low = fill(inputSize, Double.POSITIVE_INFINITY);
+		double [] high = fill(inputSize, Double.NEGATIVE_INFINITY);
+		MLDataPair pair = BasicMLDataPair.createPair(inputSize, dataset.getIdealSize());
+		for (long i = 0; i < dataset.getRecordCount(); i++) {
+			dataset.getRecord(i, pair);
+			double [] input = pair.getInputArray();
+			for (int j = 0; j < inputSize; j++) {
+				if (input[j] < low[j]) low[j] = input[j];
+				if (input[j] > high[j]) high[j] = input[j];
+			}
+		}
+		
+		for (int j = 0; j < inputSize; j++) {
+			if (high[j] == low[j])
+				high[j] = low[j] + 1;
+		}
+		return new ColumnNormalizer(low, high, fill(inputSize, OUTPUT_LOW), fill(inputSize, OUTPUT_HIGH));
+	}
+	
+	public int getInputSize() {
+		return low.length;
+	}
+	
+	public double [] getLow() {
+		return low;
+	}
+	
+	public double [] getHigh() {
+		return high;
+	}
+	
+	/**
+	 * Normalizes the input into the row.
+	 * 
+	 * @param input Input
+	 * @param row Normalized input
+	 */
+	public void normalize(double [] input, double [] row) {
+		if (input.length != low.length)
+			throw new IllegalStateException("Input with " + input.length + " values, the bounds have " + low.length + " columns.");
+		normalize(input, 0, row);
+	}
+	
+	private void normalize(double [] inputs, int offset, double [] row) {
+		for (int j = 0; j < low.length; j++) {
+			row[j] = DataSetNormalizer.normalize(low[j], high[j], outputLow[j], outputHigh[j], inputs[offset + j]);
+		}
+	}
+	
+	/**
+	 * Normalizes the input, used to score the inputs with the saved network.
+	 * 
+	 * @param input Input
+	 * @return Normalized input
+	 */
+	public double [] normalize(double [] input) {
+		double [] row = new double[input.length];
+		normalize(input, row);
+		return row;
+	}
+	
+	/**
+	 * Normalizes the inputs of the dataset. The ideals of a replicator
+	 * dataset are its inputs, on other datasets the ideals are kept.
+	 * 
+	 * @param dataset LabeledDataSet
+	 * @return LabeledDataSet
+	 */
+	public LabeledDataSet normalize(LabeledDataSet dataset) {
+		if (dataset.size() > 0 && dataset.getInputSize() != low.length)
+			throw new IllegalStateException("Dataset with " + dataset.getInputSize() + " inputs, the bounds have " + low.length + " columns.");
+		
+		int inputSize = low.length;
+		int idealSize = dataset.getIdealSize();
+		double [] inputs = dataset.getInputBuffer();
+		double [] ideals = dataset.getIdealBuffer();
+		double [] row = new double[inputSize];
+		double [] ideal = idealSize > 0 ? new double[idealSize] : null;
+		
+		LabeledDataSet normalized = new LabeledDataSet(dataset.size(), dataset.isReplicator());
+		for (int i = 0; i < dataset.size(); i++) {
+			int bufferRow = dataset.getBufferRow(i);
+			normalize(inputs, bufferRow * inputSize, row);
+			if (dataset.isReplicator()) {
+				normalized.add(row, row, dataset.getLabel(i));
+			} else {
+				if (ideal != null)
+					System.arraycopy(ideals, bufferRow * idealSize, ideal, 0, idealSize);
+				normalized.add(row, ideal, dataset.getLabel(i));
+			}
+		}
+		return normalized;
+	}
+	
+	/**
+	 * Saves the bounds on the file, one column on each line.
+	 * 
+	 * @param file File
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (int j = 0; j < low.length; j++) {
+			lines.add(low[j] + "\t" + high[j] + "\t" + outputLow[j] + "\t" + outputHigh[j]);
+		}
+		OutputHandler.writeFile(file, lines);
+	}
+	
+	/**
+	 * Loads the bounds saved on the file.
+	 * 
+	 * @param file File
+	 * @return ColumnNormalizer
+	 * @throws IOException
+	 */
+	public static ColumnNormalizer load(File file) throws IOException {
+		List<double[]> columns = new ArrayList<double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0)
+					continue;
+				String [] values = line.split("\t");
+				if (values.length != 4)
+					throw new IllegalStateException("Line " + (columns.size() + 1) + " of " + file + " doesn't have 4 bounds.");
+				double [] column = new double[4];
+				for (int i = 0; i < 4; i++) {
+					column[i] = Double.parseDouble(values[i]);
+				}
+				columns.add(column);
+			}
+		} finally {
+			reader.close();
+		}
+		
+		int size = columns.size();
+		double [] low = new double[size], high = new double[size], outputLow = new double[size], outputHigh = new double[size];
+		for (int j = 0; j < size; j++) {
+			low[j] = columns.get(j)[0];
+			high[j] = columns.get(j)[1];
+			outputLow[j] = columns.get(j)[2];
+			outputHigh[j] = columns.get(j)[3];
+		}
+		return new ColumnNormalizer(low, high, outputLow, outputHigh);
+	}
+}
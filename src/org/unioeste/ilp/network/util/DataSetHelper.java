@@ -19,14 +19,17 @@
 
 package org.unioeste.ilp.network.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.util.Random;
 
 import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
 import org.encog.ml.data.basic.BasicMLDataPair;
 import org.encog.ml.data.basic.BasicMLDataSet;
+import org.encog.ml.data.buffer.BufferedMLDataSet;
 import org.unioeste.ilp.network.ReplicatorNeuralNetwork;
+import org.unioeste.ilp.network.datasets.IndexedDataSet;
 
 /**
  * Encapsulates some methods used on dataset manipulations.
@@ -78,95 +81,115 @@ public class DataSetHelper {
 	}
 	
 	/**
-	 * Randomizes the examples on the MLDataSet.
+	 * Creates a random permutation of the indices from 0 to size - 1 (Fisher-Yates).
+	 * 
+	 * @param size Number of indices
+	 * @param random Random generator
+	 * @return Indices permuted
+	 */
+	public static int [] permutation(int size, Random random) {
+		int [] indices = new int[size];
+		for (int i = 0; i < size; i++) {
+			indices[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = indices[i];
+			indices[i] = indices[j];
+			indices[j] = swap;
+		}
+		return indices;
+	}
+	
+	/**
+	 * Randomizes the examples on the MLDataSet, with the seed of the DataSetProvider.
 	 * 
 	 * @param dataset Original
 	 * @return MLDataSet randomized
 	 */
 	public static MLDataSet randomize(MLDataSet dataset) {
-		List<Integer> visited = new ArrayList<Integer>();
-		for (int i = 0; i < dataset.getRecordCount(); i++) {
-			visited.add(i);
-		}
-		
-		MLDataSet newDataset = new BasicMLDataSet();
-		while (visited.size() > 0) {
-			int i = (int) (Math.random() * visited.size()); 
-			newDataset.add(dataset.get(i));
-			visited.remove(i);
-		}
-		return newDataset;
+		return randomize(dataset, new Random(DataSetProvider.getSeed()));
+	}
+	
+	/**
+	 * Randomizes the examples on the MLDataSet with the random generator.
+	 * The examples aren't copied, the dataset returned is a view of
+	 * the original on a random order.
+	 * 
+	 * @param dataset Original
+	 * @param random Random generator
+	 * @return MLDataSet randomized
+	 */
+	public static MLDataSet randomize(MLDataSet dataset, Random random) {
+		return new IndexedDataSet(dataset, permutation(dataset.size(), random));
 	}
 	
 	/**
 	 * Randomizes the 2 datasets on one, respecting the order of each example.
-	 * Just mix the examples randomically in one dataset.
+	 * Just mix the examples randomically in one dataset, with the seed of the DataSetProvider.
 	 * 
 	 * @param positiveDataset Dataset 1
 	 * @param negativeDataset Dataset 2
 	 * @return MLDataSet mixed randomically
 	 */
 	public static MLDataSet randomize(MLDataSet positiveDataset, MLDataSet negativeDataset) {
-		List<MLDataPair> positives = datasetToList(positiveDataset);
-		List<MLDataPair> negatives = datasetToList(negativeDataset);
-		
-		MLDataSet newDataset = new BasicMLDataSet();
-		while (positives.size() > 0 || negatives.size() > 0) {
-			newDataset.add(randomDataPair(positives, negatives));
-		}
-		return newDataset;
+		return randomize(positiveDataset, negativeDataset, new Random(DataSetProvider.getSeed()));
 	}
 	
 	/**
-	 * Converts a MLDataSet to a List of MLDataPair.
+	 * Randomizes the 2 datasets on one with the random generator, respecting
+	 * the order of the examples of each dataset. The positions of the positive
+	 * examples are chosen with a permutation of the positions, then the examples
+	 * of each dataset fill their positions in order.
 	 * 
-	 * @param dataset MLDataSet
-	 * @return List of MLDataPair
+	 * The examples aren't copied, the dataset returned is a view of the 2 datasets.
+	 * 
+	 * @param positiveDataset Dataset 1
+	 * @param negativeDataset Dataset 2
+	 * @param random Random generator
+	 * @return MLDataSet mixed randomically
 	 */
-	private static List<MLDataPair> datasetToList(MLDataSet dataset) {
-		List<MLDataPair> list = new ArrayList<MLDataPair>();
-		for (int i = 0; i < dataset.getRecordCount(); i++) {
-			list.add(dataset.get(i));
+	public static MLDataSet randomize(MLDataSet positiveDataset, MLDataSet negativeDataset, Random random) {
+		int numPositives = positiveDataset.size();
+		int [] positions = permutation(numPositives + negativeDataset.size(), random);
+		
+		// The first positions of the permutation are positive
+		boolean [] positive = new boolean[positions.length];
+		for (int i = 0; i < numPositives; i++) {
+			positive[positions[i]] = true;
+		}
+		
+		int [] indices = new int[positions.length];
+		int nextPositive = 0, nextNegative = numPositives;
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = positive[i] ? nextPositive++ : nextNegative++;
 		}
-		return list;
+		return new IndexedDataSet(new MLDataSet [] {positiveDataset, negativeDataset}, indices);
 	}
 	
 	/**
-	 * Chooses a pair from one of the 2 lists randomically.
+	 * Gets a view of the examples from begin to end (inclusive) of the dataset,
+	 * without copying them.
 	 * 
-	 * @param dt1 Dataset 1
-	 * @param dt2 Dataset 2
-	 * @return random MLDataPair
+	 * @param dataset MLDataSet
+	 * @param begin Begin
+	 * @param end End
+	 * @return MLDataSet
 	 */
-	private static MLDataPair randomDataPair(List<MLDataPair> dt1, List<MLDataPair> dt2) {
-		boolean positive = Math.random() > 0.5;
-		
-		if (positive && dt1.size() > 0) {
-			return getAndRemove(dt1, 0);
-		} else if (!positive && dt2.size() > 0) {
-			return getAndRemove(dt2, 0);
-		}
-		
-		if (dt1.size() > 0) {
-			return getAndRemove(dt1, 0);
-		} else if (dt2.size() > 0) {
-			return getAndRemove(dt2, 0);
-		}
-		
-		return null;
+	public static MLDataSet subset(MLDataSet dataset, int begin, int end) {
+		return new IndexedDataSet(dataset, begin, end);
 	}
 	
 	/**
-	 * Gets the pair from the list and removes it from the list.
+	 * Gets a view of the examples of the 2 datasets, one after the other,
+	 * without copying them.
 	 * 
-	 * @param list List of MLDataPair
-	 * @param index int
-	 * @return MLDataPair
+	 * @param d1 Dataset 1
+	 * @param d2 Dataset 2
+	 * @return MLDataSet
 	 */
-	private static MLDataPair getAndRemove(List<MLDataPair> list, int index) {
-		MLDataPair pair = list.get(index);
-		list.remove(index);
-		return pair;
+	public static MLDataSet concat(MLDataSet d1, MLDataSet d2) {
+		return new IndexedDataSet(new MLDataSet [] {d1, d2}, 0, d1.size() + d2.size() - 1);
 	}
 	
 	/**
@@ -208,31 +231,80 @@ public class DataSetHelper {
 		return mapped;
 	}
 	
+	/**
+	 * Creates the dataset of a replicator neural network, where the ideal is the input.
+	 * The input and the ideal of each pair are the same object, holding the row
+	 * of the matrix, so the rows aren't copied.
+	 * 
+	 * @param inputs Input matrix
+	 * @return MLDataSet
+	 */
+	public static MLDataSet createReplicatorDataSet(double[][] inputs) {
+		MLDataSet dataset = new BasicMLDataSet();
+		for (int i = 0; i < inputs.length; i++) {
+			dataset.add(replicatorPair(inputs[i]));
+		}
+		return dataset;
+	}
+	
+	private static MLDataPair replicatorPair(double [] row) {
+		BasicMLData data = new BasicMLData(0);
+		data.setData(row);
+		return new BasicMLDataPair(data, data);
+	}
+	
+	/**
+	 * Writes the dataset on the file with the binary format of Encog (EGB).
+	 * The inputs and the ideals of every row are written, also on replicator datasets.
+	 * An existing file is replaced.
+	 * 
+	 * @param dataset MLDataSet
+	 * @param file EGB file
+	 */
+	public static void saveEGB(MLDataSet dataset, File file) {
+		// The buffered dataset reads the file when it already exists
+		if (file.exists() && !file.delete())
+			throw new IllegalStateException("Can't replace the EGB file " + file + ".");
+		BufferedMLDataSet buffered = new BufferedMLDataSet(file);
+		buffered.load(dataset);
+		buffered.close();
+	}
+	
+	/**
+	 * Opens the EGB file as a dataset read from the disk, the rows aren't kept on the heap.
+	 * The dataset must be closed after used.
+	 * 
+	 * @param file EGB file
+	 * @return BufferedMLDataSet
+	 */
+	public static BufferedMLDataSet openEGB(File file) {
+		if (!file.exists())
+			throw new IllegalStateException("EGB file " + file + " doesn't exist.");
+		BufferedMLDataSet buffered = new BufferedMLDataSet(file);
+		buffered.open();
+		return buffered;
+	}
+	
 	/**
 	 * Normalizes the dataset to use on a replicator neural network.
 	 * Uses the limits specified on the ReplicatorNeuralNetwork class.
 	 * 
+	 * The ideal of a replicator dataset is its input, so only the inputs
+	 * are normalized and each row is shared by the input and the ideal.
+	 * 
 	 * @param dataset MLDataSet
 	 * @return MLDataSet normalized
 	 */
 	public static MLDataSet normalizeReplicator(MLDataSet dataset) {
 		MLDataSet normalized = new BasicMLDataSet();
-		double[][] inputs = DataSetNormalizer.normalize(
-				ReplicatorNeuralNetwork.input_low_norm, ReplicatorNeuralNetwork.input_high_norm,
-				ReplicatorNeuralNetwork.output_low_norm, ReplicatorNeuralNetwork.output_high_norm,
-				mapInputDataset(dataset)
-		);
-		double[][] ideals = DataSetNormalizer.normalize(
-				ReplicatorNeuralNetwork.input_low_norm, ReplicatorNeuralNetwork.input_high_norm,
-				ReplicatorNeuralNetwork.output_low_norm, ReplicatorNeuralNetwork.output_high_norm,
-				mapIdealDataset(dataset)
-		);
-		for (int i = 0; i < inputs.length; i++) {
-			MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+		MLDataPair pair = BasicMLDataPair.createPair(dataset.getInputSize(), dataset.getIdealSize());
+		for (int i = 0; i < dataset.getRecordCount(); i++) {
 			dataset.getRecord(i, pair);
-			pair.setInputArray(inputs[i]);
-			pair.setIdealArray(ideals[i]);
-			normalized.add(pair);
+			normalized.add(replicatorPair(DataSetNormalizer.normalize(
+					ReplicatorNeuralNetwork.input_low_norm, ReplicatorNeuralNetwork.input_high_norm,
+					ReplicatorNeuralNetwork.output_low_norm, ReplicatorNeuralNetwork.output_high_norm,
+					pair.getInputArray()
+			)));
 		}
 		return normalized;
 	}
@@ -20,10 +20,11 @@
 package org.unioeste.ilp.network.util;
 
 import java.sql.SQLException;
+import java.util.Random;
 
 import org.encog.ml.data.MLDataSet;
-import org.encog.ml.data.basic.BasicMLDataSet;
 import org.unioeste.ilp.network.datasets.SeparatedDataSet;
+import org.unioeste.ilp.network.db.MetadataCatalog;
 import org.unioeste.ilp.network.db.SQLiteConnectionSource;
 import org.unioeste.ilp.network.train.TrainingSetHandler;
 
@@ -36,6 +37,43 @@ import org.unioeste.ilp.network.train.TrainingSetHandler;
 public class DataSetProvider {
 
 	protected static final int TEST_PERCENT = 30;
+	public static final long DEFAULT_SEED = 2012;
+	
+	private static long seed = DEFAULT_SEED;
+	
+	/**
+	 * Sets the seed of the random order of the test sets. The order of each user
+	 * and pattern depends only on the seed, not on the order they are loaded.
+	 * 
+	 * @param newSeed Seed
+	 */
+	public static synchronized void setSeed(long newSeed) {
+		seed = newSeed;
+	}
+	
+	/**
+	 * Gets the seed set, used by the shuffles that aren't of a user and pattern.
+	 * 
+	 * @return Seed
+	 */
+	public static synchronized long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Gets the seed of the user and pattern, derived from the seed set.
+	 * 
+	 * @param userId User ID
+	 * @param patternId Pattern ID
+	 * @return Seed
+	 */
+	public static synchronized long getSeed(int userId, int patternId) {
+		return seed * 31 * 31 + userId * 31 + patternId;
+	}
+	
+	protected static Random getRandom(int userId, int patternId) {
+		return new Random(getSeed(userId, patternId));
+	}
 	
 	/**
 	 * Gets the positive sample for training or test.
@@ -48,13 +86,16 @@ public class DataSetProvider {
 	 */
 	protected static MLDataSet getSample(int userId, int patternId) throws ClassNotFoundException, SQLException {
 		TrainingSetHandler tsHandler = new TrainingSetHandler(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		MLDataSet dataset = tsHandler.getSamples(userId, patternId);
-		tsHandler.closeConnection();
-		return dataset;
+		try {
+			return tsHandler.getSamples(userId, patternId);
+		} finally {
+			tsHandler.closeConnection();
+		}
 	}
 	
 	/**
-	 * Gets negative samples for tests. Returns any other attempt except from the user specified.
+	 * Gets negative samples for tests. Returns any other attempt except from the user specified,
+	 * limited by the number of attempts of the other users.
 	 * 
 	 * @param userId User ID
 	 * @param patternId Pattern ID
@@ -64,16 +105,21 @@ public class DataSetProvider {
 	 * @throws SQLException
 	 */
 	protected static MLDataSet getNegativeSamples(int userId, int patternId, int maxAttempts) throws ClassNotFoundException, SQLException {
+		MetadataCatalog catalog = MetadataCatalog.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		int numAttempts = Math.min(maxAttempts, catalog.countImpostors(userId, patternId));
+		
 		TrainingSetHandler tsHandler = new TrainingSetHandler(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		MLDataSet dataset = tsHandler.getNegativeSamples(userId, patternId, maxAttempts);
-		tsHandler.closeConnection();
-		return dataset;
+		try {
+			return tsHandler.getNegativeSamples(userId, patternId, numAttempts);
+		} finally {
+			tsHandler.closeConnection();
+		}
 	}
 	
 	/**
 	 * Creates a separated data set with a training set
 	 * and a test set specified size with some examples to add
-	 * to the test set.  
+	 * to the test set, mixed with the seed set.
 	 * 
 	 * @param dataset MLDataSet
 	 * @param addTestSet MLDataSet to add to the test set
@@ -81,15 +127,24 @@ public class DataSetProvider {
 	 * @return SeparatedDataSet
 	 */
 	public static SeparatedDataSet separateDataSet(MLDataSet dataset, MLDataSet addTestSet, int testSetSize) {
-		SeparatedDataSet sepDataSet = new SeparatedDataSet();
-		sepDataSet.add(dataset, 0, dataset.size() - testSetSize - 1);
-		
-		MLDataSet testDataset = new BasicMLDataSet();
-		DataSetHelper.copyDataSetTo(dataset, testDataset, dataset.size() - testSetSize, dataset.size() - 1);
-		testDataset = DataSetHelper.randomize(testDataset, addTestSet);
-		sepDataSet.setTestSet(testDataset);
-		
-		return sepDataSet;
+		return separateDataSet(dataset, addTestSet, testSetSize, new Random(getSeed()));
+	}
+	
+	/**
+	 * Creates a separated data set with a training set and a test set specified size
+	 * with some examples to add to the test set, mixed with the random generator.
+	 * The training and test sets are views of the examples, they aren't copied.
+	 * 
+	 * @param dataset MLDataSet
+	 * @param addTestSet MLDataSet to add to the test set
+	 * @param testSetSize Size of the test set
+	 * @param random Random generator
+	 * @return SeparatedDataSet
+	 */
+	public static SeparatedDataSet separateDataSet(MLDataSet dataset, MLDataSet addTestSet, int testSetSize, Random random) {
+		MLDataSet trainingDataset = DataSetHelper.subset(dataset, 0, dataset.size() - testSetSize - 1);
+		MLDataSet testDataset = DataSetHelper.subset(dataset, dataset.size() - testSetSize, dataset.size() - 1);
+		return new SeparatedDataSet(trainingDataset, DataSetHelper.randomize(testDataset, addTestSet, random));
 	}
 	
 	/**
@@ -104,7 +159,7 @@ public class DataSetProvider {
 	public static SeparatedDataSet getPositiveDataSet(int userId, int patternId) throws ClassNotFoundException, SQLException {
 		MLDataSet dataset = getSample(userId, patternId);
 		int testSetSize = DataSetHelper.datasetNumElementsPercent(dataset, TEST_PERCENT); // Test set size specified by dataset percentage	
-		SeparatedDataSet sepDataSet = separateDataSet(dataset, getNegativeSamples(userId, patternId, testSetSize), testSetSize);
+		SeparatedDataSet sepDataSet = separateDataSet(dataset, getNegativeSamples(userId, patternId, testSetSize), testSetSize, getRandom(userId, patternId));
 		return sepDataSet;
 	}
 	
@@ -125,17 +180,13 @@ public class DataSetProvider {
 		// Test set size specified by dataset percentage
 		int testSetSize = DataSetHelper.datasetNumElementsPercent(positiveDataset, TEST_PERCENT);
 		
-		SeparatedDataSet sepDataSet = new SeparatedDataSet();
-		sepDataSet.add(positiveDataset, 0, positiveDataset.size() - testSetSize - 1);
-		sepDataSet.add(negativeDataset, 0, negativeDataset.size() - testSetSize - 1);
+		MLDataSet trainingDataset = DataSetHelper.concat(
+				DataSetHelper.subset(positiveDataset, 0, positiveDataset.size() - testSetSize - 1),
+				DataSetHelper.subset(negativeDataset, 0, negativeDataset.size() - testSetSize - 1));
 		
-		MLDataSet positiveTestDataset = new BasicMLDataSet();
-		MLDataSet negativeTestDataset = new BasicMLDataSet();
-		
-		DataSetHelper.copyDataSetTo(positiveDataset, positiveTestDataset, positiveDataset.size() - testSetSize, positiveDataset.size() - 1);
-		DataSetHelper.copyDataSetTo(negativeDataset, negativeTestDataset, negativeDataset.size() - testSetSize, negativeDataset.size() - 1);
-		MLDataSet testDataset = DataSetHelper.randomize(positiveTestDataset, negativeTestDataset);
-		sepDataSet.setTestSet(testDataset);
-		return sepDataSet;
+		MLDataSet positiveTestDataset = DataSetHelper.subset(positiveDataset, positiveDataset.size() - testSetSize, positiveDataset.size() - 1);
+		MLDataSet negativeTestDataset = DataSetHelper.subset(negativeDataset, negativeDataset.size() - testSetSize, negativeDataset.size() - 1);
+		MLDataSet testDataset = DataSetHelper.randomize(positiveTestDataset, negativeTestDataset, getRandom(userId, patternId));
+		return new SeparatedDataSet(trainingDataset, testDataset);
 	}
 }
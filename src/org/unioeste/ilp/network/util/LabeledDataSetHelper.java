@@ -40,7 +40,10 @@ public class LabeledDataSetHelper extends DataSetHelper {
 	 * @return LabeledDataSet
 	 */
 	public static LabeledDataSet normalize(LabeledDataSet dataset) {
-		LabeledDataSet normalized = new LabeledDataSet();
+		if (dataset.isReplicator())
+			return normalizeReplicator(dataset);
+		
+		LabeledDataSet normalized = new LabeledDataSet(dataset.size());
 		double[][] inputs = DataSetNormalizer.normalize(
 				ReplicatorNeuralNetwork.input_low_norm, ReplicatorNeuralNetwork.input_high_norm,
 				ReplicatorNeuralNetwork.output_low_norm, ReplicatorNeuralNetwork.output_high_norm,
@@ -61,4 +64,15 @@ public class LabeledDataSetHelper extends DataSetHelper {
 		return normalized;
 	}
 	
+	/**
+	 * Normalizes the inputs of a replicator dataset with the fixed bounds, reading them
+	 * straight from the input array. The ideals are the inputs, so they aren't normalized again.
+	 * 
+	 * @param dataset Replicator LabeledDataSet
+	 * @return Replicator LabeledDataSet
+	 */
+	private static LabeledDataSet normalizeReplicator(LabeledDataSet dataset) {
+		return ColumnNormalizer.fixed(dataset.getInputSize()).normalize(dataset);
+	}
+	
 }
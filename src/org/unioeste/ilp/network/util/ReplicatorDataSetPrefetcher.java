@@ -0,0 +1,223 @@
+/*
+ * "Copyright 2012 Lucas Andr de Alencar"
+ * 
+ * This file is part of ILPNetworkTraining.
+ * 
+ * ILPNetworkTraining is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ * 
+ * ILPNetworkTraining is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ * GNU General Public License for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with ILPNetworkTraining.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.unioeste.ilp.network.util;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.encog.ml.data.MLDataSet;
+import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
+
+/**
+ * Loads the datasets of the next users and patterns of the experiments
+ * on a background thread, while the networks of the current ones are trained.
+ * 
+ * The experiments visit the users and patterns on a known order. When the
+ * experiments move to the next user and pattern, the datasets of the previous
+ * one are dropped and the loading of the next ones is started, at most
+ * lookAhead ahead of the current. So the memory is limited to lookAhead + 1
+ * datasets.
+ * 
+ * The datasets prefetched are the positive examples with the default size and the
+ * replicator dataset built from them. They are only read by the experiments, the
+ * normalization creates new datasets, so the same ones are given to all the
+ * experiments of the user and pattern.
+ * 
+ * @author Lucas Andr de Alencar
+ *
+ */
+public class ReplicatorDataSetPrefetcher {
+
+	public static final int DEFAULT_LOOK_AHEAD = 2;
+	
+	private int [] userIds;
+	private int [] patternIds;
+	private int lookAhead;
+	
+	// Position of the current user and pattern on the order of the experiments
+	private int current = -1;
+	private Map<Long, Future<Prefetch>> prefetches = new LinkedHashMap<Long, Future<Prefetch>>();
+	private ExecutorService executor;
+	
+	private int hits, misses;
+	private long waitNanos;
+	
+	/**
+	 * Datasets loaded for a user and pattern.
+	 */
+	private static class Prefetch {
+		MLDataSet positive;
+		ReplicatorDataSet dataset;
+	}
+	
+	/**
+	 * Creates the prefetcher for the experiments. The two arrays are parallel,
+	 * with the users and patterns on the order they are visited.
+	 * 
+	 * @param userIds Users
+	 * @param patternIds Patterns
+	 * @param lookAhead Number of users and patterns loaded ahead of the current one
+	 */
+	public ReplicatorDataSetPrefetcher(int [] userIds, int [] patternIds, int lookAhead) {
+		if (userIds.length != patternIds.length)
+			throw new IllegalStateException("Number of users different from the number of patterns.");
+		if (lookAhead < 1)
+			throw new IllegalStateException("Look ahead must be at least 1.");
+		
+		this.userIds = userIds;
+		this.patternIds = patternIds;
+		this.lookAhead = lookAhead;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "dataset-prefetcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	private static long key(int userId, int patternId) {
+		return ((long) userId << 32) | (patternId & 0xffffffffL);
+	}
+	
+	/**
+	 * Moves the experiments to the user and pattern. Drops the datasets
+	 * of the users and patterns before it and starts loading the next ones.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 */
+	public synchronized void advance(int userId, int patternId) {
+		int position = current + 1;
+		while (position < userIds.length && (userIds[position] != userId || patternIds[position] != patternId))
+			position++;
+		if (position == userIds.length)
+			throw new IllegalStateException("User " + userId + " and pattern " + patternId + " aren't on the experiments order.");
+		current = position;
+		
+		int last = Math.min(userIds.length - 1, current + lookAhead);
+		Map<Long, Future<Prefetch>> window = new LinkedHashMap<Long, Future<Prefetch>>();
+		for (int i = current; i <= last; i++) {
+			long k = key(userIds[i], patternIds[i]);
+			Future<Prefetch> prefetch = prefetches.remove(k);
+			window.put(k, prefetch != null ? prefetch : submit(userIds[i], patternIds[i]));
+		}
+		
+		// The datasets that are out of the window aren't needed anymore
+		Iterator<Future<Prefetch>> dropped = prefetches.values().iterator();
+		while (dropped.hasNext()) {
+			dropped.next().cancel(false);
+		}
+		prefetches = window;
+	}
+	
+	private Future<Prefetch> submit(final int userId, final int patternId) {
+		return executor.submit(new Callable<Prefetch>() {
+			public Prefetch call() throws Exception {
+				Prefetch prefetch = new Prefetch();
+				prefetch.positive = ReplicatorDataSetProvider.loadReplicatorSamples(userId, patternId, ReplicatorDataSetProvider.DEFAULT_SAMPLES_SET_SIZE);
+				prefetch.dataset = ReplicatorDataSetProvider.separateDataSet(userId, patternId, prefetch.positive);
+				return prefetch;
+			}
+		});
+	}
+	
+	private Prefetch get(int userId, int patternId) throws SQLException {
+		Future<Prefetch> future;
+		synchronized (this) {
+			future = prefetches.get(key(userId, patternId));
+			if (future == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+		
+		long start = System.nanoTime();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting the datasets of user " + userId + " and pattern " + patternId + ".", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException)
+				throw (SQLException) e.getCause();
+			throw new IllegalStateException("Datasets of user " + userId + " and pattern " + patternId + " couldn't be loaded.", e.getCause());
+		} finally {
+			synchronized (this) {
+				waitNanos += System.nanoTime() - start;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the positive examples of the user with the pattern, with the default size.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return MLDataSet, null when they weren't prefetched
+	 * @throws SQLException
+	 */
+	public MLDataSet getReplicatorSamples(int userId, int patternId) throws SQLException {
+		Prefetch prefetch = get(userId, patternId);
+		return prefetch != null ? prefetch.positive : null;
+	}
+	
+	/**
+	 * Gets the replicator dataset of the user with the pattern.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @return ReplicatorDataSet, null when it wasn't prefetched
+	 * @throws SQLException
+	 */
+	public ReplicatorDataSet getReplicatorDataSet(int userId, int patternId) throws SQLException {
+		Prefetch prefetch = get(userId, patternId);
+		return prefetch != null ? prefetch.dataset : null;
+	}
+	
+	/**
+	 * Stops the background thread, the datasets not loaded yet are cancelled.
+	 */
+	public synchronized void shutdown() {
+		executor.shutdownNow();
+		prefetches.clear();
+	}
+	
+	/**
+	 * Gets the datasets given from the prefetcher and the time
+	 * the experiments waited for them.
+	 * 
+	 * @return Statistics
+	 */
+	public synchronized String getStatistics() {
+		return String.format(Locale.US, "prefetcher: %d hits, %d misses, wait %.3f ms, look ahead %d",
+				hits, misses, waitNanos / 1e6, lookAhead);
+	}
+}
@@ -26,6 +26,7 @@ import java.util.List;
 import org.encog.ml.data.MLDataSet;
 import org.unioeste.ilp.network.datasets.LabeledDataSet;
 import org.unioeste.ilp.network.datasets.ReplicatorDataSet;
+import org.unioeste.ilp.network.db.MetadataCatalog;
 import org.unioeste.ilp.network.db.SQLiteConnectionSource;
 import org.unioeste.ilp.network.train.TrainingSetHandler;
 
@@ -41,8 +42,24 @@ public class ReplicatorDataSetProvider {
 	public static final int TEST_PERCENT = 30;
 	public static final int DEFAULT_SAMPLES_SET_SIZE = 50;
 	
+	private static ReplicatorDataSetPrefetcher prefetcher;
+	
+	/**
+	 * Sets the prefetcher consulted before loading the datasets with the default size.
+	 * 
+	 * @param newPrefetcher Prefetcher, null to always load the datasets
+	 */
+	public static synchronized void setPrefetcher(ReplicatorDataSetPrefetcher newPrefetcher) {
+		prefetcher = newPrefetcher;
+	}
+	
+	private static synchronized ReplicatorDataSetPrefetcher getPrefetcher() {
+		return prefetcher;
+	}
+	
 	/**
 	 * Separates the dataset into to sets and puts it on a replicator dataset.
+	 * The ideals of the sets are their inputs, so they aren't stored.
 	 * 
 	 * @param dataset MLDataSet
 	 * @param addTestSet Examples added on the test set
@@ -50,14 +67,44 @@ public class ReplicatorDataSetProvider {
 	 * @return ReplicatorDataSet
 	 */
 	public static ReplicatorDataSet separateDataSet(MLDataSet dataset, MLDataSet addTestSet, int testSetSize) {
-		LabeledDataSet trainingSet = new LabeledDataSet();
-		LabeledDataSet testSet = new LabeledDataSet();
-		
-		int trainingSetSize = dataset.size() - testSetSize;
-		trainingSet.add(dataset, 0, trainingSetSize - 1, generateLabels(trainingSetSize, 1.0));
-		testSet.add(dataset, trainingSetSize, dataset.size() - 1, generateLabels(testSetSize, 1.0));
-		testSet.add(addTestSet, generateLabels(addTestSet.size(), 0.0));
-		
+		return separateDataSet(labelExamples(dataset, addTestSet), dataset.size(), dataset.size() - testSetSize, addTestSet.size());
+	}
+	
+	/**
+	 * Puts the positive examples followed by the negative examples on a replicator
+	 * dataset, labeled with 1.0 and 0.0. The training and test sets are separated
+	 * from it without copying the examples.
+	 * 
+	 * @param positive Positive examples
+	 * @param negative Negative examples
+	 * @return LabeledDataSet
+	 */
+	public static LabeledDataSet labelExamples(MLDataSet positive, MLDataSet negative) {
+		LabeledDataSet examples = new LabeledDataSet(positive.size() + negative.size(), true);
+		examples.add(positive, generateLabels(positive.size(), 1.0));
+		examples.add(negative, generateLabels(negative.size(), 0.0));
+		return examples;
+	}
+	
+	/**
+	 * Separates the examples labeled by labelExamples into a replicator dataset.
+	 * The training set has the first positive examples, the test set has the other
+	 * positive examples and the first negative examples. The sets are views of the
+	 * examples, so they are separated on constant time.
+	 * 
+	 * @param examples Positive examples followed by the negative examples
+	 * @param numPositives Number of positive examples
+	 * @param trainingSetSize Training set size
+	 * @param numNegatives Number of negative examples on the test set
+	 * @return ReplicatorDataSet
+	 */
+	public static ReplicatorDataSet separateDataSet(LabeledDataSet examples, int numPositives, int trainingSetSize, int numNegatives) {
+		if (trainingSetSize > numPositives || numPositives + numNegatives > examples.size())
+			throw new IllegalStateException("Training set with " + trainingSetSize + " and " + numNegatives
+					+ " negative examples on the test set, the dataset has " + numPositives + " positive examples and "
+					+ (examples.size() - numPositives) + " negative examples.");
+		LabeledDataSet trainingSet = examples.view(0, trainingSetSize - 1);
+		LabeledDataSet testSet = examples.view(trainingSetSize, numPositives + numNegatives - 1);
 		return new ReplicatorDataSet(trainingSet, testSet);
 	}
 	
@@ -71,7 +118,7 @@ public class ReplicatorDataSetProvider {
 	
 	/**
 	 * Gets positive examples related with user and patterns,
-	 * limited by max attempts.
+	 * limited by max attempts and by the attempts the user has.
 	 * 
 	 * @param userId User
 	 * @param patternId Pattern
@@ -81,15 +128,30 @@ public class ReplicatorDataSetProvider {
 	 * @throws SQLException
 	 */
 	public static MLDataSet getReplicatorSamples(int userId, int patternId, int maxAttempts) throws ClassNotFoundException, SQLException {
+		ReplicatorDataSetPrefetcher prefetcher = getPrefetcher();
+		if (prefetcher != null && maxAttempts == DEFAULT_SAMPLES_SET_SIZE) {
+			MLDataSet dataset = prefetcher.getReplicatorSamples(userId, patternId);
+			if (dataset != null)
+				return dataset;
+		}
+		return loadReplicatorSamples(userId, patternId, maxAttempts);
+	}
+	
+	static MLDataSet loadReplicatorSamples(int userId, int patternId, int maxAttempts) throws ClassNotFoundException, SQLException {
+		MetadataCatalog catalog = MetadataCatalog.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		int numAttempts = Math.min(maxAttempts, catalog.countAttempts(userId, patternId));
+		
 		TrainingSetHandler tsHandler = new TrainingSetHandler(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		MLDataSet dataset = tsHandler.getReplicatorSamples(userId, patternId, maxAttempts);
-		tsHandler.closeConnection();
-		return dataset;
+		try {
+			return tsHandler.getReplicatorSamples(userId, patternId, numAttempts);
+		} finally {
+			tsHandler.closeConnection();
+		}
 	}
 	
 	/**
 	 * Gets negative samples related with pattern but not with user,
-	 * limited by max attempts.
+	 * limited by max attempts and by the attempts of the other users.
 	 * 
 	 * @param userId User
 	 * @param patternId Pattern
@@ -99,10 +161,15 @@ public class ReplicatorDataSetProvider {
 	 * @throws ClassNotFoundException
 	 */
 	public static MLDataSet getNegativeReplicatorSamples(int userId, int patternId, int maxAttempts) throws SQLException, ClassNotFoundException {
+		MetadataCatalog catalog = MetadataCatalog.getInstance(SQLiteConnectionSource.DEFAULT_DB_PATH);
+		int numAttempts = Math.min(maxAttempts, catalog.countImpostors(userId, patternId));
+		
 		TrainingSetHandler tsHandler = new TrainingSetHandler(SQLiteConnectionSource.DEFAULT_DB_PATH);
-		MLDataSet dataset = tsHandler.getNegativeReplicatorSamples(userId, patternId, maxAttempts);
-		tsHandler.closeConnection();
-		return dataset;
+		try {
+			return tsHandler.getNegativeReplicatorSamples(userId, patternId, numAttempts);
+		} finally {
+			tsHandler.closeConnection();
+		}
 	}
 	
 	/**
@@ -116,7 +183,27 @@ public class ReplicatorDataSetProvider {
 	 * @throws SQLException
 	 */
 	public static ReplicatorDataSet getReplicatorDataSet(int userId, int patternId) throws ClassNotFoundException, SQLException {
-		MLDataSet dataset = getReplicatorSamples(userId, patternId, DEFAULT_SAMPLES_SET_SIZE);		
+		ReplicatorDataSetPrefetcher prefetcher = getPrefetcher();
+		if (prefetcher != null) {
+			ReplicatorDataSet dataset = prefetcher.getReplicatorDataSet(userId, patternId);
+			if (dataset != null)
+				return dataset;
+		}
+		return separateDataSet(userId, patternId, loadReplicatorSamples(userId, patternId, DEFAULT_SAMPLES_SET_SIZE));
+	}
+	
+	/**
+	 * Separates the positive examples of the user into training and test sets
+	 * and adds negative examples of the pattern to the test set.
+	 * 
+	 * @param userId User
+	 * @param patternId Pattern
+	 * @param dataset Positive examples
+	 * @return ReplicatorDataSet
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	static ReplicatorDataSet separateDataSet(int userId, int patternId, MLDataSet dataset) throws ClassNotFoundException, SQLException {
 		int testSetSize = DataSetHelper.datasetNumElementsPercent(dataset, TEST_PERCENT); // Test set size specified by dataset percentage	
 		ReplicatorDataSet sepDataSet = (ReplicatorDataSet) separateDataSet(dataset, getNegativeReplicatorSamples(userId, patternId, testSetSize), testSetSize);
 		return sepDataSet;
@@ -134,9 +221,8 @@ public class ReplicatorDataSetProvider {
 	 * @throws SQLException
 	 */
 	public static ReplicatorDataSet getReplicatorDataSet(int userId, int patternId, int maxAttempts) throws ClassNotFoundException, SQLException {
-		MLDataSet dataset = getReplicatorSamples(userId, patternId, maxAttempts);
-		int testSetSize = DataSetHelper.datasetNumElementsPercent(dataset, TEST_PERCENT); // Test set size specified by dataset percentage	
-		ReplicatorDataSet sepDataSet = (ReplicatorDataSet) separateDataSet(dataset, getNegativeReplicatorSamples(userId, patternId, testSetSize), testSetSize);
-		return sepDataSet;
+		if (maxAttempts == DEFAULT_SAMPLES_SET_SIZE)
+			return getReplicatorDataSet(userId, patternId);
+		return separateDataSet(userId, patternId, loadReplicatorSamples(userId, patternId, maxAttempts));
 	}
 }